@@ -2,13 +2,22 @@
  * File: FacePamphlet.java
  * -----------------------
  * This program implements a basic social network management system.
+ * Network files are loaded and saved by background tasks, so that the
+ * window keeps responding while a large file is read or written.
  */
 
 import acm.program.*;
 import acm.graphics.*;
 import acm.util.*;
 import java.awt.event.*;
+import java.beans.*;
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.*;
 
@@ -26,6 +35,7 @@ public class FacePamphlet extends Program
 		
 		/* Create the database and canvas objects. */
 		database = new FacePamphletDatabase();
+		database.getMetrics().start();
 		canvas = new FacePamphletCanvas();
 		add(canvas);
 		
@@ -59,6 +69,16 @@ public class FacePamphlet extends Program
 		JButton lookupProfBut = new JButton(LOOKUP_PROFILE);
 		JButton loadBut = new JButton(LOAD_FILE);
 		JButton saveBut = new JButton(SAVE_FILE);
+		JButton repairBut = new JButton(REPAIR_FRIENDS);
+		
+		/* Initialize the progress bar and cancel button for loads and saves,
+		 * which are only enabled while one is running. */
+		progressBar = new JProgressBar(0, 100);
+		progressBar.setStringPainted(true);
+		progressBar.setString("");
+		progressBar.setEnabled(false);
+		cancelBut = new JButton(CANCEL_FILE);
+		cancelBut.setEnabled(false);
 		
 		/* Add the text fields and buttons to the canvas, together with line
 		 * spacing labels as dividers. */
@@ -71,13 +91,17 @@ public class FacePamphlet extends Program
 		add(fileTxFld, NORTH);
 		add(loadBut, NORTH);
 		add(saveBut, NORTH);
+		add(repairBut, NORTH);
+		add(progressBar, NORTH);
+		add(cancelBut, NORTH);
 		
 	}
 
 
 	/**
 	 * Adds the west control bar interactors for changing the displayed profile's
-	 * status, image and adding friends.
+	 * status, image and adding friends, and for finding how it is connected to
+	 * another profile.
 	 */
 	private void addWestCtrlBar() {
 		
@@ -99,10 +123,17 @@ public class FacePamphlet extends Program
 		addFriendTxFld.setActionCommand(ADD_FRIEND);
 		JButton addFriendBut = new JButton(ADD_FRIEND);	
 		
+		/* Initialize the find connection text field and button, giving both the
+		 * same action command so the user can either click or hit enter. */
+		pathTxFld = new JTextField(TEXT_FIELD_SIZE);
+		pathTxFld.setActionCommand(FIND_PATH);
+		JButton pathBut = new JButton(FIND_PATH);
+		
 		/* Add ActionListeners for the text fields. */
 		chngStatusTxFld.addActionListener(this);
 		chngPicTxFld.addActionListener(this);
 		addFriendTxFld.addActionListener(this);
+		pathTxFld.addActionListener(this);
 		
 		/* Add all the interactors to the canvas. */
 		add(chngStatusTxFld, WEST);
@@ -113,6 +144,9 @@ public class FacePamphlet extends Program
 		add(new JLabel(EMPTY_LABEL_TEXT),WEST);
 		add(addFriendTxFld, WEST);
 		add(addFriendBut, WEST);
+		add(new JLabel(EMPTY_LABEL_TEXT),WEST);
+		add(pathTxFld, WEST);
+		add(pathBut, WEST);
 		
 	}
 
@@ -127,10 +161,50 @@ public class FacePamphlet extends Program
     	 * by the user. */
     	String cmd = e.getActionCommand();
     	
-    	/* Remove the current profile from the canvas, to allow a new
-    	 * or updated profile to be drawn if required. */
-    	canvas.removeAll();
+    	/* Cancel the load or save running in the background, if there is one.
+    	 * The task reports that it was cancelled when it stops. */
+    	if (cmd.equals(CANCEL_FILE)) {
+    		if (fileTask != null) {
+    			fileTask.cancelTask();
+    			canvas.showMessage("Cancelling...");
+    		}
+    		return;
+    	}
+    	
+    	/* While a file is being loaded, the network loaded before stays on view,
+    	 * and can be looked up and searched but not changed until the new one is
+    	 * swapped in.
+    	 * While a file is being saved, the network is being read on another
+    	 * thread, so nothing else may be done with it until the save finishes.
+    	 * The canvas is left as it is. */
+    	if (fileTask != null && !(fileTask.isLoad()
+    			&& (cmd.equals(LOOKUP_PROFILE) || cmd.equals(FIND_PATH)))) {
+    		canvas.showMessage(fileTask.getBusyMessage());
+    		return;
+    	}
+    	
+    	/* Start updating the canvas.  Whatever is not displayed again while
+    	 * handling the action is removed from the canvas at the end. */
+    	canvas.beginUpdate();
+    	
+    	/* A profile of a network too large to read in full is read from its file
+    	 * when first used, which fails if that part of the file is malformed. */
+    	try {
+    		performCommand(cmd);
+    	} catch (UncheckedIOException ex) {
+    		showReadError(ex);
+    	}
     	
+    	canvas.endUpdate();
+	}
+	
+	
+	/**
+	 * Carries out the command given by the button or text field the user used, once the
+	 * canvas is being updated.
+	 */
+	private void performCommand(String cmd) {
+		
     	/* Load a network file if the user has entered a filename in
     	 * the file text field clicked the load button, overwriting the 
     	 * current database of profiles with those described in the network 
@@ -153,6 +227,12 @@ public class FacePamphlet extends Program
     		}
     	}
     	
+    	/* Checks the friendships in the network and repairs the problems found, if the
+    	 * user has clicked the repair button. */
+    	else if (cmd.equals(REPAIR_FRIENDS)) {
+    		repairFriends();
+    	}
+    	
     	/* Adds a profile to the database with a name equal to the text in the 
     	 * north text field if the user has entered text here and clicked the 
     	 * add button. */
@@ -188,7 +268,7 @@ public class FacePamphlet extends Program
     	else if (cmd.equals(CHG_STATUS) && currentProfile != null) {
     		String status = chngStatusTxFld.getText();
     		currentProfile.setStatus(status);
-    		canvas.displayProfile(currentProfile);
+    		displayCurrentProfile();
     		canvas.showMessage("Status updated to " + status);
     	} 
     	
@@ -207,47 +287,286 @@ public class FacePamphlet extends Program
     		
     	} 
     	
+    	/* Finds the shortest chain of friends from the currently displayed profile (if
+    	 * one is displayed) to the profile named in the find connection text field. */
+    	else if (cmd.equals(FIND_PATH) && currentProfile != null) {
+    		String otherName = pathTxFld.getText();
+    		findConnection(otherName);
+    	}
+    	
     	/* Shows an application message error for no profile being displayed (which must be the
     	 * case if all previous else if statements have returned false). */
     	else if (currentProfile == null) {
     		canvas.showMessage("No profile displayed, please lookup or add a profile " +
     				"and try again");
     	}
-		
-		
+	}
+	
+	
+	/**
+	 * Shows an application message for a profile which could not be read from the file of a
+	 * network too large to read in full, as load errors are shown.
+	 */
+	private void showReadError(UncheckedIOException ex) {
+		if (ex.getCause() instanceof FacePamphletFormatException) {
+			canvas.showMessage("Error in network file, " + ex.getCause().getMessage());
+		} else {
+			canvas.showMessage("Unable to read network file: " + ex.getCause().getMessage());
+		}
 	}
 	
     /**
-     * Attempts to read in a network file from the filename passed in as a parameter, using the
-     * FacePamphletDatabase class' readDataFile method. Shows an application message to confirm 
-     * the success or failure of this attempt.
+     * Starts reading in a network file from the filename passed in as a parameter in the
+     * background, using the FacePamphletDatabase class' readDataFile method on all available
+     * cores (or openMappedFile for files too large to read in full).  The file is read into a
+     * new database, which replaces the current one once it has been read; until then the
+     * current network stays on view, read-only.  Shows an application message to confirm 
+     * the success or failure of this attempt when it finishes, with the load throughput or
+     * the line on which a malformed file went wrong.  A file read in full is also checked for
+     * friends which are not profiles and friendships listed by only one of the two profiles
+     * (the application itself only ever makes friendships in both directions), and the
+     * number found is shown; they are only repaired if the user asks, with repairFriends.
      */
-    private void loadFile(String filename) {
-    	try {
-    		database.readDataFile(filename);
-    		canvas.showMessage("Loaded file " + filename);
+    private void loadFile(final String filename) {
+    	startFileTask(new FileTask(filename, true) {
     		
-    	} catch (IOException ex) {
-    		canvas.showMessage("Unable to open file " + filename);
+    		protected FacePamphletDatabase doInBackground() throws IOException {
+    			FacePamphletDatabase loaded = new FacePamphletDatabase();
+    			loaded.setProgress(this);
+    			boolean mapped = new File(filename).length() >= MAPPED_FILE_THRESHOLD;
+    			if (mapped) {
+    				loaded.openMappedFile(filename);
+    			} else {
+    				loaded.readDataFile(filename, Runtime.getRuntime().availableProcessors());
+    			}
+    			changes = loaded.openJournal(filename);
+    			if (!mapped) {
+    				problems = loaded.checkIntegrity(false).getProblems();
+    			}
+    			loaded.setProgress(null);
+    			return loaded;
+    		}
     		
-    	}
+    		protected void succeeded(FacePamphletDatabase loaded) {
+    			swapDatabase(loaded);
+    			canvas.showMessage("Loaded file " + filename + ": " + database.getLoadStats()
+    					+ (changes > 0 ? ", " + changes + " changes replayed from journal" : "")
+    					+ (problems > 0 ? ", " + problems + " broken friend entries found (use "
+    							+ REPAIR_FRIENDS + " to repair them)" : ""));
+    		}
+    		
+    		protected void failed(IOException ex) {
+    			if (ex instanceof FacePamphletFormatException) {
+    				canvas.showMessage("Error in file " + filename + ", " + ex.getMessage());
+    			} else {
+    				canvas.showMessage("Unable to open file " + filename);
+    			}
+    		}
+    		
+    		/* The number of changes replayed from the file's journal, and the
+    		 * number of broken friend entries found. */
+    		private int changes;
+    		private long problems;
+    	});
 	}
     
     
     /**
-     * Attempts to save a network file to the filename passed in as a parameter, using the 
-     * FacePamphletDatabase class' saveFile method. Shows an application message to confirm
-     * the success or failure of this attempt.
+     * Replaces the database with one which has just been loaded, in a single step on the
+     * event thread, moves the metrics over to it, and stops journaling the changes to the
+     * old one.  The profile on display
+     * is replaced by the profile with the same name in the new database, if there is one.
      */
-    private void saveFile(String filename) {
+    private void swapDatabase(FacePamphletDatabase loaded) {
+    	FacePamphletDatabase old = database;
+    	database = loaded;
+    	database.takeMetrics(old);
     	try {
-    		database.saveDataFile(filename);
-    		canvas.showMessage("Saved file " + filename);
-    		
+    		old.closeJournal();
     	} catch (IOException ex) {
-    		canvas.showMessage("Unable to save file " + filename);
+    		/* The error came from compacting the old network's journal, whose
+    		 * uncommitted changes are being dropped anyway. */
+    	}
+    	if (currentProfile != null && database.containsProfile(currentProfile.getName())) {
+    		currentProfile = database.getProfile(currentProfile.getName());
+    	} else {
+    		currentProfile = null;
     	}
+    }
+    
+    
+    /**
+     * Attempts to save a network file to the filename passed in as a parameter.  If the
+     * network was loaded from (or last saved to) that file, only the changes made since
+     * are appended to its journal.  Otherwise the whole network is saved using the
+     * FacePamphletDatabase class' saveFile method (or saveBinaryFile if the filename ends in
+     * BINARY_FILE_EXTENSION) in the background, and a new journal is started.  Either way the
+     * changes are forced to disk. Shows an application message to confirm the success (with
+     * the time taken) or failure of this attempt.
+     */
+    private void saveFile(final String filename) {
+    	if (filename.equals(database.getJournalFilename())) {
+    		/* Appending to the journal is quick, so it is done straight away. */
+    		try {
+    			int changes = database.commitJournal(true);
+    			String message = "Saved " + changes + " changes to the journal for " + filename;
+    			IOException compactionError = database.takeCompactionError();
+    			if (compactionError != null) {
+    				message += " (but folding the journal into the file failed: "
+    						+ compactionError.getMessage() + ")";
+    			}
+    			canvas.showMessage(message);
+    		} catch (IOException ex) {
+    			canvas.showMessage("Unable to save file " + filename + ": " + ex.getMessage());
+    		}
+    		return;
+    	}
+    	
+    	/* The save reads the network on another thread, so any profiles still
+    	 * waiting in a mapped file are read in here first, on the event thread
+    	 * which does all other reading of the network. */
+    	database.readAllProfiles();
+    	startFileTask(new FileTask(filename, false) {
+    		
+    		protected FacePamphletDatabase doInBackground() throws IOException {
+    			database.setProgress(this);
+    			try {
+    				if (filename.endsWith(BINARY_FILE_EXTENSION)) {
+    					database.saveBinaryFile(filename, true);
+    				} else {
+    					database.saveDataFile(filename, true);
+    				}
+    				database.startJournal(filename);
+    			} finally {
+    				database.setProgress(null);
+    			}
+    			return database;
+    		}
+    		
+    		protected void succeeded(FacePamphletDatabase saved) {
+    			canvas.showMessage("Saved file " + filename + ": " + database.getSaveStats());
+    		}
+    		
+    		protected void failed(IOException ex) {
+    			canvas.showMessage("Unable to save file " + filename + ": " + ex.getMessage());
+    		}
+    	});
 	}
+    
+    
+    /**
+     * Starts the given load or save in the background, enabling the progress bar and
+     * cancel button until it finishes.  The canvas is frozen during a save, so that
+     * scrolling or resizing it does not read the network being saved.
+     */
+    private void startFileTask(FileTask task) {
+    	fileTask = task;
+    	canvas.setFrozen(!task.isLoad());
+    	progressBar.setValue(0);
+    	progressBar.setString(task.isLoad() ? "Loading" : "Saving");
+    	progressBar.setEnabled(true);
+    	cancelBut.setEnabled(true);
+    	canvas.showMessage(task.getBusyMessage());
+    	task.execute();
+    }
+    
+    
+    /**
+     * A load or save of a network file, run on a background thread.  The task is told of
+     * the progress by the database, and shows it in the progress bar.  Once it finishes,
+     * succeeded or failed is called on the event thread to report the result and update
+     * the display.  A task which is cancelled stops at its next report of progress.
+     */
+    private abstract class FileTask extends SwingWorker<FacePamphletDatabase, Void>
+    		implements FacePamphletProgress {
+    	
+    	public FileTask(String filename, boolean load) {
+    		this.filename = filename;
+    		this.load = load;
+    		addPropertyChangeListener(new PropertyChangeListener() {
+    			public void propertyChange(PropertyChangeEvent e) {
+    				if (e.getPropertyName().equals("progress")) {
+    					progressBar.setValue((Integer) e.getNewValue());
+    				}
+    			}
+    		});
+    	}
+    	
+    	/** Returns true for a load, or false for a save. */
+    	public boolean isLoad() {
+    		return load;
+    	}
+    	
+    	/** Returns the message shown when the user tries to act while the task runs. */
+    	public String getBusyMessage() {
+    		return (load ? "Loading " : "Saving ") + filename + ", please wait";
+    	}
+    	
+    	/** Asks the task to stop at its next report of progress. */
+    	public void cancelTask() {
+    		cancelled = true;
+    	}
+    	
+    	/** Records the progress, stopping the task if it has been cancelled. */
+    	public void update(long done, long total) throws IOException {
+    		if (cancelled) {
+    			throw new InterruptedIOException((load ? "load" : "save") + " cancelled");
+    		}
+    		if (total > 0) {
+    			setProgress((int) Math.min(100, done * 100 / total));
+    		}
+    	}
+    	
+    	/** Called on the event thread with the result once the task has succeeded. */
+    	protected abstract void succeeded(FacePamphletDatabase result);
+    	
+    	/** Called on the event thread with the error if the task failed. */
+    	protected abstract void failed(IOException ex);
+    	
+    	/**
+    	 * Resets the progress bar and reports the result, re-displaying the current
+    	 * profile (if any) in case it has been replaced.
+    	 */
+    	protected void done() {
+    		fileTask = null;
+    		canvas.setFrozen(false);
+    		progressBar.setValue(0);
+    		progressBar.setString("");
+    		progressBar.setEnabled(false);
+    		cancelBut.setEnabled(false);
+    		
+    		canvas.beginUpdate();
+    		try {
+    			succeeded(get());
+    		} catch (ExecutionException ex) {
+    			if (ex.getCause() instanceof InterruptedIOException) {
+    				canvas.showMessage((load ? "Load of " : "Save of ") + filename + " cancelled");
+    			} else if (ex.getCause() instanceof IOException) {
+    				failed((IOException) ex.getCause());
+    			} else {
+    				throw new RuntimeException(ex.getCause());
+    			}
+    		} catch (InterruptedException ex) {
+    			/* The task has already finished, so get() does not wait. */
+    		} catch (UncheckedIOException ex) {
+    			showReadError(ex);
+    		}
+    		if (currentProfile != null) {
+    			try {
+    				displayCurrentProfile();
+    			} catch (UncheckedIOException ex) {
+    				showReadError(ex);
+    			}
+    		}
+    		canvas.endUpdate();
+    	}
+    	
+    	/* The name of the file being loaded or saved, whether it is a load,
+    	 * and whether the user has cancelled it. */
+    	private String filename;
+    	private boolean load;
+    	private volatile boolean cancelled;
+    }
 
     
     /**
@@ -257,11 +576,10 @@ public class FacePamphlet extends Program
 	private void tryToAddFriend(String friendName) {
 		
 		/* If the string passed in is a valid profile name, and was succesfully added as
-		 * a friend (i.e. was not a friend already), reciprocate the friendship by getting
-		 * the 'friend's' profile and adding the current profile as a friend. */
-    	if (database.containsProfile(friendName) && currentProfile.addFriend(friendName)) {
-			FacePamphletProfile friendProfile = database.getProfile(friendName);
-			friendProfile.addFriend(currentProfile.getName());
+		 * a friend (i.e. was not a friend already), the friendship is reciprocated in the
+		 * same operation, so the 'friend's' profile also lists the current profile. */
+    	if (database.addFriendship(currentProfile.getName(), friendName)) {
+			friendsChanged();
 			canvas.showMessage(friendName + " added as a friend");
 		
 		/* Show an application message if the String does not match a valid profile
@@ -278,10 +596,31 @@ public class FacePamphlet extends Program
 			
 		}
     	
-    	/* Re-display the current profile for any updates made above. */
-    	canvas.displayProfile(currentProfile);
+    	/* Re-display the current profile for any updates made above, scrolling
+    	 * its list of friends to show the friend just added. */
+    	displayCurrentProfile();
+    	if (currentProfile.getFriendCount() > 0) {
+    		canvas.showFriend(currentProfile.getFriendCount() - 1);
+    	}
 	}
 
+	/**
+	 * Shows the shortest chain of friends from the current profile to the profile named
+	 * by the String passed in as a parameter as an application message, giving up after
+	 * PATH_TIMEOUT_MILLIS.  The message also says how many profiles the search visited.
+	 */
+	private void findConnection(String otherName) {
+		if (!database.containsProfile(otherName)) {
+			canvas.showMessage(otherName + " does not exist");
+		} else {
+			FacePamphletPath path = database.findPath(currentProfile.getName(), otherName, 0,
+					PATH_TIMEOUT_MILLIS);
+			canvas.showMessage(path.toString());
+		}
+		displayCurrentProfile();
+	}
+
+
 	/**
 	 * Attempts to set the current profile's image to that passed in as the String
 	 * parameter. If succesful (i.e. the filename is not blank and the filename is valid)
@@ -291,17 +630,69 @@ public class FacePamphlet extends Program
 	 * shown instead. In either case the currentProfile is re-drawn on the canvas.
 	 */
 	private void tryToSetImage(String filename) {
-		try {
-			if(!filename.equals("")){
-				GImage image = new GImage(filename);
-				currentProfile.setImage(image);
+		if(!filename.equals("")){
+			/* Open the image through the image cache, so that it is already
+			 * decoded when the profile is displayed. */
+			FacePamphletImageCache.getInstance().invalidate(filename);
+			if (FacePamphletImageCache.getInstance().get(filename) != null) {
 				currentProfile.setImageString(filename);
 				canvas.showMessage("Picture updated");
+			} else {
+				canvas.showMessage("Unable to open image file: " + filename);
 			}
-		} catch (ErrorException ex) {
-			canvas.showMessage("Unable to open image file: " + filename);
 		}
+		displayCurrentProfile();
+	}
+
+
+	/**
+	 * Checks every friendship in the network, removing friends which are not profiles and
+	 * completing friendships listed by only one of the two profiles, and shows a summary of
+	 * what was found as an application message.  The repairs are ordinary changes, so they
+	 * reach the file when the network is next saved.
+	 */
+	private void repairFriends() {
+		FacePamphletIntegrityReport report = database.checkIntegrity(true);
+		if (report.getProblems() > 0) {
+			friendsChanged();
+		}
+		canvas.showMessage("Friend repair " + report);
+		if (currentProfile != null) {
+			displayCurrentProfile();
+		}
+	}
+
+
+	/**
+	 * Displays the current profile on the canvas, together with up to SUGGESTION_COUNT
+	 * suggested friends for it (friends of its friends, with the number of friends each
+	 * has in common with it).  Finding the suggestions visits every friend of every
+	 * friend, so they are only found again once a different profile is displayed or
+	 * friendsChanged has been called, not when the status or picture changes.
+	 */
+	private void displayCurrentProfile() {
 		canvas.displayProfile(currentProfile);
+		if (suggestedFor != currentProfile) {
+			List<Integer> mutual = new ArrayList<Integer>();
+			List<String> names = database.suggestFriends(currentProfile.getName(),
+					SUGGESTION_COUNT, mutual);
+			suggestions = new ArrayList<String>();
+			for (int i = 0; i < names.size(); i++) {
+				suggestions.add(names.get(i) + " (" + mutual.get(i) + " mutual friend"
+						+ (mutual.get(i) == 1 ? ")" : "s)"));
+			}
+			suggestedFor = currentProfile;
+		}
+		canvas.displaySuggestions(suggestions);
+	}
+
+
+	/**
+	 * Notes that friendships have been added or removed, so that the suggested friends
+	 * are found again when the current profile is next displayed.
+	 */
+	private void friendsChanged() {
+		suggestedFor = null;
 	}
 
 
@@ -315,16 +706,39 @@ public class FacePamphlet extends Program
     	if (database.containsProfile(profileName)) {
 			currentProfile = database.getProfile(profileName);
 			canvas.showMessage("Displaying " + profileName);
-			canvas.displayProfile(currentProfile);
+			displayCurrentProfile();
 		} else {
 			currentProfile = null;
-			canvas.showMessage("A profile with the name " + profileName +
-					" does not exist");
+			String message = "A profile with the name " + profileName + " does not exist";
+			List<String> similar = findSimilarNames(profileName);
+			if (!similar.isEmpty()) {
+				message += ". Did you mean " + String.join(", ", similar) + "?";
+			}
+			canvas.showMessage(message);
 		}
 		
 	}
 
 
+	/**
+	 * Returns up to NAME_SUGGESTION_COUNT names of profiles which the user may have meant
+	 * when looking up a name which does not exist: the closest names within
+	 * NAME_SUGGESTION_DISTANCE edits of it, ignoring case, followed by names which start
+	 * with it.
+	 */
+	private List<String> findSimilarNames(String profileName) {
+		List<String> similar = new ArrayList<String>();
+		similar.addAll(database.findSimilarNames(profileName, NAME_SUGGESTION_DISTANCE,
+				NAME_SUGGESTION_COUNT));
+		for (String name: database.completeName(profileName, NAME_SUGGESTION_COUNT)) {
+			if (similar.size() < NAME_SUGGESTION_COUNT && !similar.contains(name)) {
+				similar.add(name);
+			}
+		}
+		return similar;
+	}
+
+
 	/**
 	 * Attempts to delete a profile given by the String passed in as a parameter, setting the 
 	 * current profile to null afterwards. The deletion will succeed if the String matches a
@@ -334,6 +748,7 @@ public class FacePamphlet extends Program
 	private void delProfile(String profileName) {
     	if (database.containsProfile(profileName)) {
 			database.deleteProfile(profileName);
+			friendsChanged();
 			canvas.showMessage("Profile of " + profileName + " deleted");
 		} else {
 			canvas.showMessage("A profile with the name + profileName + " +
@@ -364,7 +779,7 @@ public class FacePamphlet extends Program
 					profileName + " already exists");
 		}
 		currentProfile = profile;
-		canvas.displayProfile(currentProfile);
+		displayCurrentProfile();
 	}
 
 
@@ -374,12 +789,24 @@ public class FacePamphlet extends Program
     private JTextField chngStatusTxFld;
     private JTextField chngPicTxFld;
     private JTextField addFriendTxFld;
+    private JTextField pathTxFld;
     private JTextField fileTxFld;
     
+    /* Private instance variables for the progress bar and cancel button for loads and
+     * saves, and the load or save running in the background (or null if there is none). */
+    private JProgressBar progressBar;
+    private JButton cancelBut;
+    private FileTask fileTask;
+    
     /*
      * Private instance variables for the database, currently displayed profile and canvas.
      */
     private FacePamphletDatabase database;
     private FacePamphletProfile currentProfile;
     private FacePamphletCanvas canvas;
+    
+    /* Private instance variables for the suggested friends last found, as shown on the
+     * canvas, and the profile they were found for (or null if they must be found again). */
+    private List<String> suggestions;
+    private FacePamphletProfile suggestedFor;
 }
@@ -0,0 +1,118 @@
+/*
+ * File: FacePamphletAtomicFile.java
+ * ---------------------------------
+ * This class replaces a file atomically.  The new contents are written
+ * to a temporary file in the same directory, which is renamed over the
+ * target only once it has been written completely, so a failed save
+ * never leaves a half-written network file behind.
+ *
+ * The temporary file is created with the default permissions (those
+ * allowed by the umask), and takes on the target's POSIX permissions
+ * if the target already exists, so a save does not change who may read
+ * the file.  If the target is a symbolic link, the file it links to is
+ * the one replaced, and the link is kept.
+ */
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+public class FacePamphletAtomicFile {
+
+	/**
+	 * Constructor
+	 * Creates a temporary file next to the named target file, ready for the
+	 * new contents to be written through getChannel().
+	 */
+	public FacePamphletAtomicFile(String filename) throws IOException {
+		target = Paths.get(filename).toAbsolutePath();
+		if (Files.isSymbolicLink(target)) {
+			target = target.toRealPath();
+		}
+
+		/* Files.createTempFile would make the file readable by its owner
+		 * only, so a new file is created under a random name instead. */
+		while (channel == null) {
+			temp = target.resolveSibling(target.getFileName() + "."
+					+ Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+			try {
+				channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW,
+						StandardOpenOption.WRITE);
+			} catch (FileAlreadyExistsException ex) {
+				/* Try another name. */
+			}
+		}
+		if (Files.exists(target)) {
+			try {
+				Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+			} catch (UnsupportedOperationException ex) {
+				/* The file system has no POSIX permissions to keep. */
+			} catch (IOException ex) {
+				abort();
+				throw ex;
+			}
+		}
+	}
+
+
+	/** Returns the channel writing to the temporary file. */
+	public FileChannel getChannel() {
+		return channel;
+	}
+
+
+	/**
+	 * Returns the temporary file, which becomes the target (keeping its
+	 * attributes, such as its modification time) once committed.
+	 */
+	public Path getTempPath() {
+		return temp;
+	}
+
+
+	/**
+	 * Finishes writing, forcing the contents to disk first if sync is true,
+	 * and renames the temporary file over the target.  The rename is atomic
+	 * where the file system supports it.
+	 */
+	public void commit(boolean sync) throws IOException {
+		try {
+			if (sync) {
+				channel.force(true);
+			}
+			channel.close();
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException ex) {
+			abort();
+			throw ex;
+		}
+	}
+
+
+	/**
+	 * Abandons the new contents, deleting the temporary file and leaving the
+	 * target untouched.  Does nothing once the file has been committed.
+	 */
+	public void abort() {
+		try {
+			channel.close();
+			Files.deleteIfExists(temp);
+		} catch (IOException ex) {
+			/* The temporary file could not be removed, but the target is
+			 * still intact, which is all that matters. */
+		}
+	}
+
+	/* Instance variables for the file being replaced, the temporary file and
+	 * the channel writing to it. */
+	private Path target;
+	private Path temp;
+	private FileChannel channel;
+
+}
@@ -0,0 +1,100 @@
+/*
+ * File: FacePamphletBatch.java
+ * ----------------------------
+ * This class collects profiles and friendships for a bulk import into
+ * a FacePamphletDatabase.  Nothing is checked as they are collected;
+ * FacePamphletDatabase.addBatch then adds them all in one pass, sizing
+ * its tables once for the whole batch and removing duplicate
+ * friendships by sorting rather than by checking each one in turn.
+ */
+
+import java.util.*;
+
+public class FacePamphletBatch {
+
+	/**
+	 * Constructor
+	 * Creates an empty batch.
+	 */
+	public FacePamphletBatch() {
+		this(INITIAL_CAPACITY, INITIAL_CAPACITY);
+	}
+
+
+	/**
+	 * Constructor
+	 * Creates an empty batch with room for the given numbers of profiles
+	 * and friendships before it has to grow.
+	 */
+	public FacePamphletBatch(int expectedProfiles, int expectedFriendships) {
+		profiles = new ArrayList<FacePamphletProfile>(expectedProfiles);
+		names = new String[Math.max(1, expectedFriendships)];
+		friends = new String[names.length];
+		friendshipCount = 0;
+	}
+
+
+	/**
+	 * Adds a profile to the batch.  As with FacePamphletDatabase.addProfile,
+	 * it replaces any profile with the same name when the batch is added.
+	 */
+	public void addProfile(FacePamphletProfile profile) {
+		profiles.add(profile);
+	}
+
+
+	/**
+	 * Adds a friendship between the two named profiles to the batch.  Either
+	 * may be a profile already in the database or one added in the batch.
+	 */
+	public void addFriendship(String name, String friend) {
+		if (friendshipCount == names.length) {
+			names = Arrays.copyOf(names, friendshipCount * 2);
+			friends = Arrays.copyOf(friends, friendshipCount * 2);
+		}
+		names[friendshipCount] = name;
+		friends[friendshipCount] = friend;
+		friendshipCount++;
+	}
+
+
+	/** Returns the number of profiles in the batch. */
+	public int getProfileCount() {
+		return profiles.size();
+	}
+
+
+	/** Returns the number of friendships in the batch, including any duplicates. */
+	public int getFriendshipCount() {
+		return friendshipCount;
+	}
+
+
+	/** Returns the profiles in the batch, in the order they were added. */
+	List<FacePamphletProfile> getProfiles() {
+		return profiles;
+	}
+
+
+	/** Returns the name of the first profile in the friendship with the given index. */
+	String getName(int index) {
+		return names[index];
+	}
+
+
+	/** Returns the name of the second profile in the friendship with the given index. */
+	String getFriend(int index) {
+		return friends[index];
+	}
+
+	/* The number of profiles and friendships an empty batch has room for. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/* Instance variables for the profiles, the names at the two ends of
+	 * each friendship, and the number of friendships. */
+	private List<FacePamphletProfile> profiles;
+	private String[] names;
+	private String[] friends;
+	private int friendshipCount;
+
+}
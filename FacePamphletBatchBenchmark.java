@@ -0,0 +1,112 @@
+/*
+ * File: FacePamphletBatchBenchmark.java
+ * -------------------------------------
+ * This program compares importing a random network one profile and
+ * one friendship at a time, through addProfile and addFriendship, with
+ * importing the same network through addBatch.  A tenth of the
+ * friendships are repeated (half of them the other way round), as
+ * happens when merging exports.  It checks that both imports give
+ * every profile the same set of friends.
+ *
+ * Usage: java FacePamphletBatchBenchmark [profiles] [friendsPerProfile] [runs]
+ */
+
+import java.util.*;
+
+public class FacePamphletBatchBenchmark {
+
+	public static void main(String[] args) {
+		int numProfiles = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+		int friendsPerProfile = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+		int runs = (args.length > 2) ? Integer.parseInt(args[2]) : 3;
+
+		/* Make the names and a random list of friendships between them. */
+		String[] names = new String[numProfiles];
+		for (int i = 0; i < numProfiles; i++) {
+			names[i] = "user" + i;
+		}
+		int numFriendships = (int) ((long) numProfiles * friendsPerProfile / 2);
+		int numRepeats = numFriendships / 10;
+		String[] from = new String[numFriendships + numRepeats];
+		String[] to = new String[from.length];
+		Random random = new Random(1);
+		for (int i = 0; i < numFriendships; i++) {
+			int a = random.nextInt(numProfiles);
+			int b = random.nextInt(numProfiles - 1);
+			from[i] = names[a];
+			to[i] = names[(b >= a) ? b + 1 : b];
+		}
+		for (int i = numFriendships; i < from.length; i++) {
+			int j = random.nextInt(numFriendships);
+			boolean reversed = random.nextBoolean();
+			from[i] = reversed ? to[j] : from[j];
+			to[i] = reversed ? from[j] : to[j];
+		}
+		System.out.printf("%d profiles, %d friendships (%d repeated)%n", numProfiles,
+				from.length, numRepeats);
+
+		long single = Long.MAX_VALUE;
+		long batched = Long.MAX_VALUE;
+		FacePamphletDatabase one = null;
+		FacePamphletDatabase bulk = null;
+		for (int run = 0; run < runs; run++) {
+			long start = System.nanoTime();
+			one = new FacePamphletDatabase();
+			for (String name: names) {
+				one.addProfile(new FacePamphletProfile(name));
+			}
+			for (int i = 0; i < from.length; i++) {
+				one.addFriendship(from[i], to[i]);
+			}
+			single = Math.min(single, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			bulk = new FacePamphletDatabase();
+			FacePamphletBatch batch = new FacePamphletBatch(names.length, from.length);
+			for (String name: names) {
+				batch.addProfile(new FacePamphletProfile(name));
+			}
+			for (int i = 0; i < from.length; i++) {
+				batch.addFriendship(from[i], to[i]);
+			}
+			bulk.addBatch(batch);
+			batched = Math.min(batched, System.nanoTime() - start);
+		}
+
+		System.out.printf("one at a time: %8.1f ms%n", single / 1e6);
+		System.out.printf("batch:         %8.1f ms  speedup %5.2fx%n", batched / 1e6,
+				(double) single / batched);
+		boolean same = sameFriends(one, bulk, names);
+		System.out.println(same ? "both imports give the same friends" : "IMPORTS DIFFER");
+		if (!same) {
+			System.exit(1);
+		}
+	}
+
+
+	/**
+	 * Returns true if every named profile has the same set of friends in
+	 * both databases.
+	 */
+	private static boolean sameFriends(FacePamphletDatabase a, FacePamphletDatabase b,
+			String[] names) {
+		for (String name: names) {
+			if (!friendSet(a.getProfile(name)).equals(friendSet(b.getProfile(name)))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/** Returns the friends of the given profile as a set. */
+	private static Set<String> friendSet(FacePamphletProfile profile) {
+		Set<String> friends = new HashSet<String>();
+		Iterator<String> it = profile.getFriends();
+		while (it.hasNext()) {
+			friends.add(it.next());
+		}
+		return friends;
+	}
+
+}
@@ -0,0 +1,679 @@
+/*
+ * File: FacePamphletBenchmarks.java
+ * ---------------------------------
+ * This program is a suite of microbenchmarks for the hot paths of
+ * FacePamphletDatabase, FacePamphletProfile and FacePamphletCanvas, so
+ * that changes to them can be measured against a baseline:
+ *
+ *   addProfile, getProfile, containsProfile   at 10^4 to 10^6 profiles
+ *   deleteProfile                             at 10^4 to 10^6 profiles
+ *   addFriend, removeFriend                   at degrees 10 to 10^4
+ *   readDataFile, saveDataFile                at 10^4 to 10^6 profiles
+ *   displayProfile                            at degrees 10 to 10^3
+ *
+ * The networks are random power-law social graphs (see buildNetwork),
+ * generated from a fixed seed so that every run sees the same inputs.
+ * Each benchmark is run for a number of warm-up iterations, so that
+ * the JIT compiler has settled, and then for a number of measured
+ * iterations.  Each iteration prepares its input untimed and then times
+ * a fixed number of operations, again and again until enough time has
+ * passed to measure.  The average time per operation is
+ * reported with the spread across the measured iterations, in the same
+ * form as JMH's average time mode.  The result of every operation is
+ * folded into a checksum which is printed at the end, so that none of
+ * them can be optimised away.
+ *
+ * The results can be saved to a file, and compared with a file saved
+ * earlier, in which case any benchmark which has become more than
+ * REGRESSION_THRESHOLD slower is flagged.  -quick runs the smaller
+ * sizes only, with fewer iterations.  Benchmarks can be picked by
+ * giving the start of their names.
+ *
+ * Usage: java FacePamphletBenchmarks [-quick] [-save file] [-compare file] [name...]
+ */
+
+import java.io.*;
+import java.util.*;
+
+public class FacePamphletBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+		boolean quick = false;
+		String saveFile = null;
+		String compareFile = null;
+		List<String> filters = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-quick")) {
+				quick = true;
+			} else if (args[i].equals("-save") && i + 1 < args.length) {
+				saveFile = args[++i];
+			} else if (args[i].equals("-compare") && i + 1 < args.length) {
+				compareFile = args[++i];
+			} else if (args[i].startsWith("-")) {
+				System.err.println("Usage: java FacePamphletBenchmarks [-quick] [-save file]"
+						+ " [-compare file] [name...]");
+				System.exit(1);
+			} else {
+				filters.add(args[i]);
+			}
+		}
+		Map<String, Double> baseline = (compareFile != null) ? readResults(compareFile) : null;
+
+		FacePamphletBenchmarks suite = new FacePamphletBenchmarks(quick, filters, baseline);
+		suite.runAll();
+		if (saveFile != null) {
+			suite.saveResults(saveFile);
+		}
+		System.out.println("checksum " + sink);
+		if (suite.regressions > 0) {
+			System.out.println(suite.regressions + " benchmark(s) regressed");
+			System.exit(2);
+		}
+	}
+
+
+	/**
+	 * Constructor
+	 * Creates the suite, running the smaller sizes only if quick is true,
+	 * and only the benchmarks whose names start with one of the filters
+	 * (or all of them if there are none).  The results are compared with
+	 * the baseline, if it is not null.
+	 */
+	private FacePamphletBenchmarks(boolean quick, List<String> filters,
+			Map<String, Double> baseline) {
+		this.filters = filters;
+		this.baseline = baseline;
+		sizes = quick ? new int[] { 10000, 100000 } : new int[] { 10000, 100000, 1000000 };
+		degrees = quick ? new int[] { 10, 100, 1000 } : new int[] { 10, 100, 1000, 10000 };
+		warmups = quick ? 2 : WARMUP_ITERATIONS;
+		iterations = quick ? 3 : MEASURED_ITERATIONS;
+		results = new LinkedHashMap<String, Double>();
+		networks = new HashMap<Integer, FacePamphletDatabase>();
+		System.out.printf("%-16s %9s  %4s %4s %12s   %-10s %s%n", "Benchmark", "Param", "Mode",
+				"Cnt", "Score", "Error", "Units");
+	}
+
+
+	/** Runs every benchmark selected by the filters. */
+	private void runAll() throws Exception {
+		for (int size: sizes) {
+			benchAddProfile(size);
+		}
+		for (int size: sizes) {
+			benchGetProfile(size);
+		}
+		for (int size: sizes) {
+			benchContainsProfile(size);
+		}
+		for (int size: sizes) {
+			benchDeleteProfile(size);
+		}
+		for (int degree: degrees) {
+			benchAddFriend(degree);
+		}
+		for (int degree: degrees) {
+			benchRemoveFriend(degree);
+		}
+		for (int size: sizes) {
+			benchReadAndSave(size);
+		}
+		for (int degree: degrees) {
+			if (degree <= MAX_DISPLAY_DEGREE) {
+				benchDisplayProfile(degree);
+			}
+		}
+	}
+
+
+	/** Times adding new profiles to an empty database, up to the given size. */
+	private void benchAddProfile(final int size) throws Exception {
+		final String[] names = names(size);
+		run("addProfile", size, size, new Workload() {
+			public void setUp() {
+				database = new FacePamphletDatabase();
+				next = 0;
+			}
+			public long run() {
+				database.addProfile(new FacePamphletProfile(names[next++]));
+				return next;
+			}
+			private FacePamphletDatabase database;
+			private int next;
+		});
+	}
+
+
+	/** Times looking up profiles by name in a network of the given size. */
+	private void benchGetProfile(final int size) throws Exception {
+		if (!selected("getProfile")) {
+			return;
+		}
+		final FacePamphletDatabase database = network(size);
+		final String[] lookups = lookups(size, 0);
+		run("getProfile", size, LOOKUPS, new Workload() {
+			public void setUp() {
+				next = 0;
+			}
+			public long run() {
+				return database.getProfile(lookups[next++]).getFriendCount();
+			}
+			private int next;
+		});
+	}
+
+
+	/**
+	 * Times checking for profiles by name in a network of the given size,
+	 * where a tenth of the names checked are not there.
+	 */
+	private void benchContainsProfile(final int size) throws Exception {
+		if (!selected("containsProfile")) {
+			return;
+		}
+		final FacePamphletDatabase database = network(size);
+		final String[] lookups = lookups(size, 0.1);
+		run("containsProfile", size, LOOKUPS, new Workload() {
+			public void setUp() {
+				next = 0;
+			}
+			public long run() {
+				return database.containsProfile(lookups[next++]) ? 1 : 0;
+			}
+			private int next;
+		});
+	}
+
+
+	/**
+	 * Times deleting random profiles from a network of the given size,
+	 * which removes them from the friend lists of all their friends.  The
+	 * network is built again, untimed, for each iteration.
+	 */
+	private void benchDeleteProfile(final int size) throws Exception {
+		final String[] names = names(size);
+		final String[] victims = permutation(size);
+		networks.clear();
+		run("deleteProfile", size, Math.min(DELETES, size / 4), new Workload() {
+			public void setUp() {
+				/* Let the last network go before building the next. */
+				database = null;
+				database = new FacePamphletDatabase();
+				database.addBatch(buildNetwork(names, AVERAGE_DEGREE, SEED));
+				next = 0;
+			}
+			public long run() {
+				database.deleteProfile(victims[next++]);
+				return next;
+			}
+			private FacePamphletDatabase database;
+			private int next;
+		});
+	}
+
+
+	/**
+	 * Times adding friends to a profile which already has the given number
+	 * of friends.  Both profiles are in a database, so the database's
+	 * reverse index is updated too.
+	 */
+	private void benchAddFriend(final int degree) throws Exception {
+		if (!selected("addFriend")) {
+			return;
+		}
+		final FacePamphletDatabase database = friendNetwork(degree);
+		final FacePamphletProfile profile = database.getProfile(HUB);
+		final String[] names = names(degree + FRIEND_CHANGES);
+		run("addFriend", degree, FRIEND_CHANGES, new Workload() {
+			public void setUp() {
+				for (int i = degree; i < names.length; i++) {
+					profile.removeFriend(names[i]);
+				}
+				next = degree;
+			}
+			public long run() {
+				return profile.addFriend(names[next++]) ? 1 : 0;
+			}
+			private int next;
+		});
+	}
+
+
+	/**
+	 * Times removing friends from a profile which has the given number of
+	 * friends, plus those to be removed.
+	 */
+	private void benchRemoveFriend(final int degree) throws Exception {
+		if (!selected("removeFriend")) {
+			return;
+		}
+		final FacePamphletDatabase database = friendNetwork(degree);
+		final FacePamphletProfile profile = database.getProfile(HUB);
+		final String[] names = names(degree + FRIEND_CHANGES);
+		run("removeFriend", degree, FRIEND_CHANGES, new Workload() {
+			public void setUp() {
+				for (int i = degree; i < names.length; i++) {
+					profile.addFriend(names[i]);
+				}
+				next = degree;
+			}
+			public long run() {
+				return profile.removeFriend(names[next++]) ? 1 : 0;
+			}
+			private int next;
+		});
+	}
+
+
+	/**
+	 * Times reading and saving a text network file of the given number of
+	 * profiles, and reports the throughput of each in megabytes a second.
+	 */
+	private void benchReadAndSave(int size) throws Exception {
+		final String[] names = names(1);
+		if (!selected("readDataFile") && !selected("saveDataFile")) {
+			return;
+		}
+		final File file = File.createTempFile("facepamphlet", ".txt");
+		final File copy = File.createTempFile("facepamphlet", ".txt");
+		file.deleteOnExit();
+		copy.deleteOnExit();
+		final FacePamphletDatabase database = network(size);
+		database.saveDataFile(file.getPath());
+		double megabytes = file.length() / 1e6;
+
+		double read = run("readDataFile", size, 1, new Workload() {
+			public void setUp() {
+			}
+			public long run() throws IOException {
+				FacePamphletDatabase loaded = new FacePamphletDatabase();
+				loaded.readDataFile(file.getPath());
+				return loaded.containsProfile(names[0]) ? 1 : 0;
+			}
+		});
+		printThroughput("readDataFile", size, megabytes, read);
+		double saved = run("saveDataFile", size, 1, new Workload() {
+			public void setUp() {
+			}
+			public long run() throws IOException {
+				database.saveDataFile(copy.getPath());
+				return copy.length();
+			}
+		});
+		printThroughput("saveDataFile", size, megabytes, saved);
+		file.delete();
+		copy.delete();
+	}
+
+
+	/**
+	 * Times displaying profiles with the given number of friends on the
+	 * canvas, switching between two of them so that the list of friends is
+	 * laid out each time.  The canvas is not shown, so this measures
+	 * building the display rather than painting it.
+	 */
+	private void benchDisplayProfile(int degree) throws Exception {
+		if (!selected("displayProfile")) {
+			return;
+		}
+		final FacePamphletCanvas canvas = new FacePamphletCanvas();
+		canvas.setSize(FacePamphletConstants.APPLICATION_WIDTH,
+				FacePamphletConstants.APPLICATION_HEIGHT);
+		final FacePamphletProfile[] profiles = new FacePamphletProfile[2];
+		String[] names = names(degree);
+		for (int i = 0; i < profiles.length; i++) {
+			profiles[i] = new FacePamphletProfile("Profile " + i);
+			profiles[i].setStatus("benchmarking");
+			for (String name: names) {
+				profiles[i].addFriend(name);
+			}
+		}
+		run("displayProfile", degree, DISPLAYS, new Workload() {
+			public void setUp() {
+				next = 0;
+			}
+			public long run() {
+				canvas.beginUpdate();
+				canvas.displayProfile(profiles[next++ % 2]);
+				canvas.endUpdate();
+				return canvas.getElementCount();
+			}
+			private int next;
+		});
+	}
+
+
+	/**
+	 * Runs the given workload as the named benchmark with the given
+	 * parameter, if it is selected: the warm-up iterations and then the
+	 * measured ones, each doing batches of the given number of operations
+	 * for at least ITERATION_NANOS.  Prints
+	 * and records the average time per operation, which it returns (or 0
+	 * if the benchmark was not selected).
+	 */
+	private double run(String name, int param, int operations, Workload workload)
+			throws Exception {
+		if (!selected(name)) {
+			return 0;
+		}
+		double[] times = new double[iterations];
+		for (int iteration = -warmups; iteration < iterations; iteration++) {
+			/* Each iteration times batches of operations, each prepared
+			 * afresh, until it has lasted long enough to measure. */
+			long elapsed = 0;
+			long count = 0;
+			do {
+				workload.setUp();
+				long checksum = 0;
+				long start = System.nanoTime();
+				for (int i = 0; i < operations; i++) {
+					checksum += workload.run();
+				}
+				elapsed += System.nanoTime() - start;
+				count += operations;
+				sink += checksum;
+			} while (elapsed < ITERATION_NANOS);
+			if (iteration >= 0) {
+				times[iteration] = (double) elapsed / count;
+			}
+		}
+
+		/* Report the mean with the 99.9% confidence interval, as JMH does,
+		 * using the normal approximation to Student's t. */
+		double mean = 0;
+		for (double time: times) {
+			mean += time;
+		}
+		mean /= times.length;
+		double variance = 0;
+		for (double time: times) {
+			variance += (time - mean) * (time - mean);
+		}
+		double error = (times.length > 1)
+				? CONFIDENCE_Z * Math.sqrt(variance / (times.length - 1) / times.length) : 0;
+		String key = name + " " + param;
+		results.put(key, mean);
+		System.out.printf("%-16s %9d  avgt %4d %12.1f +- %-9.1f ns/op%s%n", name, param,
+				times.length, mean, error, comparison(key, mean, error));
+		return mean;
+	}
+
+
+	/**
+	 * Prints the throughput of a benchmark which read or wrote the given
+	 * number of megabytes in the given average time, if it was run.
+	 */
+	private static void printThroughput(String name, int param, double megabytes, double nanos) {
+		if (nanos > 0) {
+			System.out.printf("%-16s %9d  %4s %4s %12.1f   %-10s MB/s%n", name, param, "thrpt",
+					"", megabytes / (nanos / 1e9), "");
+		}
+	}
+
+
+	/**
+	 * Returns a note comparing the given result with the baseline, or an
+	 * empty string if there is no baseline result for it.  A result is only
+	 * flagged as a regression if it is slower by more than the threshold
+	 * even after allowing for its error.
+	 */
+	private String comparison(String key, double mean, double error) {
+		if (baseline == null || !baseline.containsKey(key)) {
+			return "";
+		}
+		double ratio = mean / baseline.get(key);
+		String note = String.format("   %.2fx baseline", ratio);
+		if (mean - error > baseline.get(key) * (1 + REGRESSION_THRESHOLD)) {
+			regressions++;
+			note += "  REGRESSION";
+		}
+		return note;
+	}
+
+
+	/** Returns true if the named benchmark is selected by the filters. */
+	private boolean selected(String name) {
+		if (filters.isEmpty()) {
+			return true;
+		}
+		for (String filter: filters) {
+			if (name.startsWith(filter)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Returns the power-law network of the given size, building it the
+	 * first time it is asked for.  Only the largest network asked for is
+	 * kept, to save memory.
+	 */
+	private FacePamphletDatabase network(int size) {
+		FacePamphletDatabase database = networks.get(size);
+		if (database == null) {
+			networks.clear();
+			database = new FacePamphletDatabase();
+			database.addBatch(buildNetwork(names(size), AVERAGE_DEGREE, SEED));
+			networks.put(size, database);
+		}
+		return database;
+	}
+
+
+	/**
+	 * Returns a database holding a profile named HUB with the given number
+	 * of friends, and profiles for those friends and for FRIEND_CHANGES
+	 * more names.
+	 */
+	private static FacePamphletDatabase friendNetwork(int degree) {
+		String[] names = names(degree + FRIEND_CHANGES);
+		FacePamphletBatch batch = new FacePamphletBatch(names.length + 1, degree);
+		batch.addProfile(new FacePamphletProfile(HUB));
+		for (int i = 0; i < names.length; i++) {
+			batch.addProfile(new FacePamphletProfile(names[i]));
+			if (i < degree) {
+				batch.addFriendship(HUB, names[i]);
+			}
+		}
+		FacePamphletDatabase database = new FacePamphletDatabase();
+		database.addBatch(batch);
+		return database;
+	}
+
+
+	/**
+	 * Returns a batch holding a random social network of profiles with the
+	 * given names, in which the average number of friends is about the
+	 * given degree and the numbers of friends follow a power law, as in
+	 * real social networks: most profiles have a few friends and a few have
+	 * very many.  This is the Chung-Lu model: profile i is given the weight
+	 * (i + 1) ^ (-1 / (POWER_LAW_EXPONENT - 1)), and each friendship joins
+	 * two profiles picked with probability in proportion to their weights,
+	 * so that the expected number of friends of each is in proportion to
+	 * its weight.  Profiles are picked by binary search of the cumulative
+	 * weights.  Friendships which repeat, or join a profile to itself, are
+	 * dropped (addBatch removes the repeats).
+	 */
+	static FacePamphletBatch buildNetwork(String[] names, double averageDegree, long seed) {
+		int size = names.length;
+		double[] cumulative = new double[size];
+		double total = 0;
+		for (int i = 0; i < size; i++) {
+			total += Math.pow(i + 1, -1 / (POWER_LAW_EXPONENT - 1));
+			cumulative[i] = total;
+		}
+		int friendships = (int) (size * averageDegree / 2);
+		FacePamphletBatch batch = new FacePamphletBatch(size, friendships);
+		for (String name: names) {
+			batch.addProfile(new FacePamphletProfile(name));
+		}
+		Random random = new Random(seed);
+		for (int i = 0; i < friendships; i++) {
+			int a = pick(cumulative, random.nextDouble() * total);
+			int b = pick(cumulative, random.nextDouble() * total);
+			if (a != b) {
+				batch.addFriendship(names[a], names[b]);
+			}
+		}
+		return batch;
+	}
+
+
+	/** Returns the first index whose cumulative weight is above the given value. */
+	private static int pick(double[] cumulative, double value) {
+		int low = 0;
+		int high = cumulative.length - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (cumulative[mid] <= value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+
+	/** Returns the names of the profiles in a network of the given size. */
+	private static String[] names(int size) {
+		String[] names = new String[size];
+		for (int i = 0; i < size; i++) {
+			names[i] = "Person " + i;
+		}
+		return names;
+	}
+
+
+	/**
+	 * Returns LOOKUPS random names of profiles in a network of the given
+	 * size, with the given fraction of names which are not in the network.
+	 */
+	private static String[] lookups(int size, double missing) {
+		String[] lookups = new String[LOOKUPS];
+		Random random = new Random(SEED + size);
+		for (int i = 0; i < lookups.length; i++) {
+			boolean miss = random.nextDouble() < missing;
+			lookups[i] = (miss ? "Nobody " : "Person ") + random.nextInt(size);
+		}
+		return lookups;
+	}
+
+
+	/**
+	 * Returns the names of the profiles in a network of the given size in a
+	 * random order, so that none is picked twice.
+	 */
+	private static String[] permutation(int size) {
+		List<String> names = Arrays.asList(names(size));
+		Collections.shuffle(names, new Random(SEED + size));
+		return names.toArray(new String[size]);
+	}
+
+
+	/** Saves the results to the given file, one "name param ns/op" line each. */
+	private void saveResults(String filename) throws IOException {
+		PrintWriter wr = new PrintWriter(new FileWriter(filename));
+		try {
+			for (Map.Entry<String, Double> result: results.entrySet()) {
+				wr.printf(Locale.ROOT, "%s %.3f%n", result.getKey(), result.getValue());
+			}
+		} finally {
+			wr.close();
+		}
+		System.out.println("results saved to " + filename);
+	}
+
+
+	/** Reads results saved by saveResults, keyed by "name param". */
+	private static Map<String, Double> readResults(String filename) throws IOException {
+		Map<String, Double> results = new HashMap<String, Double>();
+		BufferedReader rd = new BufferedReader(new FileReader(filename));
+		try {
+			for (String line = rd.readLine(); line != null; line = rd.readLine()) {
+				String[] fields = line.trim().split(" ");
+				if (fields.length == 3) {
+					results.put(fields[0] + " " + fields[1], Double.parseDouble(fields[2]));
+				}
+			}
+		} finally {
+			rd.close();
+		}
+		return results;
+	}
+
+
+	/**
+	 * An operation to be timed.  setUp is called, untimed, before each
+	 * iteration, and run once for each operation in it.
+	 */
+	private interface Workload {
+
+		/** Prepares the input for an iteration. */
+		void setUp() throws Exception;
+
+		/** Performs the operation once, returning a value derived from its result. */
+		long run() throws Exception;
+	}
+
+	/* The numbers of warm-up and measured iterations of each benchmark,
+	 * and the shortest time each iteration spends timing operations. */
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int MEASURED_ITERATIONS = 5;
+	private static final long ITERATION_NANOS = 200000000;
+
+	/* The numbers of operations in each iteration of the lookup, delete,
+	 * friend change and display benchmarks. */
+	private static final int LOOKUPS = 1000000;
+	private static final int DELETES = 20000;
+	private static final int FRIEND_CHANGES = 10000;
+	private static final int DISPLAYS = 200;
+
+	/* The largest number of friends of a profile whose display is timed. */
+	private static final int MAX_DISPLAY_DEGREE = 1000;
+
+	/* The average number of friends, and the exponent of the power law
+	 * followed by the numbers of friends, in the generated networks. */
+	private static final double AVERAGE_DEGREE = 20;
+	private static final double POWER_LAW_EXPONENT = 2.5;
+
+	/* The seed for the generated networks and lookups. */
+	private static final long SEED = 42;
+
+	/* The name of the profile whose friends are changed. */
+	private static final String HUB = "Hub";
+
+	/* The value of the standard normal distribution giving a 99.9% confidence
+	 * interval. */
+	private static final double CONFIDENCE_Z = 3.291;
+
+	/* The fraction by which a benchmark must be slower than the baseline to
+	 * be flagged as a regression. */
+	private static final double REGRESSION_THRESHOLD = 0.10;
+
+	/* The sum of the results of every operation, printed at the end so that
+	 * the operations cannot be optimised away. */
+	private static long sink;
+
+	/* Instance variables for the options: the benchmarks selected and the
+	 * baseline to compare with (or null). */
+	private List<String> filters;
+	private Map<String, Double> baseline;
+
+	/* The sizes of network and numbers of friends benchmarked, and the
+	 * numbers of warm-up and measured iterations. */
+	private int[] sizes;
+	private int[] degrees;
+	private int warmups;
+	private int iterations;
+
+	/* The average time per operation of each benchmark run, keyed by
+	 * "name param", and the number which regressed from the baseline. */
+	private Map<String, Double> results;
+	private int regressions;
+
+	/* The generated network last asked for, keyed by its size. */
+	private Map<Integer, FacePamphletDatabase> networks;
+
+}
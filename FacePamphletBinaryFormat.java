@@ -0,0 +1,316 @@
+/*
+ * File: FacePamphletBinaryFormat.java
+ * -----------------------------------
+ * This class reads and writes the compact binary network file format,
+ * which sits alongside the text format written by saveDataFile.  A
+ * binary file is laid out as follows, where a varint is an unsigned
+ * integer stored seven bits per byte, low bits first, with the top bit
+ * of each byte set if more bytes follow:
+ *
+ *   the magic number 'F' 'P' 'N' 'B' and a 4 byte format version
+ *   the number of names, then each name as a varint length and UTF-8 bytes
+ *   the number of profiles, then for each profile:
+ *     the ID of its name in the name table above
+ *     its image filename and status, each as a varint length and UTF-8 bytes
+ *     the number of friends, then the ID of each friend, in the order the
+ *       friends were added, as a zigzag-encoded varint difference from the
+ *       previous ID
+ *
+ * Each name is therefore stored once, and most friend references take
+ * only a byte or two.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+public class FacePamphletBinaryFormat {
+
+	/** The magic number at the start of every binary network file ("FPNB"). */
+	public static final int MAGIC = 0x46504E42;
+
+	/** The version of the format written by this class. */
+	public static final int VERSION = 1;
+
+
+	/**
+	 * Returns true if the named file starts with the binary format's magic
+	 * number.
+	 */
+	public static boolean isBinaryFile(String filename) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(4);
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+				/* Keep reading until the header is full or the file ends. */
+			}
+			return !header.hasRemaining() && header.getInt(0) == MAGIC;
+		} finally {
+			channel.close();
+		}
+	}
+
+
+	/**
+	 * Reads a binary network file from the given channel, adding its profiles
+	 * to the given (normally empty) database.  Returns the number of bytes
+	 * read.
+	 */
+	public static long read(ReadableByteChannel channel, FacePamphletDatabase database)
+			throws IOException {
+		Input in = new Input(channel);
+		if (in.readInt() != MAGIC) {
+			throw new IOException("not a binary network file");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("unsupported binary network file version " + version);
+		}
+
+		/* Read the name table, interning each name into the database's own
+		 * table, which gives the same IDs if the database starts out empty. */
+		FacePamphletNameTable names = database.getNameTable();
+		int numNames = in.readVarint();
+		int[] ids = new int[numNames];
+		for (int i = 0; i < numNames; i++) {
+			ids[i] = names.intern(in.readString());
+		}
+
+		int numProfiles = in.readVarint();
+		for (int i = 0; i < numProfiles; i++) {
+			int nameIndex = in.readIndex(numNames);
+			FacePamphletProfile profile =
+					new FacePamphletProfile(names.getName(ids[nameIndex]), names);
+
+			profile.setImageString(in.readString());
+			profile.setStatus(in.readString());
+
+			int numFriends = in.readVarint();
+			int previous = 0;
+			for (int j = 0; j < numFriends; j++) {
+				int friend = previous + zigzagDecode(in.readVarint());
+				if (friend < 0 || friend >= numNames) {
+					throw new IOException("profile " + (i + 1) + ": friend ID " + friend
+							+ " is out of range");
+				}
+				profile.addFriendId(ids[friend]);
+				previous = friend;
+			}
+			database.addProfile(profile);
+		}
+		return in.bytesRead();
+	}
+
+
+	/**
+	 * Writes the profiles in the given database to the given stream in the
+	 * binary format.  The stream is not closed.
+	 */
+	public static void write(FacePamphletDatabase database, OutputStream stream) throws IOException {
+		DataOutputStream out = new DataOutputStream(stream);
+		FacePamphletNameTable names = database.getNameTable();
+
+		/* Number the names actually used by a profile or a friend list, in
+		 * the order of their IDs in the database. */
+		int[] index = new int[names.size()];
+		int numProfiles = 0;
+		for (int id = 0; id < names.size(); id++) {
+			FacePamphletProfile profile = database.getProfile(id);
+			if (profile != null) {
+				numProfiles++;
+				index[id] = 1;
+				FacePamphletIdSet friends = profile.getFriendIds();
+				for (int pos = 0; pos < friends.end(); pos++) {
+					if (friends.get(pos) >= 0) {
+						index[friends.get(pos)] = 1;
+					}
+				}
+			}
+		}
+		int numNames = 0;
+		for (int id = 0; id < index.length; id++) {
+			index[id] = (index[id] != 0) ? numNames++ : -1;
+		}
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		writeVarint(out, numNames);
+		for (int id = 0; id < index.length; id++) {
+			if (index[id] >= 0) {
+				writeString(out, names.getName(id));
+			}
+		}
+
+		writeVarint(out, numProfiles);
+		int written = 0;
+		for (int id = 0; id < names.size(); id++) {
+			FacePamphletProfile profile = database.getProfile(id);
+			if (profile == null) {
+				continue;
+			}
+			if (written++ % FacePamphletDatabase.PROGRESS_INTERVAL == 0) {
+				database.reportProgress(written - 1, numProfiles);
+			}
+			writeVarint(out, index[id]);
+			writeString(out, profile.getImageString());
+			writeString(out, profile.getStatus());
+			FacePamphletIdSet friends = profile.getFriendIds();
+			writeVarint(out, friends.size());
+			int previous = 0;
+			for (int pos = 0; pos < friends.end(); pos++) {
+				if (friends.get(pos) >= 0) {
+					int friend = index[friends.get(pos)];
+					writeVarint(out, zigzagEncode(friend - previous));
+					previous = friend;
+				}
+			}
+		}
+		out.flush();
+		database.reportProgress(numProfiles, numProfiles);
+	}
+
+
+	/** Writes an unsigned varint. */
+	static void writeVarint(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+
+	/** Writes a string as a varint length and its UTF-8 bytes. */
+	static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(UTF_8);
+		writeVarint(out, bytes.length);
+		out.write(bytes);
+	}
+
+
+	/** Maps a signed difference onto an unsigned value, keeping small values small. */
+	private static int zigzagEncode(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+
+	/** Reverses zigzagEncode. */
+	private static int zigzagDecode(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+
+	/**
+	 * Buffered reader of the primitive values in a binary network file (or
+	 * in a FacePamphletJournal), reading from a channel through a large
+	 * direct buffer.
+	 */
+	static class Input {
+
+		Input(ReadableByteChannel channel) {
+			this.channel = channel;
+			buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+			buffer.flip();
+			bytes = new byte[256];
+			consumed = 0;
+		}
+
+		int readInt() throws IOException {
+			require(4);
+			return buffer.getInt();
+		}
+
+		long readLong() throws IOException {
+			require(8);
+			return buffer.getLong();
+		}
+
+		int readVarint() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				require(1);
+				byte b = buffer.get();
+				value |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+			throw new IOException("malformed varint at byte " + bytesRead());
+		}
+
+		int readIndex(int limit) throws IOException {
+			int value = readVarint();
+			if (value < 0 || value >= limit) {
+				throw new IOException("name ID " + value + " is out of range at byte "
+						+ bytesRead());
+			}
+			return value;
+		}
+
+		String readString() throws IOException {
+			int length = readVarint();
+			if (length < 0) {
+				throw new IOException("malformed string length at byte " + bytesRead());
+			}
+			if (length > bytes.length) {
+				bytes = new byte[Math.max(length, bytes.length * 2)];
+			}
+			int n = 0;
+			while (n < length) {
+				require(1);
+				int count = Math.min(length - n, buffer.remaining());
+				buffer.get(bytes, n, count);
+				n += count;
+			}
+			return new String(bytes, 0, length, UTF_8);
+		}
+
+		long bytesRead() {
+			return consumed + buffer.position();
+		}
+
+		/** Returns true if every byte of the channel has been read. */
+		boolean atEnd() throws IOException {
+			while (!buffer.hasRemaining()) {
+				consumed += buffer.position();
+				buffer.clear();
+				int read = channel.read(buffer);
+				buffer.flip();
+				if (read < 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Makes sure at least the given number of bytes (no more than a few)
+		 * are buffered, reading more from the channel if necessary.
+		 */
+		private void require(int count) throws IOException {
+			while (buffer.remaining() < count) {
+				consumed += buffer.position();
+				buffer.compact();
+				int read = channel.read(buffer);
+				buffer.flip();
+				if (read < 0) {
+					throw new EOFException("unexpected end of binary network file");
+				}
+			}
+		}
+
+		private ReadableByteChannel channel;
+		private ByteBuffer buffer;
+		private byte[] bytes;
+		private long consumed;
+	}
+
+	/* The character set used for all strings in the file. */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/* The size of the direct buffer used when reading. */
+	private static final int READ_BUFFER_SIZE = 4 * 1024 * 1024;
+
+}
@@ -3,100 +3,198 @@
  * -----------------------------
  * This class represents the canvas on which the profiles in the social
  * network are displayed.
+ *
+ * The graphical objects making up the display are created once and kept
+ * between updates.  Displaying a profile only changes the objects whose
+ * contents differ from what is already shown (the name, image, status
+ * or the friends which were added or removed), and the fonts are decoded
+ * once rather than on every update.
  */
 
 
 import acm.graphics.*;
+import acm.util.JTFTools;
 
 import java.awt.*;
+import java.awt.event.*;
 import java.util.*;
 
-public class FacePamphletCanvas extends GCanvas 
+public class FacePamphletCanvas extends GCanvas
 					implements FacePamphletConstants {
-	
-	/** 
+
+	/**
 	 * Constructor: This method initializes the display.
 	 */
 	public FacePamphletCanvas() {
-		
+		appMessage = new GLabel("");
+		appMessage.setFont(messageFont);
+
+		profileNameLab = new GLabel("");
+		profileNameLab.setColor(Color.BLUE);
+		profileNameLab.setFont(profileNameFont);
+
+		placeHolderRect = new GRect(IMAGE_WIDTH,IMAGE_HEIGHT);
+		placeHolderRect.setColor(Color.BLACK);
+		placeHolderLab = new GLabel("No Image");
+		placeHolderLab.setFont(profileImageFont);
+
+		statusLab = new GLabel("");
+		statusLab.setFont(profileStatusFont);
+
+		friendsLab = new GLabel("Friends:");
+		friendsLab.setFont(profileFriendLabelFont);
+		friendLabs = new ArrayList<GLabel>();
+		friendsX = -1;
+		suggestionsLab = new GLabel("Suggested friends:");
+		suggestionsLab.setFont(profileFriendLabelFont);
+		suggestionLabs = new ArrayList<GLabel>();
+		GLabel sample = new GLabel("");
+		sample.setFont(profileFriendFont);
+		rowHeight = sample.getHeight();
+
+		/* Scroll the list of friends with the mouse wheel, and refit it to
+		 * the canvas when the canvas is resized, unless the canvas is
+		 * frozen. */
+		addMouseWheelListener(new MouseWheelListener() {
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				if (!frozen) {
+					friendsScrolled(e.getWheelRotation());
+				}
+			}
+		});
+		addComponentListener(new ComponentAdapter() {
+			public void componentResized(ComponentEvent e) {
+				if (!frozen) {
+					scrollFriendsTo(firstFriend);
+				}
+			}
+		});
 	}
 
-	
-	/** 
-	 * This method displays a message string near the bottom of the 
-	 * canvas.  Every time this method is called, the previously 
-	 * displayed message (if any) is replaced by the new message text 
+
+	/**
+	 * Freezes or unfreezes the display of the profile.  While the canvas is
+	 * frozen, scrolling with the mouse wheel and resizing the canvas do not
+	 * display the profile again, so the canvas never reads the profile
+	 * (for instance while it is being saved on another thread).  The
+	 * profile should be displayed again once the canvas is unfrozen.
+	 */
+	public void setFrozen(boolean frozen) {
+		this.frozen = frozen;
+	}
+
+
+	/**
+	 * This method displays a message string near the bottom of the
+	 * canvas.  Every time this method is called, the previously
+	 * displayed message (if any) is replaced by the new message text
 	 * passed in.
 	 */
 	public void showMessage(String msg) {
-		
+
 		appMessage.setLabel(msg);
-		appMessage.setFont(MESSAGE_FONT);
 		double x = ( getWidth() - appMessage.getWidth() ) / 2 ;
 		double y = getHeight() - BOTTOM_MESSAGE_MARGIN;
 		appMessage.setLocation(x, y);
-		add(appMessage);
-		
-	}
-	
-	
-	/** 
-	 * This method displays the given profile on the canvas.  The 
-	 * canvas is first cleared of all existing items (including 
-	 * messages displayed near the bottom of the screen) and then the 
-	 * given profile is displayed.  The profile display includes the 
-	 * name of the user from the profile, the corresponding image 
+		show(appMessage);
+		messageShown = true;
+
+	}
+
+
+	/**
+	 * Starts an update of the display in response to a user action.  Any
+	 * profile or message which is not displayed again before endUpdate is
+	 * called is then removed, just as if the canvas had been cleared at the
+	 * start of the update.
+	 */
+	public void beginUpdate() {
+		profileShown = false;
+		messageShown = false;
+		suggestionsShown = false;
+	}
+
+
+	/**
+	 * Finishes an update started by beginUpdate, removing the profile and
+	 * message if they were not displayed during the update.
+	 */
+	public void endUpdate() {
+		if (!profileShown) {
+			hideProfile();
+		}
+		if (!suggestionsShown) {
+			hideSuggestions();
+		}
+		if (!messageShown) {
+			hide(appMessage);
+		}
+	}
+
+
+	/**
+	 * This method displays the given profile on the canvas, replacing
+	 * the profile already displayed (if any).  The profile display
+	 * includes the name of the user from the profile, the corresponding image
 	 * (or an indication that an image does not exist), the status of
 	 * the user, and a list of the user's friends in the social network.
 	 */
 	public void displayProfile(FacePamphletProfile profile) {
 		displayProfileName(profile.getName());
-		displayImage(profile.getImage());
+		displayImage(profile);
 		displayStatus(profile.getStatus(),profile.getName());
-		displayFriends(profile.getFriends());
+		if (profile != profileDisplayed) {
+			profileDisplayed = profile;
+			firstFriend = 0;
+		}
+		profileShown = true;
+		displayFriends(profile);
 	}
-	
-		
+
+
 	/**
 	 * Displays the profile name on the canvas.
 	 */
 	private void displayProfileName(String name) {
-		profileNameLab = new GLabel(name);
-		profileNameLab.setColor(Color.BLUE);
-		profileNameLab.setFont(PROFILE_NAME_FONT);
+		setLabel(profileNameLab, name);
 		double x = LEFT_MARGIN;
 		double y = TOP_MARGIN + profileNameLab.getAscent();
 		profileNameLab.setLocation(x,y);
-		add(profileNameLab);
+		show(profileNameLab);
 	}
-	
-	
+
+
 	/**
 	 * Displays a profile's image if one exists, or a placeholder if one doesn't.
+	 * Images from files are drawn from the thumbnail cache, so each image file
+	 * is only scaled once, and the displayed image is only replaced if it has
+	 * changed.
 	 */
-	private void displayImage(GImage image) {
+	private void displayImage(FacePamphletProfile profile) {
 		double x = LEFT_MARGIN;
 		/* Set the Y coordinate of the image to be below the profile's name label
 		 * with a margin given by the IMAGE_MARGIN constant. */
-		double y = profileNameLab.getY() + IMAGE_MARGIN;		
-		if (image != null) {
-			drawImage(x,y,image);
+		double y = profileNameLab.getY() + IMAGE_MARGIN;
+		GImage thumbnail = null;
+		if (profile.hasImageFile()) {
+			thumbnail = FacePamphletThumbnailCache.getInstance().get(profile.getImageString());
+		} else if (profile.getImage() != null) {
+			thumbnail = FacePamphletThumbnailCache.getInstance().scale(profile.getImage());
+		}
+
+		if (thumbnail != imageShown && imageShown != null) {
+			hide(imageShown);
+		}
+		imageShown = thumbnail;
+		if (thumbnail != null) {
+			hide(placeHolderRect);
+			hide(placeHolderLab);
+			thumbnail.setLocation(x,y);
+			show(thumbnail);
 		} else {
 			drawImagePlaceHolder(x,y);
 		}
 	}
-	
-	
-	/**
-	 * Draws an image on the canvas, first scaling it in line with the 
-	 * IMAGE_WIDTH and IMAGE_HEIGHT constants.
-	 */
-	private void drawImage(double x, double y, GImage image) {
-		double sx = IMAGE_WIDTH / image.getWidth();
-		double sy = IMAGE_HEIGHT / image.getHeight();
-		image.scale(sx, sy);
-		add(image,x,y);
-	}
 
 
 	/**
@@ -104,16 +202,14 @@ public class FacePamphletCanvas extends GCanvas
 	 * and a "No Image" label centered within.
 	 */
 	private void drawImagePlaceHolder(double x, double y) {
-		GRect rect = new GRect(IMAGE_WIDTH,IMAGE_HEIGHT);
-		rect.setColor(Color.BLACK);
-		GLabel lab = new GLabel("No Image");
-		lab.setFont(PROFILE_IMAGE_FONT);
-		double labX = x + (( rect.getWidth() - lab.getWidth()) / 2 );
-		double labY = y + ((rect.getHeight() + lab.getAscent()) / 2);
-		add(rect,x,y);
-		add(lab,labX,labY);
+		double labX = x + (( placeHolderRect.getWidth() - placeHolderLab.getWidth()) / 2 );
+		double labY = y + ((placeHolderRect.getHeight() + placeHolderLab.getAscent()) / 2);
+		placeHolderRect.setLocation(x,y);
+		placeHolderLab.setLocation(labX,labY);
+		show(placeHolderRect);
+		show(placeHolderLab);
 	}
-	
+
 
 	/**
 	 * Displays a profile's status on the canvas, positioned below the image.
@@ -124,45 +220,269 @@ public class FacePamphletCanvas extends GCanvas
 		} else {
 			status = name + " is " + status;
 		}
-		GLabel statusLab = new GLabel(status);
-		statusLab.setFont(PROFILE_STATUS_FONT);
+		setLabel(statusLab, status);
 		/* Compute the Y coordinate of the image. */
 		double imageY = profileNameLab.getY() + IMAGE_MARGIN;
 		/* Set the status label's Y coordinate to be below the image, with a
 		 * margin given by the STATUS_MARGIN constant. */
 		double y = imageY + IMAGE_HEIGHT + STATUS_MARGIN + statusLab.getAscent();
-		add(statusLab,LEFT_MARGIN,y);		
+		statusLab.setLocation(LEFT_MARGIN,y);
+		show(statusLab);
+	}
+
+
+	/**
+	 * Displays the given lines (normally suggested friends for the displayed
+	 * profile) below the profile's status, under a "Suggested friends:"
+	 * heading, as many as fit above the message area.  Nothing is shown if
+	 * the list is empty.  This must be called after displayProfile in each
+	 * update for the suggestions to stay on the canvas.
+	 */
+	public void displaySuggestions(java.util.List<String> suggestions) {
+		if (suggestions.isEmpty()) {
+			hideSuggestions();
+			return;
+		}
+		double y = statusLab.getY() + STATUS_MARGIN + suggestionsLab.getAscent();
+		double bottom = getHeight() - BOTTOM_MESSAGE_MARGIN - appMessage.getAscent();
+		int shown = Math.max(0, Math.min(suggestions.size(), (int) ((bottom - y) / rowHeight)));
+		suggestionsLab.setLocation(LEFT_MARGIN, y);
+		show(suggestionsLab);
+		for (int row = 0; row < shown; row++) {
+			if (row == suggestionLabs.size()) {
+				GLabel label = new GLabel("");
+				label.setFont(profileFriendFont);
+				suggestionLabs.add(label);
+			}
+			GLabel label = suggestionLabs.get(row);
+			setLabel(label, suggestions.get(row));
+			y += rowHeight;
+			label.setLocation(LEFT_MARGIN, y);
+			show(label);
+		}
+		for (int row = shown; row < suggestionLabs.size(); row++) {
+			hide(suggestionLabs.get(row));
+		}
+		suggestionsShown = true;
+	}
+
+
+	/**
+	 * Scrolls the displayed list of friends so that the friend with the
+	 * given index (from 0) is at the top, or as near to it as the length
+	 * of the list allows.
+	 */
+	public void scrollFriendsTo(int index) {
+		firstFriend = index;
+		if (profileShown && profileDisplayed != null) {
+			displayFriends(profileDisplayed);
+		}
+	}
+
+
+	/**
+	 * Scrolls the displayed list of friends by as little as possible to
+	 * bring the friend with the given index (from 0) into view.
+	 */
+	public void showFriend(int index) {
+		int rows = visibleFriendRows();
+		if (index < firstFriend) {
+			scrollFriendsTo(index);
+		} else if (index >= firstFriend + rows) {
+			scrollFriendsTo(index - rows + 1);
+		}
 	}
-	
-	
+
+
 	/**
-	 * Displays a profile's list of friends in the right of the canvas.
+	 * Displays a profile's list of friends in the right of the canvas.  The
+	 * list is virtualized: only the friends which fit between the top of the
+	 * list and the message area are displayed, starting at the friend the
+	 * list has been scrolled to, so the cost of displaying a profile does not
+	 * depend on how many friends it has.  A fixed pool of labels, one per
+	 * visible row, is reused for whichever friends are in view, and a label's
+	 * text is only set if its friend has changed.
 	 */
-	private void displayFriends(Iterator<String> friends) {
-		GLabel label = new GLabel("Friends:");
-		label.setFont(PROFILE_FRIEND_LABEL_FONT);
+	private void displayFriends(FacePamphletProfile profile) {
 		double x = getWidth() / 2;
 		double y = profileNameLab.getY() + IMAGE_MARGIN;
-		add(label,x,y);
-		
-		while(friends.hasNext()) {
-			String friend = friends.next();
-			GLabel friendLab = new GLabel(friend);
-			friendLab.setFont(PROFILE_FRIEND_FONT);
-			y += friendLab.getHeight();
-			add(friendLab,x,y);			
+
+		/* Clamp the scroll position so that the last page is full. */
+		int count = profile.getFriendCount();
+		int rows = visibleFriendRows();
+		firstFriend = Math.max(0, Math.min(firstFriend, count - rows));
+		int shown = Math.min(rows, count - firstFriend);
+
+		if (shown < count) {
+			setLabel(friendsLab, "Friends (" + (firstFriend + 1) + "-" + (firstFriend + shown)
+					+ " of " + count + "):");
+		} else {
+			setLabel(friendsLab, "Friends:");
 		}
+		friendsLab.setLocation(x,y);
+		show(friendsLab);
+
+		/* The labels only need moving if the canvas has been resized. */
+		boolean moved = (x != friendsX);
+		friendsX = x;
+
+		for (int row = 0; row < shown; row++) {
+			GLabel friendLab;
+			if (row < friendLabs.size()) {
+				friendLab = friendLabs.get(row);
+				setLabel(friendLab, profile.getFriend(firstFriend + row));
+			} else {
+				friendLab = new GLabel(profile.getFriend(firstFriend + row));
+				friendLab.setFont(profileFriendFont);
+				friendLabs.add(friendLab);
+				moved = true;
+			}
+			y += rowHeight;
+			if (moved) {
+				friendLab.setLocation(x,y);
+			}
+			show(friendLab);
+		}
+
+		/* Hide the labels for rows which are not needed, keeping them for
+		 * reuse unless there are more than fit on the canvas. */
+		for (int row = shown; row < friendLabs.size(); row++) {
+			hide(friendLabs.get(row));
+		}
+		while (friendLabs.size() > rows) {
+			friendLabs.remove(friendLabs.size() - 1);
+		}
+	}
+
+
+	/**
+	 * Returns the number of friend rows which fit between the "Friends:"
+	 * label and the message area at the bottom of the canvas.
+	 */
+	private int visibleFriendRows() {
+		double top = TOP_MARGIN + profileNameLab.getAscent() + IMAGE_MARGIN;
+		double bottom = getHeight() - BOTTOM_MESSAGE_MARGIN - appMessage.getAscent();
+		return Math.max(0, (int) ((bottom - top) / rowHeight));
 	}
-	
+
+
+	/** Scrolls the list of friends in response to the mouse wheel. */
+	private void friendsScrolled(int rotation) {
+		if (profileShown && profileDisplayed != null) {
+			scrollFriendsTo(firstFriend + rotation * WHEEL_ROWS);
+		}
+	}
+
+
+	/**
+	 * Removes the displayed profile from the canvas, keeping its objects so
+	 * that they can be reused by the next call to displayProfile.
+	 */
+	private void hideProfile() {
+		hide(profileNameLab);
+		if (imageShown != null) {
+			hide(imageShown);
+		}
+		hide(placeHolderRect);
+		hide(placeHolderLab);
+		hide(statusLab);
+		hide(friendsLab);
+		for (GLabel friendLab: friendLabs) {
+			hide(friendLab);
+		}
+	}
+
+
+	/** Removes the suggested friends from the canvas, keeping their labels. */
+	private void hideSuggestions() {
+		hide(suggestionsLab);
+		for (GLabel label: suggestionLabs) {
+			hide(label);
+		}
+	}
+
+
+	/** Sets a label's text, if it is not already showing that text. */
+	private static void setLabel(GLabel label, String text) {
+		if (!label.getLabel().equals(text)) {
+			label.setLabel(text);
+		}
+	}
+
+
+	/** Adds an object to the canvas, unless it is already there. */
+	private void show(GObject object) {
+		if (object.getParent() != this) {
+			add(object);
+		}
+	}
+
+
+	/** Removes an object from the canvas, if it is there. */
+	private void hide(GObject object) {
+		if (object.getParent() == this) {
+			remove(object);
+		}
+	}
+
+
+	/* The number of rows of friends scrolled by each click of the mouse
+	 * wheel. */
+	private static final int WHEEL_ROWS = 3;
+
+	/* Private instance variables for the fonts, decoded once from the names
+	 * in FacePamphletConstants. */
+	private Font messageFont = JTFTools.decodeFont(MESSAGE_FONT);
+	private Font profileNameFont = JTFTools.decodeFont(PROFILE_NAME_FONT);
+	private Font profileImageFont = JTFTools.decodeFont(PROFILE_IMAGE_FONT);
+	private Font profileStatusFont = JTFTools.decodeFont(PROFILE_STATUS_FONT);
+	private Font profileFriendLabelFont = JTFTools.decodeFont(PROFILE_FRIEND_LABEL_FONT);
+	private Font profileFriendFont = JTFTools.decodeFont(PROFILE_FRIEND_FONT);
 
 	/* Private instance variable for the application message */
-	GLabel appMessage = new GLabel("");
-	
-	/* 
+	GLabel appMessage;
+
+	/*
 	 * Private instance variable for the profile name label,
-	 * to allow access to the Y coordinate for relative positioning of 
+	 * to allow access to the Y coordinate for relative positioning of
 	 * the profile image and profile status.
 	 */
 	GLabel profileNameLab;
-	
+
+	/* Private instance variables for the displayed image (or null if the
+	 * placeholder is displayed instead), and the placeholder's rectangle
+	 * and label. */
+	private GImage imageShown;
+	private GRect placeHolderRect;
+	private GLabel placeHolderLab;
+
+	/* Private instance variables for the status label, the "Friends:" label,
+	 * the pool of labels for the visible rows of friends, the X coordinate
+	 * at which they were last placed and the height of each row. */
+	private GLabel statusLab;
+	private GLabel friendsLab;
+	private ArrayList<GLabel> friendLabs;
+	private double friendsX;
+	private double rowHeight;
+
+	/* Private instance variables for the "Suggested friends:" label and the
+	 * pool of labels for the suggestions. */
+	private GLabel suggestionsLab;
+	private ArrayList<GLabel> suggestionLabs;
+
+	/* Private instance variables for the profile last displayed, and the
+	 * index of the friend shown at the top of its list. */
+	private FacePamphletProfile profileDisplayed;
+	private int firstFriend;
+
+	/* Private instance variables recording whether the profile, the
+	 * message and the suggestions have been displayed since beginUpdate
+	 * was called. */
+	private boolean profileShown;
+	private boolean messageShown;
+	private boolean suggestionsShown;
+
+	/* Private instance variable recording whether the canvas is frozen. */
+	private boolean frozen;
+
 }
@@ -0,0 +1,168 @@
+/*
+ * File: FacePamphletConcurrentBenchmark.java
+ * ------------------------------------------
+ * This program stress tests FacePamphletConcurrentDatabase.  It first
+ * measures how profile lookups scale with 1, 2, 4, ... threads, and
+ * then runs threads which make and break friendships between random
+ * profiles while another thread takes snapshots.  Since friendships are
+ * changed atomically, every snapshot, and the database at the end, must
+ * be symmetric: whenever one profile lists another, the other lists it
+ * back.
+ *
+ * Usage: java FacePamphletConcurrentBenchmark [profiles] [seconds] [maxThreads]
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class FacePamphletConcurrentBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int numProfiles = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		double seconds = (args.length > 1) ? Double.parseDouble(args[1]) : 2;
+		int maxThreads = (args.length > 2) ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+
+		/* Build a network in which each profile has a few friends. */
+		final FacePamphletConcurrentDatabase database = new FacePamphletConcurrentDatabase();
+		final String[] names = new String[numProfiles];
+		for (int i = 0; i < numProfiles; i++) {
+			names[i] = "user" + i;
+			database.addProfile(new FacePamphletProfile(names[i]));
+		}
+		Random random = new Random(1);
+		for (int i = 0; i < numProfiles * 4; i++) {
+			database.addFriendship(names[random.nextInt(numProfiles)],
+					names[random.nextInt(numProfiles)]);
+		}
+
+		/* Measure read throughput with increasing numbers of threads. */
+		double single = 0;
+		for (int threads = 1; threads <= maxThreads; threads = nextThreads(threads, maxThreads)) {
+			double rate = run(threads, seconds, false, new Task() {
+				public void step(int thread, Random random) {
+					FacePamphletProfileRecord record =
+							database.getProfile(names[random.nextInt(names.length)]);
+					if (record.getFriendCount() > 0) {
+						database.containsProfile(record.getFriend(0));
+					}
+				}
+			});
+			if (threads == 1) {
+				single = rate;
+			}
+			System.out.printf("reads, %3d threads: %12.0f ops/sec  scaling %5.2fx%n", threads,
+					rate, rate / single);
+		}
+
+		/* Make and break friendships on every thread but one, which takes
+		 * snapshots and checks that each is symmetric. */
+		final AtomicLong snapshots = new AtomicLong();
+		final AtomicLong asymmetric = new AtomicLong();
+		final int writers = Math.max(1, maxThreads - 1);
+		double rate = run(writers + 1, seconds, true, new Task() {
+			public void step(int thread, Random random) {
+				if (thread == 0) {
+					if (!isSymmetric(database.snapshot())) {
+						asymmetric.incrementAndGet();
+					}
+					snapshots.incrementAndGet();
+					return;
+				}
+				String a = names[random.nextInt(names.length)];
+				String b = names[random.nextInt(names.length)];
+				if (random.nextBoolean()) {
+					database.addFriendship(a, b);
+				} else {
+					database.removeFriendship(a, b);
+				}
+			}
+		});
+		System.out.printf("writes, %3d threads: %11.0f ops/sec, %d snapshots, %d asymmetric%n",
+				writers, rate, snapshots.get(), asymmetric.get());
+		boolean ok = isSymmetric(database.snapshot()) && asymmetric.get() == 0;
+		System.out.println(ok ? "final network is symmetric" : "FRIENDSHIPS ARE NOT SYMMETRIC");
+		if (!ok) {
+			System.exit(1);
+		}
+	}
+
+
+	/** A step of work repeated by each thread, numbered from 0. */
+	private interface Task {
+		void step(int thread, Random random);
+	}
+
+
+	/**
+	 * Runs the task repeatedly on the given number of threads for the given
+	 * time, returning the total number of steps per second.  If skipFirst
+	 * is true, the steps of thread 0 are not counted.
+	 */
+	private static double run(int threads, double seconds, final boolean skipFirst,
+			final Task task) throws Exception {
+		final long deadline = System.nanoTime() + (long) (seconds * 1e9);
+		final AtomicLong steps = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < threads; i++) {
+			final int thread = i;
+			futures.add(pool.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					Random random = new Random(thread);
+					start.await();
+					long n = 0;
+					while (System.nanoTime() < deadline) {
+						for (int j = 0; j < BATCH; j++) {
+							task.step(thread, random);
+						}
+						n += BATCH;
+					}
+					if (thread != 0 || !skipFirst) {
+						steps.addAndGet(n);
+					}
+					return null;
+				}
+			}));
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Future<?> future: futures) {
+			future.get();
+		}
+		pool.shutdown();
+		return steps.get() / ((System.nanoTime() - begin) / 1e9);
+	}
+
+
+	/** Returns true if every friendship in the snapshot goes both ways. */
+	private static boolean isSymmetric(Map<String, FacePamphletProfileRecord> snapshot) {
+		for (FacePamphletProfileRecord record: snapshot.values()) {
+			for (int i = 0; i < record.getFriendCount(); i++) {
+				FacePamphletProfileRecord friend = snapshot.get(record.getFriend(i));
+				if (friend == null || !friend.hasFriend(record.getName())) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Returns the next thread count to try after the given one: doubling,
+	 * but always finishing with the maximum itself.
+	 */
+	private static int nextThreads(int threads, int maxThreads) {
+		if (threads == maxThreads) {
+			return maxThreads + 1;
+		}
+		return Math.min(threads * 2, maxThreads);
+	}
+
+	/* The number of steps between checks of the clock. */
+	private static final int BATCH = 64;
+
+}
@@ -0,0 +1,532 @@
+/*
+ * File: FacePamphletConcurrentDatabase.java
+ * -----------------------------------------
+ * This class holds a FacePamphlet network which can be read and changed
+ * by many threads at once, for serving the network to many users from
+ * one JVM.  FacePamphletDatabase itself is only safe to use from one
+ * thread (the Swing event thread, in the application).
+ *
+ * Each profile is held as an immutable FacePamphletProfileRecord in a
+ * ConcurrentHashMap, so reads never lock: a reader simply gets the
+ * current record, which stays valid however the profile changes later.
+ * Writers replace records while holding one of a fixed set of striped
+ * locks, chosen by the hash of the profile name, so writers to
+ * different profiles rarely wait for each other.  A friendship between
+ * two profiles is made or broken under both profiles' locks (taken in a
+ * fixed order), so no reader ever sees it in only one of them.
+ * Deleting a profile takes the locks of the profile and of every
+ * profile listing it, also in a fixed order, and taking a snapshot
+ * takes every lock.
+ *
+ * Changing a profile copies its list of friends, so writes cost time in
+ * proportion to the number of friends of the profiles they change.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+public class FacePamphletConcurrentDatabase {
+
+	/**
+	 * Constructor
+	 * Creates an empty database.
+	 */
+	public FacePamphletConcurrentDatabase() {
+		profiles = new ConcurrentHashMap<String, FacePamphletProfileRecord>();
+		referrers = new ConcurrentHashMap<String, Set<String>>();
+		locks = new ReentrantLock[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+
+	/**
+	 * Returns a database holding a copy of the profiles in the given
+	 * (single-threaded) database.
+	 */
+	public static FacePamphletConcurrentDatabase copyOf(FacePamphletDatabase database) {
+		FacePamphletConcurrentDatabase copy = new FacePamphletConcurrentDatabase();
+		FacePamphletNameTable names = database.getNameTable();
+		for (int id = 0; id < names.size(); id++) {
+			FacePamphletProfile profile = database.getProfile(id);
+			if (profile != null) {
+				copy.putRecord(FacePamphletProfileRecord.of(profile));
+			}
+		}
+		return copy;
+	}
+
+
+	/**
+	 * Adds a copy of the given profile to the database, replacing any
+	 * profile with the same name.  Later changes to the profile object do
+	 * not affect the database.
+	 */
+	public void addProfile(FacePamphletProfile profile) {
+		FacePamphletProfileRecord record = FacePamphletProfileRecord.of(profile);
+		Lock lock = lockFor(record.getName());
+		lock.lock();
+		try {
+			putRecord(record);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Adds a copy of the given profile to the database unless there is
+	 * already a profile with the same name, as one atomic check and change.
+	 * Returns true if the profile was added.
+	 */
+	public boolean addProfileIfAbsent(FacePamphletProfile profile) {
+		FacePamphletProfileRecord record = FacePamphletProfileRecord.of(profile);
+		Lock lock = lockFor(record.getName());
+		lock.lock();
+		try {
+			if (profiles.containsKey(record.getName())) {
+				return false;
+			}
+			putRecord(record);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Returns the current record of the named profile, or null if there is
+	 * no such profile.  This never waits for writers.
+	 */
+	public FacePamphletProfileRecord getProfile(String name) {
+		return profiles.get(name);
+	}
+
+
+	/** Returns true if there is a profile with the given name. */
+	public boolean containsProfile(String name) {
+		return profiles.containsKey(name);
+	}
+
+
+	/** Returns the number of profiles in the database. */
+	public int size() {
+		return profiles.size();
+	}
+
+
+	/**
+	 * Removes the named profile, and removes its name from the friends of
+	 * every other profile, as one atomic change.  As in
+	 * FacePamphletDatabase.deleteProfile, the name is removed from other
+	 * profiles' friends even if there is no profile by that name.  Returns
+	 * true if there was such a profile.
+	 */
+	public boolean deleteProfile(String name) {
+		/* Lock the profile and the profiles listing it.  A profile can
+		 * start listing it before the locks are held, so the listing is
+		 * checked again once they are, and the locks taken again if it has
+		 * grown. */
+		long held = 0;
+		while (true) {
+			long wanted = held | (1L << stripe(name)) | referrerStripes(name);
+			lockStripes(wanted);
+			held = wanted;
+			if ((referrerStripes(name) & ~held) == 0) {
+				break;
+			}
+			unlockStripes(held);
+		}
+		try {
+			FacePamphletProfileRecord removed = profiles.remove(name);
+			if (removed != null) {
+				unindexFriends(removed);
+			}
+			Set<String> listing = referrers.get(name);
+			if (listing != null) {
+				for (String referrer: listing) {
+					if ((held & (1L << stripe(referrer))) == 0) {
+						/* The referrer has just listed the name under its own
+						 * lock, which counts as coming after this delete. */
+						continue;
+					}
+					FacePamphletProfileRecord record = profiles.get(referrer);
+					if (record != null) {
+						profiles.put(referrer, record.withoutFriend(name));
+					}
+					listing.remove(referrer);
+				}
+			}
+			return removed != null;
+		} finally {
+			unlockStripes(held);
+		}
+	}
+
+
+	/**
+	 * Sets the status of the named profile.  Returns false if there is no
+	 * such profile.
+	 */
+	public boolean setStatus(String name, String status) {
+		Lock lock = lockFor(name);
+		lock.lock();
+		try {
+			FacePamphletProfileRecord record = profiles.get(name);
+			if (record == null) {
+				return false;
+			}
+			profiles.put(name, record.withStatus(status));
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Sets the image filename of the named profile.  Returns false if there
+	 * is no such profile.
+	 */
+	public boolean setImageString(String name, String filename) {
+		Lock lock = lockFor(name);
+		lock.lock();
+		try {
+			FacePamphletProfileRecord record = profiles.get(name);
+			if (record == null) {
+				return false;
+			}
+			profiles.put(name, record.withImageString(filename));
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Adds the named friend to the named profile's list of friends only.
+	 * Returns true if the friend was added, or false if there is no such
+	 * profile or the friend was already listed.
+	 */
+	public boolean addFriend(String name, String friend) {
+		Lock lock = lockFor(name);
+		lock.lock();
+		try {
+			return addOneWay(name, friend);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Removes the named friend from the named profile's list of friends
+	 * only.  Returns true if the friend was removed.
+	 */
+	public boolean removeFriend(String name, String friend) {
+		Lock lock = lockFor(name);
+		lock.lock();
+		try {
+			return removeOneWay(name, friend);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Makes the two named profiles friends of each other, as one atomic
+	 * change, just as FacePamphletDatabase.addFriendship does.  Returns
+	 * false, changing nothing, if either profile does not exist or the
+	 * first already lists the second.
+	 */
+	public boolean addFriendship(String name, String friend) {
+		lockPair(name, friend);
+		try {
+			FacePamphletProfileRecord record = profiles.get(name);
+			if (record == null || !profiles.containsKey(friend) || record.hasFriend(friend)) {
+				return false;
+			}
+			addOneWay(name, friend);
+			addOneWay(friend, name);
+			return true;
+		} finally {
+			unlockPair(name, friend);
+		}
+	}
+
+
+	/**
+	 * Removes the two named profiles from each other's friends, as one
+	 * atomic change.  Returns true if either listed the other.
+	 */
+	public boolean removeFriendship(String name, String friend) {
+		lockPair(name, friend);
+		try {
+			boolean removed = removeOneWay(name, friend);
+			return removeOneWay(friend, name) || removed;
+		} finally {
+			unlockPair(name, friend);
+		}
+	}
+
+
+	/**
+	 * Returns a consistent snapshot of every profile, taken while no write
+	 * is in progress.  The snapshot is unaffected by later changes, and
+	 * iterates in no particular order.
+	 */
+	public Map<String, FacePamphletProfileRecord> snapshot() {
+		lockAll();
+		try {
+			return Collections.unmodifiableMap(
+					new HashMap<String, FacePamphletProfileRecord>(profiles));
+		} finally {
+			unlockAll();
+		}
+	}
+
+
+	/**
+	 * Returns a (single-threaded) FacePamphletDatabase holding a consistent
+	 * snapshot of the profiles.
+	 */
+	public FacePamphletDatabase toDatabase() {
+		FacePamphletDatabase database = new FacePamphletDatabase();
+		for (FacePamphletProfileRecord record: snapshot().values()) {
+			database.addProfile(record.toProfile());
+		}
+		return database;
+	}
+
+
+	/**
+	 * Reads in a network file with FacePamphletDatabase.readDataFile, and
+	 * replays its journal if it has one, replacing the contents of this
+	 * database as one atomic change.
+	 */
+	public void readDataFile(String filename) throws IOException {
+		FacePamphletDatabase database = new FacePamphletDatabase();
+		database.readDataFile(filename);
+		FacePamphletJournal.replay(filename, database);
+		FacePamphletConcurrentDatabase loaded = copyOf(database);
+		lockAll();
+		try {
+			profiles.clear();
+			referrers.clear();
+			profiles.putAll(loaded.profiles);
+			referrers.putAll(loaded.referrers);
+		} finally {
+			unlockAll();
+		}
+	}
+
+
+	/**
+	 * Saves a consistent snapshot of the database as a text network file,
+	 * with FacePamphletDatabase.saveDataFile, and deletes the file's
+	 * journal, which no longer applies to it.
+	 */
+	public void saveDataFile(String filename) throws IOException {
+		toDatabase().saveDataFile(filename);
+		Files.deleteIfExists(Paths.get(FacePamphletJournal.journalFilename(filename)));
+	}
+
+
+	/**
+	 * Adds the named friend to the named profile's record, whose lock must
+	 * be held.  Returns true if it was added.
+	 */
+	private boolean addOneWay(String name, String friend) {
+		FacePamphletProfileRecord record = profiles.get(name);
+		if (record == null) {
+			return false;
+		}
+		FacePamphletProfileRecord updated = record.withFriend(friend);
+		if (updated == record) {
+			return false;
+		}
+		profiles.put(name, updated);
+		referrersOf(friend).add(name);
+		return true;
+	}
+
+
+	/**
+	 * Removes the named friend from the named profile's record, whose lock
+	 * must be held.  Returns true if it was removed.
+	 */
+	private boolean removeOneWay(String name, String friend) {
+		FacePamphletProfileRecord record = profiles.get(name);
+		if (record == null) {
+			return false;
+		}
+		FacePamphletProfileRecord updated = record.withoutFriend(friend);
+		if (updated == record) {
+			return false;
+		}
+		profiles.put(name, updated);
+		Set<String> listing = referrers.get(friend);
+		if (listing != null) {
+			listing.remove(name);
+		}
+		return true;
+	}
+
+
+	/**
+	 * Stores the given record, replacing any record with the same name and
+	 * keeping the index of who lists each name up to date.  The record's
+	 * lock must be held (or the database not yet shared).
+	 */
+	private void putRecord(FacePamphletProfileRecord record) {
+		FacePamphletProfileRecord replaced = profiles.put(record.getName(), record);
+		if (replaced != null) {
+			unindexFriends(replaced);
+		}
+		for (int i = 0; i < record.getFriendCount(); i++) {
+			referrersOf(record.getFriend(i)).add(record.getName());
+		}
+	}
+
+
+	/** Removes the entries in the index of who lists each name for a record. */
+	private void unindexFriends(FacePamphletProfileRecord record) {
+		for (int i = 0; i < record.getFriendCount(); i++) {
+			Set<String> listing = referrers.get(record.getFriend(i));
+			if (listing != null) {
+				listing.remove(record.getName());
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the set of names of the profiles which list the given name as
+	 * a friend, creating it if necessary.  Empty sets are left in place, so
+	 * that a set is never dropped while another writer is adding to it.
+	 */
+	private Set<String> referrersOf(String name) {
+		Set<String> listing = referrers.get(name);
+		if (listing == null) {
+			Set<String> created = Collections.newSetFromMap(
+					new ConcurrentHashMap<String, Boolean>());
+			listing = referrers.putIfAbsent(name, created);
+			if (listing == null) {
+				listing = created;
+			}
+		}
+		return listing;
+	}
+
+
+	/** Returns the index of the lock guarding the named profile. */
+	private static int stripe(String name) {
+		return FacePamphletNameTable.mix(name.hashCode()) & (STRIPES - 1);
+	}
+
+
+	/** Returns the lock guarding the named profile. */
+	private Lock lockFor(String name) {
+		return locks[stripe(name)];
+	}
+
+
+	/**
+	 * Locks both named profiles, taking the two locks in index order so
+	 * that two threads locking the same pair can never deadlock.
+	 */
+	private void lockPair(String a, String b) {
+		int first = Math.min(stripe(a), stripe(b));
+		int second = Math.max(stripe(a), stripe(b));
+		locks[first].lock();
+		if (second != first) {
+			locks[second].lock();
+		}
+	}
+
+
+	/** Unlocks the two named profiles locked by lockPair. */
+	private void unlockPair(String a, String b) {
+		int first = Math.min(stripe(a), stripe(b));
+		int second = Math.max(stripe(a), stripe(b));
+		if (second != first) {
+			locks[second].unlock();
+		}
+		locks[first].unlock();
+	}
+
+
+	/**
+	 * Returns the set of the stripes of the profiles which list the given
+	 * name as a friend, as a bit mask.
+	 */
+	private long referrerStripes(String name) {
+		long stripes = 0;
+		Set<String> listing = referrers.get(name);
+		if (listing != null) {
+			for (String referrer: listing) {
+				stripes |= 1L << stripe(referrer);
+			}
+		}
+		return stripes;
+	}
+
+
+	/**
+	 * Takes the locks whose bits are set in the given mask, in index order,
+	 * as lockPair does.
+	 */
+	private void lockStripes(long stripes) {
+		for (int i = 0; i < STRIPES; i++) {
+			if ((stripes & (1L << i)) != 0) {
+				locks[i].lock();
+			}
+		}
+	}
+
+
+	/** Releases the locks taken by lockStripes with the given mask. */
+	private void unlockStripes(long stripes) {
+		for (int i = STRIPES - 1; i >= 0; i--) {
+			if ((stripes & (1L << i)) != 0) {
+				locks[i].unlock();
+			}
+		}
+	}
+
+
+	/** Takes every lock, in index order. */
+	private void lockAll() {
+		for (Lock lock: locks) {
+			lock.lock();
+		}
+	}
+
+
+	/** Releases every lock taken by lockAll. */
+	private void unlockAll() {
+		for (int i = STRIPES - 1; i >= 0; i--) {
+			locks[i].unlock();
+		}
+	}
+
+	/* The number of striped locks (a power of two, and at most 64, so that
+	 * a set of them fits in the bits of a long). */
+	private static final int STRIPES = 64;
+
+	/* Instance variables for the current record of each profile by name,
+	 * and for each name the profiles which list it as a friend. */
+	private ConcurrentHashMap<String, FacePamphletProfileRecord> profiles;
+	private ConcurrentHashMap<String, Set<String>> referrers;
+
+	/* The striped locks guarding changes to the profiles. */
+	private ReentrantLock[] locks;
+
+}
@@ -75,6 +75,52 @@ public interface FacePamphletConstants {
 	 *  in the profile */		
 	public static final double STATUS_MARGIN = 20;	
 	
+	/** Network files at least this many bytes long are opened lazily
+	 *  through a memory mapping rather than read in full when loaded */
+	public static final long MAPPED_FILE_THRESHOLD = 64L * 1024 * 1024;
+	
+	/** Network files saved with a name ending in this extension are
+	 *  written in the compact binary format rather than as text */
+	public static final String BINARY_FILE_EXTENSION = ".fpb";
+	
+	/** The most memory (in bytes of decoded pixels) used to cache
+	 *  profile images once they have been opened */
+	public static final long IMAGE_CACHE_BYTES = 64L * 1024 * 1024;
+	
+	/** The number of profile images kept in memory ready scaled to
+	 *  IMAGE_WIDTH by IMAGE_HEIGHT for display */
+	public static final int THUMBNAIL_CACHE_SIZE = 256;
+	
+	/** The system property naming a directory in which scaled profile
+	 *  images are also kept between runs (if it is set) */
+	public static final String THUMBNAIL_DIR_PROPERTY = "facepamphlet.thumbnailDir";
+	
+	/** The number of suggested friends shown below a profile's status */
+	public static final int SUGGESTION_COUNT = 5;
+	
+	/** The number of similar names offered when a profile looked up
+	 *  does not exist */
+	public static final int NAME_SUGGESTION_COUNT = 3;
+	
+	/** The most edits (changed, missing, extra or swapped letters) by
+	 *  which a similar name offered may differ from the name looked up */
+	public static final int NAME_SUGGESTION_DISTANCE = 2;
+	
+	/** The longest time (in milliseconds) spent looking for a chain of
+	 *  friends between two profiles before giving up */
+	public static final long PATH_TIMEOUT_MILLIS = 2000;
+	
+	/** The system property which, if set to true when the program starts,
+	 *  makes each database time its operations (see FacePamphletMetrics) */
+	public static final String METRICS_PROPERTY = "facepamphlet.metrics";
+	
+	/** The system property giving the number of seconds between dumps of
+	 *  the metrics to standard error (there are none if it is not set) */
+	public static final String METRICS_DUMP_PROPERTY = "facepamphlet.metricsDump";
+	
+	/** The local TCP port on which FacePamphletServer listens by default */
+	public static final int SERVER_PORT = 7070;
+	
 	/**
 	 * Action command Strings for the buttons and text fields used in the
 	 * control bars.
@@ -85,8 +131,11 @@ public interface FacePamphletConstants {
 	public static final String ADD_FRIEND = "Add Friend";
 	public static final String CHG_STATUS = "Change Status";
 	public static final String CHG_PICTURE = "Change Picture";
+	public static final String FIND_PATH = "Find Connection";
 	public static final String SAVE_FILE = "Save";
 	public static final String LOAD_FILE = "Load";
+	public static final String CANCEL_FILE = "Cancel";
+	public static final String REPAIR_FRIENDS = "Repair Friends";
 	
 }
 
@@ -0,0 +1,46 @@
+/*
+ * File: FacePamphletConverter.java
+ * --------------------------------
+ * This program converts a network file between the text format and
+ * the compact binary format.  The input format is detected from the
+ * file's magic number, and the output format is chosen by the output
+ * filename: binary if it ends in BINARY_FILE_EXTENSION, text otherwise.
+ * With -repair, friends which are not profiles are dropped and
+ * friendships listed by only one profile are completed on the way, as
+ * by FacePamphletDatabase.checkIntegrity.
+ *
+ * Usage: java FacePamphletConverter [-repair] input output
+ */
+
+import java.io.*;
+
+public class FacePamphletConverter implements FacePamphletConstants {
+
+	public static void main(String[] args) throws IOException {
+		boolean repair = args.length == 3 && args[0].equals("-repair");
+		if (args.length != (repair ? 3 : 2)) {
+			System.err.println("Usage: java FacePamphletConverter [-repair] input output");
+			System.exit(1);
+		}
+		String input = args[repair ? 1 : 0];
+		String output = args[repair ? 2 : 1];
+
+		FacePamphletDatabase database = new FacePamphletDatabase();
+		database.readDataFile(input);
+		System.out.println("Read " + input + ": " + database.getLoadStats());
+		if (repair) {
+			System.out.println("Repaired " + input + ": " + database.checkIntegrity(true));
+		}
+
+		long start = System.nanoTime();
+		if (output.endsWith(BINARY_FILE_EXTENSION)) {
+			database.saveBinaryFile(output);
+		} else {
+			database.saveDataFile(output);
+		}
+		System.out.printf("Wrote %s in %d ms (%d bytes, was %d bytes)%n", output,
+				(System.nanoTime() - start) / 1000000, new File(output).length(),
+				new File(input).length());
+	}
+
+}
@@ -4,13 +4,19 @@
  * This class keeps track of the profiles of all users in the
  * FacePamphlet application.  Note that profile names are case
  * sensitive, so that "ALICE" and "alice" are NOT the same name.
+ *
+ * Every name seen by the database, whether as a profile or as a
+ * friend, is given a dense integer ID by a FacePamphletNameTable.
+ * Profiles are stored in an array indexed by ID and friend lists are
+ * sets of IDs, so the String based methods below are a thin view over
+ * these primitive arrays.
  */
 
 import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
 import java.util.*;
 
-import acm.graphics.GImage;
-
 public class FacePamphletDatabase implements FacePamphletConstants {
 
 	/** 
@@ -19,7 +25,10 @@ public class FacePamphletDatabase implements FacePamphletConstants {
 	 * the database.
 	 */
 	public FacePamphletDatabase() {
-		database = new HashMap<String, FacePamphletProfile>();
+		names = new FacePamphletNameTable();
+		profiles = new FacePamphletProfile[INITIAL_CAPACITY];
+		friendedBy = new FacePamphletIdSet[INITIAL_CAPACITY];
+		profileCount = 0;
 	}
 	
 	
@@ -30,17 +39,167 @@ public class FacePamphletDatabase implements FacePamphletConstants {
 	 * the new profile passed in.
 	 */
 	public void addProfile(FacePamphletProfile profile) {
+		long start = FacePamphletMetrics.ENABLED ? System.nanoTime() : 0;
+		putProfile(profile);
+		if (journal != null) {
+			journal.recordAddProfile(profile);
+		}
+		if (FacePamphletMetrics.ENABLED) {
+			recordTime(FacePamphletMetrics.ADD, start);
+		}
+	}
+	
+	
+	/**
+	 * Adds the given profile to the database, replacing any profile with
+	 * the same name, without recording it in the journal.  Used by
+	 * addProfile, which journals the change itself, and by profileAt for
+	 * profiles read in from a mapped file, which are not changes.
+	 */
+	private void putProfile(FacePamphletProfile profile) {
 		String key = profile.getName();
-		database.put(key, profile);
+		int id = names.intern(key);
+		
+		/* Make sure the profile's friend IDs come from this database's
+		 * name table, which may assign new IDs for its friends. */
+		profile.setNameTable(names);
+		ensureCapacity(names.size());
+		
+		FacePamphletProfile replaced = profiles[id];
+		if (replaced == profile) {
+			return;
+		}
+		
+		/* Drop the reverse index entries of any profile being replaced, then
+		 * index the friends of the new profile and start tracking its changes. */
+		if (replaced != null) {
+			unindexFriends(replaced);
+			detach(replaced);
+		} else if (mapped == null || !mapped.take(id)) {
+			/* A profile still waiting in a mapped file was already counted. */
+			profileCount++;
+		}
+		if (replaced == null && nameIndex != null) {
+			nameIndex.add(id);
+		}
+		profiles[id] = profile;
+		indexFriends(profile, id);
+		profile.setDatabase(this, id);
 	}
 
 	
+	/**
+	 * Adds all the profiles and friendships in the given batch to the
+	 * database, much faster than adding them one at a time.  The profiles
+	 * are added first, just as addProfile would add them.  Each friendship
+	 * then makes the two profiles friends of each other, as addFriendship
+	 * does, except that it completes a friendship listed by only one of the
+	 * two, and friendships naming a profile which does not exist (or
+	 * naming the same profile twice) are skipped.  The friends added to a
+	 * profile are added in the order their names were first seen by the
+	 * database, not in batch order.  Returns the number of entries added to
+	 * lists of friends, which is two for each new friendship.
+	 */
+	public int addBatch(FacePamphletBatch batch) {
+		/* Size the name table and profile arrays once for the new profiles. */
+		List<FacePamphletProfile> added = batch.getProfiles();
+		names.ensureCapacity(names.size() + added.size());
+		ensureCapacity(names.size() + added.size());
+		for (FacePamphletProfile profile: added) {
+			addProfile(profile);
+		}
+		
+		/* Turn each friendship into a pair of IDs in each direction, packed
+		 * into a long with the profile ID above the friend ID, and sort them.
+		 * Duplicates then sit next to each other, and each profile's new
+		 * friends form a single run. */
+		long[] pairs = new long[batch.getFriendshipCount() * 2];
+		int count = 0;
+		for (int i = 0; i < batch.getFriendshipCount(); i++) {
+			int id = names.lookup(batch.getName(i));
+			int friendId = names.lookup(batch.getFriend(i));
+			if (id < 0 || friendId < 0 || id == friendId
+					|| profileAt(id) == null || profileAt(friendId) == null) {
+				continue;
+			}
+			pairs[count++] = ((long) id << 32) | friendId;
+			pairs[count++] = ((long) friendId << 32) | id;
+		}
+		Arrays.sort(pairs, 0, count);
+		
+		/* Squeeze out the duplicates, counting how many new entries each
+		 * friend may get in the reverse index. */
+		int unique = 0;
+		int[] incoming = new int[names.size()];
+		for (int i = 0; i < count; i++) {
+			if (unique == 0 || pairs[i] != pairs[unique - 1]) {
+				pairs[unique++] = pairs[i];
+				incoming[(int) pairs[i]]++;
+			}
+		}
+		for (int id = 0; id < incoming.length; id++) {
+			if (incoming[id] > 0) {
+				if (friendedBy[id] == null) {
+					friendedBy[id] = new FacePamphletIdSet();
+				}
+				friendedBy[id].ensureCapacity(friendedBy[id].size() + incoming[id]);
+			}
+		}
+		
+		/* Add each profile's run of friends after sizing its friend set for
+		 * them.  Pairs already listed are rejected by the set itself. */
+		int entries = 0;
+		for (int start = 0; start < unique; ) {
+			int id = (int) (pairs[start] >>> 32);
+			int end = start;
+			while (end < unique && (int) (pairs[end] >>> 32) == id) {
+				end++;
+			}
+			FacePamphletProfile profile = profiles[id];
+			profile.getFriendIds().ensureCapacity(profile.getFriendCount() + end - start);
+			for (int i = start; i < end; i++) {
+				if (profile.addFriendId((int) pairs[i])) {
+					entries++;
+				}
+			}
+			start = end;
+		}
+		
+		/* Drop any reverse index sets made above which stayed empty because
+		 * the friendships were already there. */
+		for (int id = 0; id < incoming.length; id++) {
+			if (incoming[id] > 0 && friendedBy[id].size() == 0) {
+				friendedBy[id] = null;
+			}
+		}
+		return entries;
+	}
+	
+	
 	/** 
 	 * This method returns the profile associated with the given name 
 	 * in the database.
 	 */
 	public FacePamphletProfile getProfile(String name) {
-		FacePamphletProfile profile = database.get(name);
+		long start = FacePamphletMetrics.ENABLED ? System.nanoTime() : 0;
+		FacePamphletProfile profile = findProfile(name);
+		if (FacePamphletMetrics.ENABLED) {
+			recordTime(FacePamphletMetrics.GET, start);
+		}
+		return profile;
+	}
+	
+	
+	/**
+	 * Returns the profile with the given name, or null if there is none.
+	 * This is getProfile without the timing, for use within the database.
+	 */
+	private FacePamphletProfile findProfile(String name) {
+		int id = names.lookup(name);
+		if (id < 0) {
+			return null;
+		}
+		FacePamphletProfile profile = profileAt(id);
 		return profile;
 	}
 	
@@ -55,19 +214,65 @@ public class FacePamphletDatabase implements FacePamphletConstants {
 	 * the database is unchanged after calling this method.
 	 */
 	public void deleteProfile(String name) {
-		/* Remove the profile from the database. */
-		database.remove(name);
-		
-		/* Remove the profile name from the friend lists of any profiles
-		 * which contain it. */
-		for( String key: database.keySet() ) {
-			Iterator<String> friendIterator = database.get(key).getFriends();
-			while( friendIterator.hasNext() ) {
-				if (friendIterator.next().equals(name)) {
-					friendIterator.remove();
-					break;
+		long start = FacePamphletMetrics.ENABLED ? System.nanoTime() : 0;
+		removeProfile(name);
+		if (FacePamphletMetrics.ENABLED) {
+			recordTime(FacePamphletMetrics.DELETE, start);
+		}
+	}
+	
+	
+	/**
+	 * Removes the profile with the given name, as described in
+	 * deleteProfile, without timing the removal.
+	 */
+	private void removeProfile(String name) {
+		int id = names.lookup(name);
+		if (id < 0) {
+			return;
+		}
+		
+		/* The reverse index only covers profiles which have been read, so
+		 * any still waiting in a mapped file must be read in first. */
+		materializeAll();
+		if (journal != null) {
+			journal.recordDeleteProfile(name);
+		}
+		
+		/* Remove the profile from the database, along with the reverse index
+		 * entries for its own friends. */
+		FacePamphletProfile removed = profiles[id];
+		if (removed != null) {
+			profiles[id] = null;
+			profileCount--;
+			if (nameIndex != null) {
+				nameIndex.remove(id);
+			}
+			unindexFriends(removed);
+			detach(removed);
+		}
+		
+		/* Remove the profile name from the friend lists of the profiles which
+		 * list it, as recorded in the reverse index.  Only these profiles are
+		 * touched, so the cost depends on how many profiles list the name
+		 * rather than on the size of the whole database.  Replaying the
+		 * deletion from the journal removes the name again, so these changes
+		 * are not journaled themselves. */
+		FacePamphletIdSet referrers = friendedBy[id];
+		friendedBy[id] = null;
+		FacePamphletJournal saved = journal;
+		journal = null;
+		try {
+			if (referrers != null) {
+				for (int pos = 0; pos < referrers.end(); pos++) {
+					int referrer = referrers.get(pos);
+					if (referrer >= 0 && profiles[referrer] != null) {
+						profiles[referrer].removeFriendId(id);
+					}
 				}
 			}
+		} finally {
+			journal = saved;
 		}
 	}
 
@@ -77,129 +282,1100 @@ public class FacePamphletDatabase implements FacePamphletConstants {
 	 * that has the given name.  It returns false otherwise.
 	 */
 	public boolean containsProfile(String name) {
-		if (database.containsKey(name)) {
-			return true;
-		} else {
+		long start = FacePamphletMetrics.ENABLED ? System.nanoTime() : 0;
+		boolean found = (findProfile(name) != null);
+		if (FacePamphletMetrics.ENABLED) {
+			recordTime(FacePamphletMetrics.CONTAINS, start);
+		}
+		return found;
+	}
+	
+	
+	/**
+	 * Returns the names of the friends listed by both named profiles, in the
+	 * order the first added them, or an empty list if either profile does
+	 * not exist.
+	 */
+	public List<String> getMutualFriends(String name, String other) {
+		FacePamphletProfile profile = findProfile(name);
+		FacePamphletProfile otherProfile = findProfile(other);
+		if (profile == null || otherProfile == null) {
+			return new ArrayList<String>();
+		}
+		return namesOf(getFriendQueries().mutualFriends(profile, otherProfile));
+	}
+	
+	
+	/**
+	 * Returns the number of friends listed by both named profiles, or 0 if
+	 * either profile does not exist.
+	 */
+	public int getMutualFriendCount(String name, String other) {
+		FacePamphletProfile profile = findProfile(name);
+		FacePamphletProfile otherProfile = findProfile(other);
+		if (profile == null || otherProfile == null) {
+			return 0;
+		}
+		return getFriendQueries().mutualFriendCount(profile, otherProfile);
+	}
+	
+	
+	/**
+	 * Returns the names of up to limit suggested friends for the named
+	 * profile: profiles which are friends of its friends but not yet its
+	 * friends, with those having the most friends in common with it first.
+	 * Returns an empty list if there is no such profile.
+	 */
+	public List<String> suggestFriends(String name, int limit) {
+		return suggestFriends(name, limit, null);
+	}
+	
+	
+	/**
+	 * Returns the names of up to limit suggested friends for the named
+	 * profile, as suggestFriends(name, limit) does.  If mutual is not null,
+	 * the number of friends each suggestion has in common with the profile
+	 * is added to it, in the same order, as counted while finding them.
+	 */
+	public List<String> suggestFriends(String name, int limit, List<Integer> mutual) {
+		FacePamphletProfile profile = findProfile(name);
+		if (profile == null) {
+			return new ArrayList<String>();
+		}
+		int[] counts = (mutual == null) ? null : new int[Math.max(limit, 0)];
+		int[] ids = getFriendQueries().suggestFriends(profile, limit, counts);
+		for (int i = 0; mutual != null && i < ids.length; i++) {
+			mutual.add(counts[i]);
+		}
+		return namesOf(ids);
+	}
+	
+	
+	/**
+	 * Returns the degrees of separation from the first named profile to the
+	 * second, following lists of friends: 0 for the same profile, 1 for a
+	 * friend, 2 for a friend of a friend, and so on.  Returns -1 if either
+	 * profile does not exist or the second cannot be reached from the first.
+	 */
+	public int getDegreesOfSeparation(String name, String other) {
+		FacePamphletProfile profile = findProfile(name);
+		FacePamphletProfile otherProfile = findProfile(other);
+		if (profile == null || otherProfile == null) {
+			return -1;
+		}
+		return getFriendQueries().degreesOfSeparation(profile, otherProfile);
+	}
+	
+	
+	/**
+	 * Returns the names of up to limit profiles which start with the given
+	 * prefix, ignoring case, in alphabetical order.
+	 */
+	public List<String> completeName(String prefix, int limit) {
+		return namesOf(getNameIndex().complete(prefix, limit));
+	}
+	
+	
+	/**
+	 * Returns the names of up to limit profiles which are within the given
+	 * number of edits of the given name, ignoring case, closest first and
+	 * then in alphabetical order.  An edit is inserting, deleting or
+	 * changing a letter, or swapping two adjacent letters.
+	 */
+	public List<String> findSimilarNames(String name, int maxDistance, int limit) {
+		return namesOf(getNameIndex().findSimilar(name, maxDistance, limit));
+	}
+	
+	
+	/**
+	 * Returns the shortest chain of friends from the first named profile to
+	 * the second, following lists of friends, with no limit on its length
+	 * or on the time taken.
+	 */
+	public FacePamphletPath findPath(String name, String other) {
+		return findPath(name, other, 0, 0);
+	}
+	
+	
+	/**
+	 * Returns the shortest chain of friends from the first named profile to
+	 * the second, following lists of friends, found by a search from both
+	 * ends run in parallel by FacePamphletPathFinder.  Only chains of at most
+	 * maxDepth friendships are looked for, and the search gives up after
+	 * timeoutMillis milliseconds (either may be zero for no limit).  The
+	 * result says how many profiles were visited, and is empty if there is
+	 * no such chain or either profile does not exist.
+	 */
+	public FacePamphletPath findPath(String name, String other, int maxDepth,
+			long timeoutMillis) {
+		long start = System.nanoTime();
+		FacePamphletProfile profile = findProfile(name);
+		FacePamphletProfile otherProfile = findProfile(other);
+		if (profile == null || otherProfile == null) {
+			return new FacePamphletPath(new ArrayList<String>(), 0, System.nanoTime() - start,
+					false);
+		}
+		
+		/* The search reads the reverse index, which only covers profiles
+		 * which have been read, and must not read profiles in on the way
+		 * since it runs on several threads. */
+		materializeAll();
+		if (pathFinder == null) {
+			pathFinder = new FacePamphletPathFinder(this);
+		}
+		long deadline = (timeoutMillis > 0) ? start + timeoutMillis * 1000000 : Long.MAX_VALUE;
+		int[] ids = pathFinder.findPath(profile.getId(), otherProfile.getId(),
+				(maxDepth > 0) ? maxDepth : Integer.MAX_VALUE, deadline);
+		return new FacePamphletPath(namesOf(ids == null ? new int[0] : ids),
+				pathFinder.getVisited(), System.nanoTime() - start, pathFinder.isTimedOut());
+	}
+	
+	
+	/**
+	 * Makes the two named profiles friends of each other, as a single
+	 * operation.  Returns true if the friendship was made, or false
+	 * (leaving both profiles unchanged) if either profile does not exist or
+	 * the first profile already lists the second as a friend.
+	 */
+	public boolean addFriendship(String name, String friend) {
+		long start = FacePamphletMetrics.ENABLED ? System.nanoTime() : 0;
+		boolean added = befriend(name, friend);
+		if (FacePamphletMetrics.ENABLED) {
+			recordTime(FacePamphletMetrics.BEFRIEND, start);
+		}
+		return added;
+	}
+	
+	
+	/**
+	 * Makes the two named profiles friends of each other, as described in
+	 * addFriendship, without timing the change.
+	 */
+	private boolean befriend(String name, String friend) {
+		FacePamphletProfile profile = findProfile(name);
+		FacePamphletProfile friendProfile = findProfile(friend);
+		if (profile == null || friendProfile == null || !profile.addFriend(friend)) {
 			return false;
 		}
+		friendProfile.addFriend(name);
+		return true;
+	}
+	
+	
+	/**
+	 * Checks that every friend listed by a profile is another profile which
+	 * lists it back, using all available processors.  This is the same as
+	 * checkIntegrity(repair, availableProcessors).
+	 */
+	public FacePamphletIntegrityReport checkIntegrity(boolean repair) {
+		return checkIntegrity(repair, Runtime.getRuntime().availableProcessors());
+	}
+	
+	
+	/**
+	 * Checks that every friend listed by a profile is another profile which
+	 * lists it back, using the given number of threads, as described in
+	 * FacePamphletIntegrityCheck.  Files may list friends which have no
+	 * profile and friendships in only one direction, which the rest of the
+	 * application never makes.  If repair is true, friends which are not
+	 * profiles (or are the profile itself) are removed and one-sided
+	 * friendships are completed.  Returns a report of the problems found.
+	 */
+	public FacePamphletIntegrityReport checkIntegrity(boolean repair, int threads) {
+		materializeAll();
+		return new FacePamphletIntegrityCheck(this, threads).run(repair);
 	}
 	
 	
 	/**
-	 * Reads in a data (text) file, overwriting the current database with its contents.
+	 * Reads in a data file, overwriting the current database with its contents.
+	 * Files in the binary format written by saveBinaryFile are recognised by
+	 * their magic number and read with FacePamphletBinaryFormat; text files
+	 * are streamed through a FacePamphletLineReader rather than read
+	 * into memory.  Any problem opening or parsing the file is thrown as an
+	 * IOException (a FacePamphletFormatException giving the line number if
+	 * the file is malformed), and the database is then left unchanged.
 	 */
 	public void readDataFile(String filename) throws IOException {
+		if (FacePamphletBinaryFormat.isBinaryFile(filename)) {
+			readBinaryFile(filename);
+			return;
+		}
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
 		try {
-			/* Create a BufferedReader object for the file with name given by the parameter. */
-			BufferedReader rd = new BufferedReader(new FileReader(filename));		
-			
-			/* Clear the database of all existing profiles */
-			database.clear();
+			long start = System.nanoTime();
 			
-			/* Read in the number of profiles given by first line of the file. */
-			int numProfiles = Integer.parseInt(rd.readLine());
+			/* Parse the profiles into a separate database, and only take its
+			 * contents over once the whole file has been read successfully. */
+			FacePamphletLineReader rd = new FacePamphletLineReader(
+					FacePamphletProgressChannel.wrap(channel, progress, channel.size()));
+			FacePamphletDatabase loaded = new FacePamphletDatabase();
+			loaded.readProfiles(rd);
+			adopt(loaded);
 			
-			/* Parse each profile from the text file and add it to the database. */
-			for (int i = 0; i < numProfiles; i++) {
-				
-				/* Get the name, image filename and status for the next profile. */
-				String name = rd.readLine();
-				String imageName = rd.readLine();
-				String status = rd.readLine();
-				
-				/* Create a profile object using the name above. */
-				FacePamphletProfile profile = new FacePamphletProfile(name);
-				
-				/* If the image filename is not blank, set the profile's image to
-				 * this file, and store the filename in the profile's imageString
-				 * variable. */
-				if (!imageName.equals("")) {
-					profile.setImage(new GImage(imageName));
-					profile.setImageString(imageName);
-				}
-				
-				/* Sets the status of the profile. */
-				if (!status.equals("")) {
-					profile.setStatus(status);
-				}
-				
-				/* Reads the remaining lines until the next line break, adding each
-				 * line as a friend to the profile's friend list. */
-				while (true) {
-					String friend = rd.readLine();
-					if (friend.equals("")) {
-						break;
-					} else {
-						profile.addFriend(friend);	
-					}
-				}
-				
-				/* Add the newly created profile to the database. */
-				database.put(name, profile);
+			loadStats = new FacePamphletLoadStats(profileCount, rd.bytesRead(),
+					System.nanoTime() - start);
+			if (FacePamphletMetrics.ENABLED) {
+				getMetrics().record(FacePamphletMetrics.LOAD, loadStats.getNanos());
 			}
+		} finally {
+			channel.close();
+		}
+	}
+	
+	
+	/**
+	 * Opens a network file for lazy reading, overwriting the current database.
+	 * Only the profile names are read now, and the file is memory-mapped so
+	 * that each profile is parsed the first time getProfile or containsProfile
+	 * asks for it.  This makes opening a very large network nearly instant.
+	 * Operations which need the whole network, such as deleteProfile and
+	 * saveDataFile, read in the remaining profiles first.
+	 */
+	public void openMappedFile(String filename) throws IOException {
+		if (FacePamphletBinaryFormat.isBinaryFile(filename)) {
+			/* Binary files are compact enough to read in full. */
+			readBinaryFile(filename);
+			return;
+		}
+		FacePamphletDatabase loaded = new FacePamphletDatabase();
+		loaded.mapped = new FacePamphletMappedFile(filename, loaded.names, progress);
+		loaded.profileCount = loaded.mapped.getPendingCount();
+		loaded.ensureCapacity(loaded.names.size());
+		adopt(loaded);
+		loadStats = mapped.getStats();
+		if (FacePamphletMetrics.ENABLED) {
+			getMetrics().record(FacePamphletMetrics.LOAD, loadStats.getNanos());
+		}
+	}
+	
+	
+	/**
+	 * Reads in every profile still waiting in the file opened by
+	 * openMappedFile (if any), and closes the file.  Operations which need
+	 * the whole network do this themselves, but a program which reads the
+	 * database on one thread while saving it on another should call this
+	 * first, since reading in profiles changes the database.
+	 */
+	public void readAllProfiles() {
+		materializeAll();
+	}
+	
+	
+	/**
+	 * Reads in a data (text) file using the given number of threads,
+	 * overwriting the current database with its contents.  The file is split
+	 * into chunks of whole profiles which are parsed in parallel by a
+	 * FacePamphletParallelLoader, and the result is the same as reading it
+	 * with readDataFile(filename).  With one thread or fewer, or for a
+	 * binary file, this simply calls readDataFile(filename).
+	 */
+	public void readDataFile(String filename, int threads) throws IOException {
+		if (threads <= 1 || FacePamphletBinaryFormat.isBinaryFile(filename)) {
+			readDataFile(filename);
+			return;
+		}
+		long start = System.nanoTime();
+		FacePamphletDatabase loaded = new FacePamphletDatabase();
+		long bytes = new FacePamphletParallelLoader(threads, progress).load(filename, loaded);
+		adopt(loaded);
+		loadStats = new FacePamphletLoadStats(profileCount, bytes, System.nanoTime() - start);
+		if (FacePamphletMetrics.ENABLED) {
+			getMetrics().record(FacePamphletMetrics.LOAD, loadStats.getNanos());
+		}
+	}
+	
+	
+	/**
+	 * Reads in a binary network file, overwriting the current database with
+	 * its contents if it is read successfully.
+	 */
+	private void readBinaryFile(String filename) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		try {
+			long start = System.nanoTime();
+			FacePamphletDatabase loaded = new FacePamphletDatabase();
+			long bytes = FacePamphletBinaryFormat.read(
+					FacePamphletProgressChannel.wrap(channel, progress, channel.size()), loaded);
+			adopt(loaded);
+			loadStats = new FacePamphletLoadStats(profileCount, bytes, System.nanoTime() - start);
+			if (FacePamphletMetrics.ENABLED) {
+				getMetrics().record(FacePamphletMetrics.LOAD, loadStats.getNanos());
+			}
+		} finally {
+			channel.close();
+		}
+	}
+	
+	
+	/**
+	 * Sets the object to which readDataFile, openMappedFile, saveDataFile
+	 * and saveBinaryFile report their progress, or null (the default) for
+	 * none.  Loads report the bytes read and saves the profiles written.
+	 * The progress object may stop the work by throwing an IOException.
+	 */
+	public void setProgress(FacePamphletProgress progress) {
+		this.progress = progress;
+	}
+	
+	
+	/**
+	 * Reports the given amount of work done to the progress object, if
+	 * there is one.
+	 */
+	void reportProgress(long done, long total) throws IOException {
+		if (progress != null) {
+			progress.update(done, total);
+		}
+	}
+	
+	
+	/**
+	 * Returns the number of profiles, bytes and time taken by the last
+	 * successful call to readDataFile (or openMappedFile, in which case only
+	 * the names were read), or null if no file has been read.
+	 */
+	public FacePamphletLoadStats getLoadStats() {
+		return loadStats;
+	}
+	
+	
+	/**
+	 * Parses the profiles in a network file from the given line reader and
+	 * adds them to the database.  The file starts with the number of profiles,
+	 * and each profile is then given as its name, image filename and status
+	 * (either of which may be blank), followed by one line per friend and a
+	 * blank line.
+	 */
+	private void readProfiles(FacePamphletLineReader rd) throws IOException {
+		/* Read in the number of profiles given by first line of the file. */
+		expectLine(rd, "the number of profiles");
+		int numProfiles = rd.parseCount();
+		
+		/* Parse each profile from the text file and add it to the database. */
+		for (int i = 0; i < numProfiles; i++) {
 			
-			rd.close();
+			FacePamphletProfile profile = readProfile(rd, names,
+					"the name of profile " + (i + 1) + " of " + numProfiles);
 			
-		} catch (IOException ex) {
-			/* This method throws the IOException, and so it is dealt with in the
-			 * main FacePamphlet class' calling method. */
+			/* Add the newly created profile to the database. */
+			addProfile(profile);
+		}
+	}
+	
+	
+	/**
+	 * Parses one profile record from the given line reader, taking the IDs
+	 * of the profile's friends from the given name table.  The description
+	 * of the expected name is used in the error if the file has ended.
+	 */
+	static FacePamphletProfile readProfile(FacePamphletLineReader rd,
+			FacePamphletNameTable names, String expected) throws IOException {
+		/* Create a profile object using the name on the next line.  The
+		 * name is interned straight from the line buffer, so that a name
+		 * already seen as a friend reuses the same String. */
+		expectLine(rd, expected);
+		if (rd.isBlank()) {
+			throw rd.error("profile name is blank");
+		}
+		String name = names.getName(names.intern(rd.line()));
+		FacePamphletProfile profile = new FacePamphletProfile(name, names);
+		
+		/* If the image filename is not blank, store it in the profile's
+		 * imageString variable.  The image itself is only opened when the
+		 * profile is displayed. */
+		expectLine(rd, "the image filename for " + name);
+		if (!rd.isBlank()) {
+			profile.setImageString(rd.lineString());
+		}
+		
+		/* Sets the status of the profile. */
+		expectLine(rd, "the status for " + name);
+		if (!rd.isBlank()) {
+			profile.setStatus(rd.lineString());
+		}
+		
+		/* Reads the remaining lines until the next line break (or the end
+		 * of the file), adding each line as a friend to the profile's
+		 * friend list.  Friend names are looked up in the name table
+		 * without creating a String unless the name is new. */
+		while (rd.readLine() && !rd.isBlank()) {
+			profile.addFriendId(names.intern(rd.line()));
+		}
+		return profile;
+	}
+	
+	
+	/**
+	 * Reads the next line, throwing a FacePamphletFormatException naming what
+	 * was expected if the end of the file has been reached.
+	 */
+	private static void expectLine(FacePamphletLineReader rd, String expected) throws IOException {
+		if (!rd.readLine()) {
+			throw rd.error("unexpected end of file, expected " + expected);
 		}
 	}
 
 
 	/**
 	 * Saves the current database to a text file, to allow loading later.
+	 * This is the same as saveDataFile(filename, false).
 	 */
 	public void saveDataFile(String filename) throws IOException {
+		saveDataFile(filename, false);
+	}
+	
+	
+	/**
+	 * Saves the current database to a text file, to allow loading later.
+	 * The file is written through a large buffer to a temporary file, which
+	 * is forced to disk if sync is true and then renamed over the named file,
+	 * so the existing file is only replaced once the save has succeeded.
+	 * Any failure is thrown as an IOException.
+	 */
+	public void saveDataFile(String filename, boolean sync) throws IOException {
+		materializeAll();
+		long start = System.nanoTime();
+		FacePamphletAtomicFile file = new FacePamphletAtomicFile(filename);
 		try {
+			long bytes = writeDataFile(file);
+			file.commit(sync);
+			recordSave(bytes, start);
+		} finally {
+			/* Removes the temporary file if the save did not complete. */
+			file.abort();
+		}
+	}
+	
+	
+	/**
+	 * Writes the database in the text format to the temporary file of the
+	 * given atomic file, without committing it, and returns the number of
+	 * bytes written.  Every profile must have been read in.
+	 */
+	long writeDataFile(FacePamphletAtomicFile file) throws IOException {
+		FacePamphletLineWriter wr = new FacePamphletLineWriter(file.getChannel());
+		
+		/* Add the number of profiles to the first line in text file  */
+		wr.writeLine(Integer.toString(profileCount));
+		
+		/* Get each profile from the database and store it in the text file. */
+		int written = 0;
+		for (int id = 0; id < Math.min(names.size(), profiles.length); id++) {
 			
-			/* Create a PrintWriter object which will write a file to the filename
-			 * given by the String parameter. */
-			PrintWriter wr = new PrintWriter(new FileWriter(filename));
+			FacePamphletProfile profile = profiles[id];
+			if (profile == null) {
+				continue;
+			}
+			if (written++ % PROGRESS_INTERVAL == 0) {
+				reportProgress(written - 1, profileCount);
+			}
 			
-			/* Add the number of profiles to the first line in text file  */
-			int numProfiles = database.size();
-			wr.println(numProfiles);
+			/* Add the name, image filename and status of the profile to the
+			 * next three lines. */
+			wr.writeLine(profile.getName());
+			wr.writeLine(profile.getImageString());
+			wr.writeLine(profile.getStatus());
 			
-			/* Get each profile from the database and store it in the text file. */
-			for (String key: database.keySet()) {
-				
-				FacePamphletProfile profile = database.get(key);
-				
-				/* Add the name of the profile to the next line. */
-				wr.println(profile.getName());
-				
-				/* Add the name of the profile's image to the next line. */
-				wr.println(profile.getImageString());
-				
-				/* Add the status to the next line. */
-				wr.println(profile.getStatus());
-				
-				/* Create an iterator to iterate over the profile's friend list. */
-				Iterator<String> it = profile.getFriends();
-				
-				/* Add the name of each friend, line by line */
-				while (it.hasNext()) {
-					wr.println(it.next());
+			/* Add the name of each friend, line by line, straight from the
+			 * name table. */
+			FacePamphletIdSet friends = profile.getFriendIds();
+			for (int pos = 0; pos < friends.end(); pos++) {
+				if (friends.get(pos) >= 0) {
+					wr.writeLine(names.getName(friends.get(pos)));
 				}
-				
-				/* Add empty line to signal end of this profile */
-				wr.println("");
 			}
 			
-			wr.close();
-			
+			/* Add empty line to signal end of this profile */
+			wr.writeLine("");
+		}
+		
+		wr.flush();
+		reportProgress(profileCount, profileCount);
+		return wr.bytesWritten();
+	}
+	
+	
+	/**
+	 * Saves the current database in the compact binary format.  This is the
+	 * same as saveBinaryFile(filename, false).
+	 */
+	public void saveBinaryFile(String filename) throws IOException {
+		saveBinaryFile(filename, false);
+	}
+	
+	
+	/**
+	 * Saves the current database in the compact binary format described in
+	 * FacePamphletBinaryFormat.  readDataFile recognises these files by their
+	 * magic number, so they can be loaded just like text files.  The file is
+	 * replaced atomically, as in saveDataFile(filename, sync).
+	 */
+	public void saveBinaryFile(String filename, boolean sync) throws IOException {
+		materializeAll();
+		long start = System.nanoTime();
+		FacePamphletAtomicFile file = new FacePamphletAtomicFile(filename);
+		try {
+			long bytes = writeBinaryFile(file);
+			file.commit(sync);
+			recordSave(bytes, start);
+		} finally {
+			file.abort();
+		}
+	}
+	
+	
+	/**
+	 * Writes the database in the binary format to the temporary file of the
+	 * given atomic file, without committing it, and returns the number of
+	 * bytes written.  Every profile must have been read in.
+	 */
+	long writeBinaryFile(FacePamphletAtomicFile file) throws IOException {
+		OutputStream out = new BufferedOutputStream(Channels.newOutputStream(file.getChannel()),
+				WRITE_BUFFER_SIZE);
+		FacePamphletBinaryFormat.write(this, out);
+		out.flush();
+		return file.getChannel().position();
+	}
+	
+	
+	/**
+	 * Writes every profile to the given Appendable (such as a Writer), one
+	 * per line, in the "name (status): list of friends" form of the
+	 * profile's toString, in the order the profiles were first added.  Each
+	 * profile is appended piece by piece with appendTo, so no strings are
+	 * built along the way.  Unlike saveDataFile, the result is for reading
+	 * rather than for loading back in.
+	 */
+	public void exportProfiles(Appendable out) throws IOException {
+		materializeAll();
+		int written = 0;
+		for (int id = 0; id < Math.min(names.size(), profiles.length); id++) {
+			FacePamphletProfile profile = profiles[id];
+			if (profile == null) {
+				continue;
+			}
+			if (written++ % PROGRESS_INTERVAL == 0) {
+				reportProgress(written - 1, profileCount);
+			}
+			profile.appendTo(out);
+			out.append('\n');
+		}
+		reportProgress(profileCount, profileCount);
+	}
+	
+	
+	/**
+	 * Writes every profile to the named file as exportProfiles(Appendable)
+	 * does, encoded as UTF-8 through the same large buffer as saveDataFile.
+	 * The file is replaced atomically, as in saveDataFile(filename, false).
+	 */
+	public void exportProfiles(String filename) throws IOException {
+		FacePamphletAtomicFile file = new FacePamphletAtomicFile(filename);
+		try {
+			FacePamphletLineWriter wr = new FacePamphletLineWriter(file.getChannel());
+			exportProfiles(wr);
+			wr.flush();
+			file.commit(false);
+		} finally {
+			file.abort();
+		}
+	}
+	
+	
+	/**
+	 * Returns the number of profiles, bytes and time taken by the last
+	 * successful save, or null if the database has not been saved.
+	 */
+	public FacePamphletLoadStats getSaveStats() {
+		return saveStats;
+	}
+	
+	
+	/**
+	 * Returns the metrics for this database, creating them on first use.
+	 * Operations are only timed if the facepamphlet.metrics system property
+	 * was true when the program started (see FacePamphletMetrics), but the
+	 * gauges of the size of the network can be read either way.
+	 */
+	public FacePamphletMetrics getMetrics() {
+		if (metrics == null) {
+			metrics = new FacePamphletMetrics(this);
+		}
+		return metrics;
+	}
+	
+	
+	/**
+	 * Takes over the metrics of the given database, which this one is
+	 * replacing, adding in any times this one has recorded itself (such as
+	 * that of its load).  The metrics then carry on measuring this
+	 * database, keeping their JMX registration and periodic dump, and the
+	 * given database gets new metrics if it asks for them again.
+	 */
+	public void takeMetrics(FacePamphletDatabase old) {
+		FacePamphletMetrics taken = old.getMetrics();
+		if (metrics != null) {
+			taken.add(metrics);
+		}
+		taken.setDatabase(this);
+		old.metrics = null;
+		metrics = taken;
+	}
+	
+	
+	/**
+	 * Replays the journal kept for the named network file onto the database,
+	 * which should just have been read from that file, and then starts
+	 * recording changes in that journal, so that they can be saved with
+	 * commitJournal rather than by rewriting the whole file.  A journal
+	 * written against an earlier version of the file, which has since been
+	 * saved in full by some other means, is not replayed.  The journal file
+	 * is only written once changes are first committed, so a network which
+	 * is only viewed gains no journal.  Returns the number of changes
+	 * replayed.
+	 */
+	public int openJournal(String filename) throws IOException {
+		closeJournal();
+		long[] end = new long[1];
+		int count = FacePamphletJournal.replay(filename, this, end);
+		journal = new FacePamphletJournal(filename, end[0]);
+		return count;
+	}
+	
+	
+	/**
+	 * Starts recording changes in a new, empty journal for the named network
+	 * file, which should just have been saved in full from this database.
+	 */
+	public void startJournal(String filename) throws IOException {
+		closeJournal();
+		journal = new FacePamphletJournal(filename, -1);
+	}
+	
+	
+	/**
+	 * Returns the name of the network file whose journal is recording the
+	 * changes to the database, or null if changes are not being journaled.
+	 */
+	public String getJournalFilename() {
+		return (journal == null) ? null : journal.getSnapshotFilename();
+	}
+	
+	
+	/**
+	 * Appends the changes made since the last commit to the journal, forcing
+	 * them to disk if sync is true, and returns how many there were.  Once
+	 * the journal has grown past FacePamphletJournal.COMPACT_SIZE, it is
+	 * folded into the network file in the background; a failure there does
+	 * not stop the commit, and is reported by takeCompactionError instead.
+	 */
+	public int commitJournal(boolean sync) throws IOException {
+		if (journal == null) {
+			throw new IllegalStateException("changes are not being journaled");
+		}
+		int count = journal.commit(sync);
+		if (journal.size() > FacePamphletJournal.COMPACT_SIZE) {
+			journal.compactInBackground();
+		}
+		return count;
+	}
+	
+	
+	/**
+	 * Returns the error which stopped the last background compaction of the
+	 * journal, if it has not been returned already, or null.  The changes
+	 * committed are still safe in the journal, which is simply left to grow
+	 * until a later compaction succeeds.
+	 */
+	public IOException takeCompactionError() {
+		return (journal == null) ? null : journal.takeCompactionError();
+	}
+	
+	
+	/**
+	 * Stops recording changes in the journal, discarding any not yet
+	 * committed, and waits for any background compaction to finish.
+	 */
+	public void closeJournal() throws IOException {
+		if (journal != null) {
+			FacePamphletJournal closing = journal;
+			journal = null;
+			closing.close();
+		}
+	}
+	
+	
+	/**
+	 * Returns the profile with the given ID in this database's name table,
+	 * or null if there is no profile with that ID.
+	 */
+	FacePamphletProfile getProfile(int id) {
+		return profileAt(id);
+	}
+	
+	
+	/**
+	 * Returns the name index for this database, building it on first use
+	 * from the profiles read in and those still waiting in a mapped file.
+	 */
+	private FacePamphletNameIndex getNameIndex() {
+		if (nameIndex == null) {
+			int[] ids = new int[profileCount];
+			int count = 0;
+			for (int id = 0; id < Math.min(names.size(), profiles.length); id++) {
+				if (profiles[id] != null || (mapped != null && mapped.isPending(id))) {
+					ids[count++] = id;
+				}
+			}
+			nameIndex = new FacePamphletNameIndex(names, Arrays.copyOf(ids, count));
+		}
+		return nameIndex;
+	}
+	
+	
+	/** Returns the graph queries for this database, creating them on first use. */
+	private FacePamphletFriendQueries getFriendQueries() {
+		if (friendQueries == null) {
+			friendQueries = new FacePamphletFriendQueries(this);
+		}
+		return friendQueries;
+	}
+	
+	
+	/** Returns a list of the names with the given IDs. */
+	private List<String> namesOf(int[] ids) {
+		List<String> list = new ArrayList<String>(ids.length);
+		for (int id: ids) {
+			list.add(names.getName(id));
+		}
+		return list;
+	}
+	
+	
+	/**
+	 * Returns the set of IDs of the profiles which list the name with the
+	 * given ID as a friend, or null if there are none.  The set must not be
+	 * changed.
+	 */
+	FacePamphletIdSet getReferrers(int id) {
+		return (id < friendedBy.length) ? friendedBy[id] : null;
+	}
+	
+	
+	/** Returns the table giving the IDs of the names in this database. */
+	FacePamphletNameTable getNameTable() {
+		return names;
+	}
+	
+	
+	/** Returns the number of profiles in the database, including any not yet read in. */
+	int getProfileCount() {
+		return profileCount;
+	}
+	
+	
+	/**
+	 * Returns the profile with the given ID if it has been read in, or null
+	 * if there is none or it is still waiting in a mapped file.  Unlike
+	 * getProfile(id), this never reads from the file, so it may be called
+	 * while the database is being changed on another thread (the answer is
+	 * then only approximate).
+	 */
+	FacePamphletProfile getLoadedProfile(int id) {
+		FacePamphletProfile[] profiles = this.profiles;
+		return (id < profiles.length) ? profiles[id] : null;
+	}
+	
+	
+	/**
+	 * Called by the profile with the given ID when the friend with the given
+	 * ID has been added to its list of friends, to keep the reverse index
+	 * and the journal up to date.
+	 */
+	void friendAdded(int id, int friendId) {
+		indexFriend(id, friendId);
+		if (journal != null) {
+			journal.recordAddFriend(names.getName(id), names.getName(friendId));
+		}
+	}
+	
+	
+	/**
+	 * Called by the profile with the given ID when the friend with the given
+	 * ID has been removed from its list of friends.
+	 */
+	void friendRemoved(int id, int friendId) {
+		unindexFriend(id, friendId);
+		if (journal != null) {
+			journal.recordRemoveFriend(names.getName(id), names.getName(friendId));
+		}
+	}
+	
+	
+	/** Called by the profile with the given ID when its status has been set. */
+	void statusChanged(int id, String status) {
+		if (journal != null) {
+			journal.recordStatus(names.getName(id), status);
+		}
+	}
+	
+	
+	/**
+	 * Called by the profile with the given ID when its image filename has
+	 * been set.
+	 */
+	void imageChanged(int id, String filename) {
+		if (journal != null) {
+			journal.recordImage(names.getName(id), filename);
+		}
+	}
+	
+	
+	/**
+	 * Records in the reverse index that the profile with the given ID lists
+	 * the friend with the given ID.
+	 */
+	private void indexFriend(int id, int friendId) {
+		ensureCapacity(friendId + 1);
+		FacePamphletIdSet referrers = friendedBy[friendId];
+		if (referrers == null) {
+			referrers = new FacePamphletIdSet();
+			friendedBy[friendId] = referrers;
+		}
+		referrers.add(id);
+	}
+	
+	
+	/**
+	 * Removes the reverse index entry recording that the profile with the
+	 * given ID lists the friend with the given ID.
+	 */
+	private void unindexFriend(int id, int friendId) {
+		FacePamphletIdSet referrers = friendId < friendedBy.length ? friendedBy[friendId] : null;
+		if (referrers != null) {
+			referrers.remove(id);
+			if (referrers.size() == 0) {
+				friendedBy[friendId] = null;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Records in the reverse index that the given profile, which has the
+	 * given ID, lists each of its friends.
+	 */
+	private void indexFriends(FacePamphletProfile profile, int id) {
+		FacePamphletIdSet friends = profile.getFriendIds();
+		for (int pos = 0; pos < friends.end(); pos++) {
+			if (friends.get(pos) >= 0) {
+				indexFriend(id, friends.get(pos));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Removes the reverse index entries recorded for the given profile's
+	 * friends.
+	 */
+	private void unindexFriends(FacePamphletProfile profile) {
+		FacePamphletIdSet friends = profile.getFriendIds();
+		int id = profile.getId();
+		for (int pos = 0; pos < friends.end(); pos++) {
+			if (friends.get(pos) >= 0) {
+				unindexFriend(id, friends.get(pos));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Returns the profile with the given ID, reading it from the mapped file
+	 * if it has not been read yet, or null if there is no such profile.
+	 */
+	private FacePamphletProfile profileAt(int id) {
+		if (id >= profiles.length) {
+			return null;
+		}
+		if (profiles[id] == null && mapped != null && mapped.isPending(id)) {
+			try {
+				putProfile(readProfile(mapped.open(id), names, "a profile name"));
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+		return profiles[id];
+	}
+	
+	
+	/**
+	 * Reads in every profile still waiting in the mapped file (if any), and
+	 * then closes the file.
+	 */
+	private void materializeAll() {
+		if (mapped != null) {
+			for (int id: mapped.getPendingIds()) {
+				profileAt(id);
+			}
+			closeMapped();
+		}
+	}
+	
+	
+	/**
+	 * Notes the size and time taken by a save of the given number of bytes
+	 * which started at the given System.nanoTime().
+	 */
+	private void recordSave(long bytes, long start) {
+		saveStats = new FacePamphletLoadStats(profileCount, bytes, System.nanoTime() - start);
+		if (FacePamphletMetrics.ENABLED) {
+			getMetrics().record(FacePamphletMetrics.SAVE, saveStats.getNanos());
+		}
+	}
+	
+	
+	/**
+	 * Records the time taken by an operation of the given kind (one of the
+	 * constants in FacePamphletMetrics) which started at the given
+	 * System.nanoTime value.
+	 */
+	private void recordTime(int operation, long start) {
+		getMetrics().record(operation, System.nanoTime() - start);
+	}
+	
+	
+	/** Closes the mapped file, if there is one. */
+	private void closeMapped() {
+		if (mapped != null) {
+			try {
+				mapped.close();
+			} catch (IOException ex) {
+				/* The file was only being read, so nothing is lost. */
+			}
+			mapped = null;
+		}
+	}
+	
+	
+	/**
+	 * Detaches a profile which has been removed or replaced from the
+	 * database.  The profile is given a name table of its own, so that
+	 * friends added to it later cannot add names to this database's table
+	 * without a place for them in the profile and reverse index arrays.
+	 */
+	private void detach(FacePamphletProfile profile) {
+		profile.setDatabase(null, -1);
+		profile.setNameTable(new FacePamphletNameTable());
+	}
+	
+	
+	/**
+	 * Grows the profile and reverse index arrays so that they can be
+	 * indexed by any ID below the given count.
+	 */
+	private void ensureCapacity(int count) {
+		if (count > profiles.length) {
+			int capacity = Math.max(count, profiles.length * 2);
+			profiles = Arrays.copyOf(profiles, capacity);
+			friendedBy = Arrays.copyOf(friendedBy, capacity);
+		}
+	}
+	
+	
+	/**
+	 * Replaces the contents of this database with those of the given one,
+	 * which should not be used afterwards.
+	 */
+	private void adopt(FacePamphletDatabase other) {
+		clear();
+		names = other.names;
+		profiles = other.profiles;
+		friendedBy = other.friendedBy;
+		profileCount = other.profileCount;
+		mapped = other.mapped;
+		nameIndex = other.nameIndex;
+		for (int id = 0; id < Math.min(names.size(), profiles.length); id++) {
+			if (profiles[id] != null) {
+				profiles[id].setDatabase(this, id);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Removes every profile from the database, and stops journaling changes
+	 * (any not yet committed are lost).  The removed profiles are
+	 * detached from the database and keep the old name table, so any that
+	 * are still referenced elsewhere remain usable.
+	 */
+	private void clear() {
+		for (int id = 0; id < Math.min(names.size(), profiles.length); id++) {
+			if (profiles[id] != null) {
+				profiles[id].setDatabase(null, -1);
+			}
+		}
+		closeMapped();
+		try {
+			closeJournal();
 		} catch (IOException ex) {
-			/* This method throws the IOException, and so it is dealt with in the
-			 * main FacePamphlet class' calling method. */
+			/* The journal belonged to the old contents, which are being dropped. */
 		}
+		names = new FacePamphletNameTable();
+		profiles = new FacePamphletProfile[INITIAL_CAPACITY];
+		friendedBy = new FacePamphletIdSet[INITIAL_CAPACITY];
+		profileCount = 0;
+		nameIndex = null;
 	}
 	
-	/* Instance variable for the database. */
-	private HashMap<String,FacePamphletProfile> database;
-
-
-
-
+	/* The size of the buffer used when writing a file. */
+	private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+	
+	/* The number of profiles saved between reports of the progress. */
+	static final int PROGRESS_INTERVAL = 4096;
+	
+	/* The initial length of the profile and reverse index arrays. */
+	private static final int INITIAL_CAPACITY = 16;
+	
+	/* Instance variables for the name table, the profiles indexed by ID (null
+	 * for names which are only known as friends), and the number of profiles. */
+	private FacePamphletNameTable names;
+	private FacePamphletProfile[] profiles;
+	private int profileCount;
+	
+	/* Reverse index holding, for each ID, the IDs of the profiles which list
+	 * it as a friend (or null if there are none). */
+	private FacePamphletIdSet[] friendedBy;
+	
+	/* The mapped file holding profiles which have not been read in yet, or
+	 * null if every profile has been read. */
+	private FacePamphletMappedFile mapped;
+	
+	/* The journal recording changes to the database, or null if changes are
+	 * not being journaled. */
+	private FacePamphletJournal journal;
+	
+	/* The statistics for the last file read and saved, or null if none has
+	 * been. */
+	private FacePamphletLoadStats loadStats;
+	private FacePamphletLoadStats saveStats;
+	
+	/* The object to which loads and saves report their progress, or null. */
+	private FacePamphletProgress progress;
+	
+	/* The graph queries and their scratch space, and the shortest path
+	 * finder, or null until first used. */
+	private FacePamphletFriendQueries friendQueries;
+	private FacePamphletPathFinder pathFinder;
+	
+	/* The index of profile names for prefix and similar name searches, or
+	 * null until first used. */
+	private FacePamphletNameIndex nameIndex;
+	
+	/* The metrics for the database, or null until first used.  They
+	 * belong to the database object rather than its contents, so they
+	 * are kept when a file is read in. */
+	private FacePamphletMetrics metrics;
 
 }
@@ -0,0 +1,33 @@
+/*
+ * File: FacePamphletFormatException.java
+ * --------------------------------------
+ * This exception is thrown when a network file does not follow the
+ * FacePamphlet file format.  It records the number of the line on
+ * which the problem was found.
+ */
+
+import java.io.IOException;
+
+public class FacePamphletFormatException extends IOException {
+
+	/**
+	 * Constructor
+	 * Creates an exception for the given problem found on the given line.
+	 */
+	public FacePamphletFormatException(int lineNumber, String message) {
+		super("line " + lineNumber + ": " + message);
+		this.lineNumber = lineNumber;
+	}
+
+
+	/** Returns the number of the line on which the problem was found. */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	/* Instance variable for the line number. */
+	private int lineNumber;
+
+	private static final long serialVersionUID = 1L;
+
+}
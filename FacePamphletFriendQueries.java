@@ -0,0 +1,245 @@
+/*
+ * File: FacePamphletFriendQueries.java
+ * ------------------------------------
+ * This class answers questions about the network of friends held in a
+ * FacePamphletDatabase: the mutual friends of two profiles, suggested
+ * friends (friends of friends, ranked by how many friends they have in
+ * common) and the degrees of separation between two profiles.
+ *
+ * The queries work on the integer IDs of the database's name table and
+ * the friend ID sets of its profiles, never on Strings, until the
+ * answer is returned.  Friends of friends are counted in a dense array
+ * indexed by ID, which is kept between queries and only cleared where
+ * it was used, and searches mark the profiles they have seen in a
+ * bitset, so high-degree profiles cost no hashing or boxing per edge.
+ */
+
+import java.util.*;
+
+public class FacePamphletFriendQueries {
+
+	/**
+	 * Constructor
+	 * Creates the queries for the given database.
+	 */
+	public FacePamphletFriendQueries(FacePamphletDatabase database) {
+		this.database = database;
+		counts = new int[0];
+		touched = new int[INITIAL_CAPACITY];
+	}
+
+
+	/**
+	 * Returns the IDs of the friends listed by both of the given profiles,
+	 * in the order the first profile added them.  The smaller friend set
+	 * is stepped through and each ID looked up in the larger one, which
+	 * takes constant time, so the cost depends only on the smaller degree.
+	 */
+	public int[] mutualFriends(FacePamphletProfile profile, FacePamphletProfile other) {
+		FacePamphletIdSet friends = profile.getFriendIds();
+		FacePamphletIdSet others = other.getFriendIds();
+		boolean swapped = others.size() < friends.size();
+		FacePamphletIdSet smaller = swapped ? others : friends;
+		FacePamphletIdSet larger = swapped ? friends : others;
+		int[] mutual = new int[smaller.size()];
+		int count = 0;
+		for (int pos = 0; pos < smaller.end(); pos++) {
+			int id = smaller.get(pos);
+			if (id >= 0 && larger.contains(id)) {
+				mutual[count++] = id;
+			}
+		}
+		mutual = Arrays.copyOf(mutual, count);
+		if (swapped) {
+			/* Put the result back in the order of the first profile's list. */
+			int[] ordered = new int[count];
+			int n = 0;
+			for (int pos = 0; pos < friends.end() && n < count; pos++) {
+				int id = friends.get(pos);
+				if (id >= 0 && others.contains(id)) {
+					ordered[n++] = id;
+				}
+			}
+			mutual = ordered;
+		}
+		return mutual;
+	}
+
+
+	/** Returns the number of friends listed by both of the given profiles. */
+	public int mutualFriendCount(FacePamphletProfile profile, FacePamphletProfile other) {
+		FacePamphletIdSet smaller = profile.getFriendIds();
+		FacePamphletIdSet larger = other.getFriendIds();
+		if (larger.size() < smaller.size()) {
+			FacePamphletIdSet swap = smaller;
+			smaller = larger;
+			larger = swap;
+		}
+		int count = 0;
+		for (int pos = 0; pos < smaller.end(); pos++) {
+			int id = smaller.get(pos);
+			if (id >= 0 && larger.contains(id)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+
+	/**
+	 * Returns the IDs of up to limit profiles which are friends of the
+	 * profile's friends, but not the profile itself or already its
+	 * friends, ranked by the number of friends they have in common with
+	 * the profile (most first, then in the order their names were first
+	 * seen).  Only names which are profiles in the database are counted.
+	 * If mutual is not null, the number of friends each suggestion has in
+	 * common with the profile is stored in it at the same index, so it
+	 * must have room for limit counts.
+	 */
+	public int[] suggestFriends(FacePamphletProfile profile, int limit, int[] mutual) {
+		int self = profile.getId();
+		FacePamphletIdSet friends = profile.getFriendIds();
+		FacePamphletNameTable names = database.getNameTable();
+		if (counts.length < names.size()) {
+			counts = new int[names.size()];
+		}
+		int numTouched = 0;
+
+		/* Count the paths through each friend to each friend of a friend.
+		 * A count of NOT_PROFILE marks a name without a profile, so that
+		 * the database is only asked about each name once. */
+		for (int pos = 0; pos < friends.end(); pos++) {
+			int friendId = friends.get(pos);
+			FacePamphletProfile friend = (friendId >= 0) ? database.getProfile(friendId) : null;
+			if (friend == null) {
+				continue;
+			}
+			FacePamphletIdSet next = friend.getFriendIds();
+			for (int i = 0; i < next.end(); i++) {
+				int id = next.get(i);
+				if (id >= counts.length) {
+					/* Reading a profile from a mapped file can add new names. */
+					counts = Arrays.copyOf(counts, Math.max(id + 1, names.size()));
+				}
+				if (id < 0 || id == self || counts[id] == NOT_PROFILE || friends.contains(id)) {
+					continue;
+				}
+				if (counts[id] == 0) {
+					if (numTouched == touched.length) {
+						touched = Arrays.copyOf(touched, numTouched * 2);
+					}
+					touched[numTouched++] = id;
+					if (database.getProfile(id) == null) {
+						counts[id] = NOT_PROFILE;
+						continue;
+					}
+				}
+				counts[id]++;
+			}
+		}
+
+		/* Rank the candidates by packing the count (inverted, so that higher
+		 * counts sort first) above the ID, and clear the counts as we go. */
+		long[] ranked = new long[numTouched];
+		int candidates = 0;
+		for (int i = 0; i < numTouched; i++) {
+			int id = touched[i];
+			if (counts[id] > 0) {
+				ranked[candidates++] = ((long) (Integer.MAX_VALUE - counts[id]) << 32) | id;
+			}
+			counts[id] = 0;
+		}
+		Arrays.sort(ranked, 0, candidates);
+		int[] result = new int[Math.min(Math.max(limit, 0), candidates)];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = (int) ranked[i];
+			if (mutual != null) {
+				mutual[i] = Integer.MAX_VALUE - (int) (ranked[i] >>> 32);
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns the number of steps along lists of friends from the first
+	 * profile to the second: 0 if they are the same profile, 1 if the
+	 * first lists the second as a friend, 2 for a friend of a friend, and
+	 * so on, or -1 if the second cannot be reached.  The search goes out
+	 * from the first profile one level at a time.
+	 */
+	public int degreesOfSeparation(FacePamphletProfile profile, FacePamphletProfile other) {
+		int source = profile.getId();
+		int target = other.getId();
+		if (source == target) {
+			return 0;
+		}
+		long[] visited = new long[(database.getNameTable().size() + 63) / 64];
+		mark(visited, source);
+		int[] frontier = { source };
+		int frontierSize = 1;
+		int[] next = new int[INITIAL_CAPACITY];
+		for (int depth = 1; frontierSize > 0; depth++) {
+			int nextSize = 0;
+			for (int i = 0; i < frontierSize; i++) {
+				FacePamphletIdSet friends = database.getProfile(frontier[i]).getFriendIds();
+				if (friends.contains(target)) {
+					return depth;
+				}
+				for (int pos = 0; pos < friends.end(); pos++) {
+					int id = friends.get(pos);
+					if (id < 0) {
+						continue;
+					}
+					if ((id >>> 6) >= visited.length) {
+						/* Reading a profile from a mapped file can add new names. */
+						visited = Arrays.copyOf(visited, (database.getNameTable().size() + 63) / 64);
+					}
+					if (isMarked(visited, id)) {
+						continue;
+					}
+					mark(visited, id);
+					if (database.getProfile(id) != null) {
+						if (nextSize == next.length) {
+							next = Arrays.copyOf(next, nextSize * 2);
+						}
+						next[nextSize++] = id;
+					}
+				}
+			}
+			int[] swap = frontier;
+			frontier = next;
+			next = (swap.length > 1) ? swap : new int[INITIAL_CAPACITY];
+			frontierSize = nextSize;
+		}
+		return -1;
+	}
+
+
+	/** Marks the given ID in a bitset. */
+	static void mark(long[] bits, int id) {
+		bits[id >>> 6] |= 1L << id;
+	}
+
+
+	/** Returns true if the given ID is marked in a bitset. */
+	static boolean isMarked(long[] bits, int id) {
+		return (bits[id >>> 6] & (1L << id)) != 0;
+	}
+
+	/* The count marking a name which is not a profile. */
+	private static final int NOT_PROFILE = -1;
+
+	/* The initial length of the arrays of touched and frontier IDs. */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/* Instance variable for the database being queried. */
+	private FacePamphletDatabase database;
+
+	/* Scratch space kept between suggestion queries: the count of paths to
+	 * each ID (all zero between queries), and the IDs whose counts were
+	 * changed. */
+	private int[] counts;
+	private int[] touched;
+
+}
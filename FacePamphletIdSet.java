@@ -0,0 +1,319 @@
+/*
+ * File: FacePamphletIdSet.java
+ * ----------------------------
+ * This class holds a set of integer IDs from a FacePamphletNameTable,
+ * remembering the order in which they were added.  It is used for a
+ * profile's list of friends, and by the database for its index of who
+ * lists each name as a friend.
+ *
+ * The IDs are kept in a plain int array in insertion order.  Removed
+ * entries are overwritten with -1 and squeezed out the next time the
+ * set grows, so that removing an ID never shifts the array.  Once the
+ * set holds more than a handful of IDs, an open addressing table of
+ * positions in that array gives constant time membership checks.
+ */
+
+import java.util.*;
+
+public class FacePamphletIdSet {
+
+	/**
+	 * Constructor
+	 * Creates an empty set.
+	 */
+	public FacePamphletIdSet() {
+		order = EMPTY;
+		end = 0;
+		size = 0;
+		slots = null;
+	}
+
+
+	/** Returns the number of IDs in the set. */
+	public int size() {
+		return size;
+	}
+
+
+	/** Returns true if the given ID is in the set. */
+	public boolean contains(int id) {
+		return positionOf(id) >= 0;
+	}
+
+
+	/**
+	 * Adds the given ID to the end of the set.  Returns true if the ID was
+	 * added, or false if it was already in the set.
+	 */
+	public boolean add(int id) {
+		if (contains(id)) {
+			return false;
+		}
+		packed = null;
+
+		/* Make room at the end of the order array, either by squeezing
+		 * out removed entries or by growing it. */
+		if (end == order.length) {
+			if (size <= end / 2 && end > 0) {
+				compact();
+			} else {
+				order = Arrays.copyOf(order, Math.max(4, order.length * 2));
+			}
+		}
+		order[end] = id;
+		if (slots != null) {
+			insertSlot(id, end);
+		}
+		end++;
+		size++;
+
+		/* Switch from linear scans to a hash table once the set is large
+		 * enough, and keep the table at most half full. */
+		if (slots == null ? size > LINEAR_LIMIT : size * 2 > slots.length) {
+			rebuildSlots(size);
+		}
+		return true;
+	}
+
+
+	/**
+	 * Makes room for the set to hold the given number of IDs, so that
+	 * adding up to that many does not grow or rebuild its arrays.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > order.length) {
+			if (end > size) {
+				compact();
+			}
+			order = Arrays.copyOf(order, capacity);
+		}
+		if (capacity > LINEAR_LIMIT && (slots == null || capacity * 2 > slots.length)) {
+			rebuildSlots(capacity);
+		}
+	}
+
+
+	/**
+	 * Removes the given ID from the set.  Returns true if the ID was
+	 * removed, or false if it was not in the set.  Positions of the other
+	 * IDs are unchanged, so it is safe to remove IDs while stepping
+	 * through the set with end() and get().
+	 */
+	public boolean remove(int id) {
+		int pos = positionOf(id);
+		if (pos < 0) {
+			return false;
+		}
+		order[pos] = REMOVED;
+		if (slots != null) {
+			deleteSlot(id);
+		}
+		size--;
+		packed = null;
+
+		/* Trailing removed entries can be dropped straight away. */
+		while (end > 0 && order[end - 1] == REMOVED) {
+			end--;
+		}
+		return true;
+	}
+
+
+	/**
+	 * Returns one past the last position in use.  Together with get(),
+	 * this allows the set to be stepped through in insertion order
+	 * without allocating an iterator.
+	 */
+	public int end() {
+		return end;
+	}
+
+
+	/**
+	 * Returns the ID at the given position, or -1 if the ID at that
+	 * position has been removed.
+	 */
+	public int get(int pos) {
+		return order[pos];
+	}
+
+
+	/**
+	 * Returns the ID with the given index in insertion order, counting
+	 * only IDs still in the set.  This never changes the set, so it may be
+	 * called while stepping through it with end() and get().  If IDs have
+	 * been removed, a copy of the IDs without the gaps is made on the
+	 * first call and kept until the set next changes, so that stepping
+	 * through the set by index still takes constant time per call.
+	 */
+	public int getAt(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+		}
+		if (end == size) {
+			return order[index];
+		}
+		int[] ids = packed;
+		if (ids == null) {
+			ids = toArray();
+			packed = ids;
+		}
+		return ids[index];
+	}
+
+
+	/** Returns the IDs in the set, in insertion order. */
+	public int[] toArray() {
+		int[] ids = new int[size];
+		int n = 0;
+		for (int pos = 0; pos < end; pos++) {
+			if (order[pos] != REMOVED) {
+				ids[n++] = order[pos];
+			}
+		}
+		return ids;
+	}
+
+
+	/**
+	 * Returns an estimate of the heap taken by the set, in bytes, for a
+	 * 64-bit JVM with compressed object pointers.
+	 */
+	long estimateBytes() {
+		int[] slots = this.slots;
+		return OBJECT_BYTES + arrayBytes(order.length) + (slots == null ? 0 : arrayBytes(slots.length));
+	}
+
+
+	/** Returns the heap taken by an int array of the given length, in bytes. */
+	static long arrayBytes(int length) {
+		return (16 + 4L * length + 7) & ~7L;
+	}
+
+
+	/**
+	 * Returns the position of the given ID in the order array, or -1 if
+	 * it is not in the set.
+	 */
+	private int positionOf(int id) {
+		if (slots == null) {
+			for (int pos = 0; pos < end; pos++) {
+				if (order[pos] == id) {
+					return pos;
+				}
+			}
+			return -1;
+		}
+		int mask = slots.length - 1;
+		int slot = FacePamphletNameTable.mix(id) & mask;
+		while (slots[slot] != 0) {
+			int pos = slots[slot] - 1;
+			if (order[pos] == id) {
+				return pos;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Records in the slot array that the given ID is at the given position.
+	 * Slots hold a position plus one, so that zero marks an empty slot.
+	 */
+	private void insertSlot(int id, int pos) {
+		int mask = slots.length - 1;
+		int slot = FacePamphletNameTable.mix(id) & mask;
+		while (slots[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		slots[slot] = pos + 1;
+	}
+
+
+	/**
+	 * Removes the slot for the given ID, which must already have been
+	 * overwritten in the order array, and shifts back any later slots in
+	 * the same probe run so that lookups never need tombstones.
+	 */
+	private void deleteSlot(int id) {
+		int mask = slots.length - 1;
+		int slot = FacePamphletNameTable.mix(id) & mask;
+		while (order[slots[slot] - 1] != REMOVED) {
+			slot = (slot + 1) & mask;
+		}
+		int gap = slot;
+		slot = (slot + 1) & mask;
+		while (slots[slot] != 0) {
+			int home = FacePamphletNameTable.mix(order[slots[slot] - 1]) & mask;
+			/* Move the entry into the gap unless its home slot lies
+			 * cyclically between the gap and its current slot. */
+			if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+				slots[gap] = slots[slot];
+				gap = slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		slots[gap] = 0;
+	}
+
+
+	/** Squeezes removed entries out of the order array. */
+	private void compact() {
+		int n = 0;
+		for (int pos = 0; pos < end; pos++) {
+			if (order[pos] != REMOVED) {
+				order[n++] = order[pos];
+			}
+		}
+		end = n;
+		if (slots != null) {
+			rebuildSlots(size);
+		}
+	}
+
+
+	/**
+	 * Rebuilds the slot array from the order array, sized so that it would
+	 * be at most a quarter full with the given number of IDs.
+	 */
+	private void rebuildSlots(int count) {
+		int capacity = 16;
+		while (capacity < count * 4) {
+			capacity *= 2;
+		}
+		slots = new int[capacity];
+		for (int pos = 0; pos < end; pos++) {
+			if (order[pos] != REMOVED) {
+				insertSlot(order[pos], pos);
+			}
+		}
+	}
+
+	/* The value stored in the order array in place of a removed ID. */
+	private static final int REMOVED = -1;
+
+	/* The largest set which is searched with a linear scan rather than
+	 * through the slot array. */
+	private static final int LINEAR_LIMIT = 8;
+
+	/* The heap taken by a set object itself, without its arrays. */
+	private static final int OBJECT_BYTES = 32;
+
+	/* Shared order array for empty sets. */
+	private static final int[] EMPTY = new int[0];
+
+	/* Instance variables for the IDs in insertion order (with removed
+	 * entries set to REMOVED), one past the last position in use, the
+	 * number of IDs in the set, and the slot array (null while the set is
+	 * small enough to scan). */
+	private int[] order;
+	private int end;
+	private int size;
+	private int[] slots;
+
+	/* The IDs in the set without the removed entries, as made by getAt
+	 * while there are any, or null until it next needs them. */
+	private int[] packed;
+
+}
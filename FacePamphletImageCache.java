@@ -0,0 +1,188 @@
+/*
+ * File: FacePamphletImageCache.java
+ * ---------------------------------
+ * This class opens profile images on demand and keeps the most
+ * recently used ones in memory.  A profile only holds the filename of
+ * its image, so loading a network decodes no images at all; the image
+ * is opened the first time the profile is displayed.  The cache is
+ * bounded by the number of bytes of decoded pixels it holds (four per
+ * pixel) rather than by the number of images, and drops the least
+ * recently used images once it is full.  It counts hits, misses and
+ * evictions so that its size can be tuned.
+ */
+
+import java.util.*;
+
+import acm.graphics.GImage;
+import acm.util.ErrorException;
+
+public class FacePamphletImageCache implements FacePamphletConstants {
+
+	/**
+	 * Constructor
+	 * Creates an empty cache holding at most the given number of bytes of
+	 * decoded pixels.
+	 */
+	public FacePamphletImageCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		bytes = 0;
+	}
+
+
+	/**
+	 * Returns the cache shared by all profiles, which holds at most
+	 * IMAGE_CACHE_BYTES bytes.
+	 */
+	public static FacePamphletImageCache getInstance() {
+		return SHARED;
+	}
+
+
+	/**
+	 * Returns the image in the named file, opening it if it is not in the
+	 * cache, or null if the file can not be opened.  Images larger than
+	 * the whole cache are returned without being cached.
+	 */
+	public GImage get(String filename) {
+		synchronized (this) {
+			Entry entry = entries.get(filename);
+			if (entry != null) {
+				hits++;
+				return entry.image;
+			}
+			misses++;
+		}
+
+		/* Open the image outside the lock, so that other threads can use
+		 * the cache meanwhile.  Two threads may both open the same image,
+		 * in which case the first one cached is kept. */
+		GImage image;
+		try {
+			image = new GImage(filename);
+		} catch (ErrorException ex) {
+			synchronized (this) {
+				failures++;
+			}
+			return null;
+		}
+		long size = 4L * (long) image.getWidth() * (long) image.getHeight();
+
+		synchronized (this) {
+			Entry existing = entries.get(filename);
+			if (existing != null) {
+				return existing.image;
+			}
+			if (size <= maxBytes) {
+				entries.put(filename, new Entry(image, size));
+				bytes += size;
+				evict();
+			}
+		}
+		return image;
+	}
+
+
+	/** Removes the named file's image from the cache, if it is there. */
+	public synchronized void invalidate(String filename) {
+		Entry entry = entries.remove(filename);
+		if (entry != null) {
+			bytes -= entry.bytes;
+		}
+	}
+
+
+	/** Removes every image from the cache.  The counters are kept. */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+
+	/** Returns the number of times an image was found in the cache. */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+
+	/** Returns the number of times an image had to be opened. */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+
+	/** Returns the number of images dropped to make room for others. */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+
+	/** Returns the number of times an image file could not be opened. */
+	public synchronized long getFailures() {
+		return failures;
+	}
+
+
+	/** Returns the number of images in the cache. */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+
+	/** Returns the number of bytes of decoded pixels in the cache. */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+
+	/**
+	 * Returns a summary of the cache, such as
+	 * "12 images, 1.8 of 64.0 MB, 40 hits, 12 misses, 0 evictions, 0 failures".
+	 */
+	public synchronized String toString() {
+		return String.format("%d images, %.1f of %.1f MB, %d hits, %d misses, %d evictions, "
+				+ "%d failures", entries.size(), bytes / (1024.0 * 1024.0),
+				maxBytes / (1024.0 * 1024.0), hits, misses, evictions, failures);
+	}
+
+
+	/** Drops the least recently used images until the cache fits its limit. */
+	private void evict() {
+		Iterator<Entry> it = entries.values().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			bytes -= it.next().bytes;
+			it.remove();
+			evictions++;
+		}
+	}
+
+
+	/** A cached image and the number of bytes its pixels take. */
+	private static class Entry {
+		Entry(GImage image, long bytes) {
+			this.image = image;
+			this.bytes = bytes;
+		}
+
+		GImage image;
+		long bytes;
+	}
+
+	/* The cache shared by all profiles. */
+	private static final FacePamphletImageCache SHARED =
+			new FacePamphletImageCache(IMAGE_CACHE_BYTES);
+
+	/* Instance variables for the cached images by filename, in order from
+	 * least to most recently used, their total size and the size limit. */
+	private LinkedHashMap<String, Entry> entries;
+	private long bytes;
+	private long maxBytes;
+
+	/* Instance variables counting hits, misses, evictions and images which
+	 * could not be opened. */
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long failures;
+
+}
@@ -0,0 +1,224 @@
+/*
+ * File: FacePamphletIntegrityCheck.java
+ * -------------------------------------
+ * This class checks that the friendships in a FacePamphletDatabase
+ * hang together, and can repair them.  A network file may list as a
+ * friend a name which has no profile, a profile may list itself, and a
+ * friendship may be listed by only one of the two profiles, although
+ * the application only ever makes friendships in both directions.
+ * After a large load these are found by one pass over every list of
+ * friends, taking time in proportion to the number of entries.
+ *
+ * The pass never has to visit the friend named by an entry, which in a
+ * large network would cost a cache miss or two for every entry.  A bit
+ * set of the IDs which are profiles, small enough to stay in the cache,
+ * shows whether a friend exists, and whether the friend lists the
+ * profile back is found in the profile's own entry in the database's
+ * reverse index (the set of profiles listing it), which is kept up to
+ * date by every change to a list of friends.  So checking a profile
+ * only reads its own two sets.
+ *
+ * The profiles are split into chunks of consecutive IDs which are
+ * checked in parallel, only reading the database.  If the problems are
+ * to be repaired, each chunk also notes the entries to remove and add,
+ * and these are then applied on the calling thread, in ID order, as
+ * ordinary changes (so they are journaled like any other).  Dangling
+ * and self entries are removed, and one-sided friendships completed,
+ * just as addBatch completes them.
+ *
+ * Duplicate entries need no pass of their own: lists of friends are
+ * FacePamphletIdSets, which drop a repeated friend as the file is read.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class FacePamphletIntegrityCheck {
+
+	/**
+	 * Constructor
+	 * Creates a check of the given database using the given number of
+	 * threads.  Every profile in the database must have been read in.
+	 */
+	public FacePamphletIntegrityCheck(FacePamphletDatabase database, int threads) {
+		this.database = database;
+		this.threads = Math.max(1, threads);
+	}
+
+
+	/**
+	 * Checks every list of friends in the database, repairing the problems
+	 * found if repair is true, and returns a report of them.  The database
+	 * must not be changed by another thread while this runs.
+	 */
+	public FacePamphletIntegrityReport run(boolean repair) {
+		long start = System.nanoTime();
+		int size = database.getNameTable().size();
+		isProfile = new long[(size + 63) >>> 6];
+		for (int id = 0; id < size; id++) {
+			if (database.getLoadedProfile(id) != null) {
+				isProfile[id >>> 6] |= 1L << id;
+			}
+		}
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		for (int from = 0; from < size; from += CHUNK_SIZE) {
+			chunks.add(new Chunk(from, Math.min(from + CHUNK_SIZE, size), repair));
+		}
+		if (threads == 1 || chunks.size() <= 1) {
+			for (Chunk chunk: chunks) {
+				chunk.call();
+			}
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				for (Future<Chunk> future: pool.invokeAll(chunks)) {
+					getChunk(future);
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+
+		/* Add up the counts, and make the repairs noted in ID order. */
+		int profiles = 0;
+		long entries = 0;
+		long dangling = 0;
+		long self = 0;
+		long oneSided = 0;
+		for (Chunk chunk: chunks) {
+			profiles += chunk.profiles;
+			entries += chunk.entries;
+			dangling += chunk.dangling;
+			self += chunk.self;
+			oneSided += chunk.oneSided;
+			if (repair) {
+				for (int i = 0; i < chunk.removalCount; i++) {
+					long pair = chunk.removals[i];
+					database.getProfile((int) (pair >>> 32)).removeFriendId((int) pair);
+				}
+				for (int i = 0; i < chunk.additionCount; i++) {
+					long pair = chunk.additions[i];
+					database.getProfile((int) (pair >>> 32)).addFriendId((int) pair);
+				}
+			}
+		}
+		return new FacePamphletIntegrityReport(profiles, entries, dangling, self, oneSided,
+				repair, System.nanoTime() - start);
+	}
+
+
+	/**
+	 * Waits for a chunk to be checked, passing on anything it threw.
+	 */
+	private static Chunk getChunk(Future<Chunk> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw new RuntimeException(ex.getCause());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("check interrupted");
+		}
+	}
+
+
+	/**
+	 * The check of the lists of friends of the profiles with IDs in a
+	 * range, with the counts of what it found and, if repairing, the
+	 * entries to remove and add, each packed into a long with the ID of
+	 * the profile to change above the ID of the friend.
+	 */
+	private class Chunk implements Callable<Chunk> {
+
+		Chunk(int from, int to, boolean repair) {
+			this.from = from;
+			this.to = to;
+			this.repair = repair;
+		}
+
+		/** Checks each list of friends in the range. */
+		public Chunk call() {
+			for (int id = from; id < to; id++) {
+				FacePamphletProfile profile = database.getLoadedProfile(id);
+				if (profile == null) {
+					continue;
+				}
+				profiles++;
+				FacePamphletIdSet friends = profile.getFriendIds();
+				FacePamphletIdSet referrers = database.getReferrers(id);
+				for (int pos = 0; pos < friends.end(); pos++) {
+					int friendId = friends.get(pos);
+					if (friendId < 0) {
+						continue;
+					}
+					entries++;
+					if (friendId == id) {
+						self++;
+						remove(id, friendId);
+					} else if ((isProfile[friendId >>> 6] & (1L << friendId)) == 0) {
+						dangling++;
+						remove(id, friendId);
+					} else if (referrers == null || !referrers.contains(friendId)) {
+						oneSided++;
+						if (repair) {
+							additions = add(additions, additionCount++, friendId, id);
+						}
+					}
+				}
+			}
+			return this;
+		}
+
+		/** Notes that the given friend is to be removed from the given profile. */
+		private void remove(int id, int friendId) {
+			if (repair) {
+				removals = add(removals, removalCount++, id, friendId);
+			}
+		}
+
+		/**
+		 * Stores the pair of IDs at the given position in the given array,
+		 * growing it if need be, and returns the array.
+		 */
+		private long[] add(long[] pairs, int pos, int id, int friendId) {
+			if (pos == pairs.length) {
+				pairs = Arrays.copyOf(pairs, Math.max(16, pairs.length * 2));
+			}
+			pairs[pos] = ((long) id << 32) | (friendId & 0xFFFFFFFFL);
+			return pairs;
+		}
+
+		/* The range of IDs checked, and whether to note repairs. */
+		private int from;
+		private int to;
+		private boolean repair;
+
+		/* The counts of profiles, entries and each kind of problem. */
+		int profiles;
+		long entries;
+		long dangling;
+		long self;
+		long oneSided;
+
+		/* The entries to remove and add, and the number of each. */
+		long[] removals = new long[0];
+		int removalCount;
+		long[] additions = new long[0];
+		int additionCount;
+	}
+
+	/* The number of consecutive IDs checked by each chunk. */
+	private static final int CHUNK_SIZE = 8192;
+
+	/* Instance variables for the database checked and the number of
+	 * threads to check it with. */
+	private FacePamphletDatabase database;
+	private int threads;
+
+	/* A bit for each ID in the name table, set if the ID is a profile. */
+	private long[] isProfile;
+
+}
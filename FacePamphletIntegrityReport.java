@@ -0,0 +1,113 @@
+/*
+ * File: FacePamphletIntegrityReport.java
+ * --------------------------------------
+ * This class holds the result of checking the friendships in a
+ * FacePamphletDatabase, as returned by checkIntegrity: how many lists
+ * of friends were checked, how many entries in them named a profile
+ * which does not exist, named the profile itself, or were not listed
+ * back by the friend, whether those problems were repaired, and how
+ * long the check took.
+ */
+
+public class FacePamphletIntegrityReport {
+
+	/**
+	 * Constructor
+	 * Creates a report of a check of the given numbers of profiles and
+	 * friend entries, which found the given numbers of dangling, self and
+	 * one-sided entries (repairing them if repaired is true) in the given
+	 * number of nanoseconds.
+	 */
+	public FacePamphletIntegrityReport(int profiles, long entries, long dangling, long self,
+			long oneSided, boolean repaired, long nanos) {
+		this.profiles = profiles;
+		this.entries = entries;
+		this.dangling = dangling;
+		this.self = self;
+		this.oneSided = oneSided;
+		this.repaired = repaired;
+		this.nanos = nanos;
+	}
+
+
+	/** Returns the number of profiles whose lists of friends were checked. */
+	public int getProfiles() {
+		return profiles;
+	}
+
+
+	/** Returns the number of entries in lists of friends which were checked. */
+	public long getEntries() {
+		return entries;
+	}
+
+
+	/** Returns the number of friends listed which are not profiles. */
+	public long getDangling() {
+		return dangling;
+	}
+
+
+	/** Returns the number of profiles which listed themselves as a friend. */
+	public long getSelf() {
+		return self;
+	}
+
+
+	/**
+	 * Returns the number of friends listed by a profile which do not list
+	 * that profile back.
+	 */
+	public long getOneSided() {
+		return oneSided;
+	}
+
+
+	/** Returns the total number of problems found. */
+	public long getProblems() {
+		return dangling + self + oneSided;
+	}
+
+
+	/**
+	 * Returns true if the problems were repaired: dangling and self entries
+	 * removed, and one-sided friendships completed.
+	 */
+	public boolean isRepaired() {
+		return repaired;
+	}
+
+
+	/** Returns the time taken by the check (and any repair), in nanoseconds. */
+	public long getNanos() {
+		return nanos;
+	}
+
+
+	/**
+	 * Returns a summary of the check, such as "checked 1000 profiles and
+	 * 9000 friend entries in 12 ms: 3 dangling, 0 self and 5 one-sided
+	 * (repaired)".
+	 */
+	public String toString() {
+		return String.format("checked %d profiles and %d friend entries in %d ms: "
+				+ "%d dangling, %d self and %d one-sided%s", profiles, entries,
+				nanos / 1000000, dangling, self, oneSided,
+				(repaired && getProblems() > 0) ? " (repaired)" : "");
+	}
+
+	/* Instance variables for the numbers of profiles and entries checked. */
+	private int profiles;
+	private long entries;
+
+	/* Instance variables for the numbers of each kind of problem found. */
+	private long dangling;
+	private long self;
+	private long oneSided;
+
+	/* Instance variables for whether the problems were repaired and the
+	 * time taken. */
+	private boolean repaired;
+	private long nanos;
+
+}
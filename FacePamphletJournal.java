@@ -0,0 +1,595 @@
+/*
+ * File: FacePamphletJournal.java
+ * ------------------------------
+ * This class keeps an append-only journal of the changes made to a
+ * FacePamphletDatabase since it was last saved in full, so that saving
+ * only has to write the changes rather than the whole network.  The
+ * journal for a network file is kept next to it, with JOURNAL_SUFFIX
+ * added to its name.  Loading a network reads the file (the snapshot)
+ * and then replays its journal.
+ *
+ * Each change is recorded in memory as it happens and written to the
+ * journal file by commit().  Each record is a type byte followed by
+ * its fields, with strings stored as a varint length and UTF-8 bytes
+ * (see FacePamphletBinaryFormat).
+ *
+ * A journal only makes sense on top of the snapshot it was written
+ * against, so it starts with a snapshot mark: a record holding a stamp
+ * of that file (its size, modification time and, where the file system
+ * has one, its file key, which an atomic save always changes) and the
+ * offset in the journal from which the snapshot lacks the changes.
+ * Replay starts from the first mark whose stamp matches the snapshot.
+ * If none does, the snapshot has been saved in full since, by another
+ * program or by a save which crashed before starting a new journal, so
+ * the journal is stale and is not replayed, but replaced by a new one
+ * when changes are next committed.  A journal with no marks at all was
+ * written before they were added, and is replayed in full.  Replay only
+ * reads the journal file, which is not opened for writing until the
+ * first commit.
+ *
+ * Once the journal grows past COMPACT_SIZE, it is folded into the
+ * snapshot by a background thread.  The thread reads the snapshot,
+ * replays the journal up to its current end, and writes the snapshot
+ * again.  Before the new snapshot replaces the old one, a mark for it
+ * is appended to the journal, so that after a crash either snapshot
+ * finds where its changes end.  Only then is that part of the journal
+ * dropped, keeping any records committed in the meantime.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+
+public class FacePamphletJournal {
+
+	/** The suffix added to a network filename to give its journal's filename. */
+	public static final String JOURNAL_SUFFIX = ".journal";
+
+	/** The size in bytes at which a journal is folded into its snapshot. */
+	public static final long COMPACT_SIZE = 16L * 1024 * 1024;
+
+
+	/**
+	 * Constructor
+	 * Creates the journal for the named network file.  The journal file is
+	 * left alone until the first commit, so that a network which is only
+	 * viewed (or is in a directory which cannot be written) gains no
+	 * journal.  The first commit keeps the first keep bytes of any existing
+	 * journal, as found by replay, and appends after them.  If keep is
+	 * negative, as it should be once the network has just been saved in
+	 * full to that file or when the old journal did not match it, the
+	 * journal is instead started afresh with a mark for the network file
+	 * as it is now.
+	 */
+	public FacePamphletJournal(String snapshotFilename, long keep) throws IOException {
+		this.snapshotFilename = snapshotFilename;
+		path = Paths.get(journalFilename(snapshotFilename));
+		stamp = stamp(Paths.get(snapshotFilename));
+		this.keep = keep;
+		pending = new ByteArrayOutputStream();
+		out = new DataOutputStream(pending);
+		pendingCount = 0;
+		closed = false;
+	}
+
+
+	/** Returns the filename of the journal kept for the named network file. */
+	public static String journalFilename(String snapshotFilename) {
+		return snapshotFilename + JOURNAL_SUFFIX;
+	}
+
+
+	/** Returns the name of the network file this journal belongs to. */
+	public String getSnapshotFilename() {
+		return snapshotFilename;
+	}
+
+
+	/** Records that the given profile was added (or replaced). */
+	public synchronized void recordAddProfile(FacePamphletProfile profile) {
+		try {
+			out.write(ADD_PROFILE);
+			FacePamphletBinaryFormat.writeString(out, profile.getName());
+			FacePamphletBinaryFormat.writeString(out, profile.getImageString());
+			FacePamphletBinaryFormat.writeString(out, profile.getStatus());
+			FacePamphletBinaryFormat.writeVarint(out, profile.getFriendCount());
+			java.util.Iterator<String> it = profile.getFriends();
+			while (it.hasNext()) {
+				FacePamphletBinaryFormat.writeString(out, it.next());
+			}
+			pendingCount++;
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+
+	/** Records that the named profile was deleted. */
+	public synchronized void recordDeleteProfile(String name) {
+		record(DELETE_PROFILE, name, null);
+	}
+
+
+	/** Records that the named profile's status was set. */
+	public synchronized void recordStatus(String name, String status) {
+		record(SET_STATUS, name, status);
+	}
+
+
+	/** Records that the named profile's image filename was set. */
+	public synchronized void recordImage(String name, String filename) {
+		record(SET_IMAGE, name, filename);
+	}
+
+
+	/** Records that a friend was added to the named profile. */
+	public synchronized void recordAddFriend(String name, String friend) {
+		record(ADD_FRIEND, name, friend);
+	}
+
+
+	/** Records that a friend was removed from the named profile. */
+	public synchronized void recordRemoveFriend(String name, String friend) {
+		record(REMOVE_FRIEND, name, friend);
+	}
+
+
+	/** Returns the number of changes recorded but not yet committed. */
+	public synchronized int getPendingCount() {
+		return pendingCount;
+	}
+
+
+	/**
+	 * Appends the changes recorded since the last commit to the journal
+	 * file, forcing them to disk if sync is true.  Returns the number of
+	 * changes written.
+	 */
+	public synchronized int commit(boolean sync) throws IOException {
+		if (channel == null) {
+			open();
+		}
+		ByteBuffer bytes = ByteBuffer.wrap(pending.toByteArray());
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		if (sync) {
+			channel.force(true);
+		}
+		int count = pendingCount;
+		pending.reset();
+		pendingCount = 0;
+		return count;
+	}
+
+
+	/**
+	 * Returns the size of the journal file in bytes, or the size it will
+	 * start at if nothing has been committed yet.
+	 */
+	public synchronized long size() throws IOException {
+		return (channel == null) ? Math.max(keep, 0) : channel.size();
+	}
+
+
+	/**
+	 * Starts folding the journal into its snapshot on a background thread,
+	 * unless that is already happening.  Only changes already committed are
+	 * folded in.  Returns true if the thread was started.
+	 */
+	public synchronized boolean compactInBackground() throws IOException {
+		if (channel == null || (compactor != null && compactor.isAlive())) {
+			return false;
+		}
+		final long prefix = channel.size();
+		compactor = new Thread(new Runnable() {
+			public void run() {
+				compact(prefix);
+			}
+		}, "FacePamphlet journal compaction");
+		compactor.setDaemon(true);
+		compactor.start();
+		return true;
+	}
+
+
+	/**
+	 * Returns the error which stopped the last background compaction, or
+	 * null if it succeeded (or none has run), and forgets it, so that each
+	 * failure is only reported once.
+	 */
+	public synchronized IOException takeCompactionError() {
+		IOException error = compactionError;
+		compactionError = null;
+		return error;
+	}
+
+
+	/**
+	 * Closes the journal, waiting for any background compaction to finish.
+	 * Changes not yet committed are discarded.
+	 */
+	public void close() throws IOException {
+		Thread running;
+		synchronized (this) {
+			running = compactor;
+		}
+		if (running != null) {
+			try {
+				running.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (this) {
+			closed = true;
+			if (channel != null) {
+				channel.close();
+			}
+		}
+	}
+
+
+	/**
+	 * Replays the journal kept for the named network file (if there is one)
+	 * onto the given database, which should hold the network just read from
+	 * that file.  A record left incomplete by a crash ends the replay.  A
+	 * journal with no mark matching the network file is stale, and is not
+	 * replayed.  The journal file is only read.  Returns the number of
+	 * changes replayed.
+	 */
+	public static int replay(String snapshotFilename, FacePamphletDatabase database)
+			throws IOException {
+		return replay(snapshotFilename, database, new long[1]);
+	}
+
+
+	/**
+	 * Replays the journal as replay(snapshotFilename, database) does, and
+	 * stores in end[0] the offset just past its last complete record, or -1
+	 * if there is no journal or it is stale.  A journal created with that
+	 * offset as the number of bytes to keep carries on from there, cutting
+	 * off an incomplete record or replacing a stale journal.
+	 */
+	static int replay(String snapshotFilename, FacePamphletDatabase database, long[] end)
+			throws IOException {
+		Path path = Paths.get(journalFilename(snapshotFilename));
+		end[0] = -1;
+		if (!Files.exists(path)) {
+			return 0;
+		}
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			long start = findStart(channel, stamp(Paths.get(snapshotFilename)));
+			if (start < 0) {
+				return 0;
+			}
+			return replay(channel, start, Long.MAX_VALUE, database, end);
+		} finally {
+			channel.close();
+		}
+	}
+
+
+	/**
+	 * Returns the offset from which the journal read by the given channel
+	 * holds changes missing from the snapshot with the given stamp: the
+	 * offset in the first mark for that stamp, 0 if the journal has no marks,
+	 * or -1 if it only has marks for other snapshots.
+	 */
+	private static long findStart(FileChannel channel, String stamp) throws IOException {
+		channel.position(0);
+		FacePamphletBinaryFormat.Input in = new FacePamphletBinaryFormat.Input(channel);
+		boolean marked = false;
+		try {
+			while (!in.atEnd()) {
+				int type = in.readVarint();
+				if (type != SNAPSHOT) {
+					apply(in, type, null);
+				} else if (in.readString().equals(stamp)) {
+					return in.readLong();
+				} else {
+					in.readLong();
+					marked = true;
+				}
+			}
+		} catch (EOFException ex) {
+			/* The last record was only partly written, and so is no mark. */
+		}
+		return marked ? -1 : 0;
+	}
+
+
+	/**
+	 * Replays the records of the given channel from offset start up to
+	 * offset limit onto the database, stopping early at an incomplete
+	 * record.  The offset just past the last complete record is stored in
+	 * end[0].  Returns the number of changes replayed, not counting marks.
+	 */
+	private static int replay(FileChannel channel, long start, long limit,
+			FacePamphletDatabase database, long[] end) throws IOException {
+		channel.position(start);
+		FacePamphletBinaryFormat.Input in = new FacePamphletBinaryFormat.Input(channel);
+		int count = 0;
+		end[0] = start;
+		try {
+			while (start + in.bytesRead() < limit && !in.atEnd()) {
+				int type = in.readVarint();
+				apply(in, type, database);
+				if (type != SNAPSHOT) {
+					count++;
+				}
+				end[0] = start + in.bytesRead();
+			}
+		} catch (EOFException ex) {
+			/* The last record was only partly written; everything before it
+			 * has been replayed. */
+		}
+		return count;
+	}
+
+
+	/**
+	 * Reads the rest of a record of the given type and applies it to the
+	 * database, or only reads past it if the database is null.
+	 */
+	private static void apply(FacePamphletBinaryFormat.Input in, int type,
+			FacePamphletDatabase database) throws IOException {
+		String name = in.readString();
+		FacePamphletProfile profile;
+		switch (type) {
+		case ADD_PROFILE:
+			profile = new FacePamphletProfile(name);
+			profile.setImageString(in.readString());
+			profile.setStatus(in.readString());
+			int numFriends = in.readVarint();
+			for (int i = 0; i < numFriends; i++) {
+				profile.addFriend(in.readString());
+			}
+			if (database != null) {
+				database.addProfile(profile);
+			}
+			break;
+		case DELETE_PROFILE:
+			if (database != null) {
+				database.deleteProfile(name);
+			}
+			break;
+		case SET_STATUS:
+			String status = in.readString();
+			profile = (database == null) ? null : database.getProfile(name);
+			if (profile != null) {
+				profile.setStatus(status);
+			}
+			break;
+		case SET_IMAGE:
+			String filename = in.readString();
+			profile = (database == null) ? null : database.getProfile(name);
+			if (profile != null) {
+				profile.setImageString(filename);
+			}
+			break;
+		case ADD_FRIEND:
+		case REMOVE_FRIEND:
+			String friend = in.readString();
+			profile = (database == null) ? null : database.getProfile(name);
+			if (profile != null && type == ADD_FRIEND) {
+				profile.addFriend(friend);
+			} else if (profile != null) {
+				profile.removeFriend(friend);
+			}
+			break;
+		case SNAPSHOT:
+			/* A mark changes nothing in the network; its stamp has been read
+			 * as the name. */
+			in.readLong();
+			break;
+		default:
+			throw new IOException("unknown journal record type " + type + " at byte "
+					+ in.bytesRead());
+		}
+	}
+
+
+	/** Records a change made up of a name and an optional second string. */
+	private void record(int type, String name, String value) {
+		try {
+			out.write(type);
+			FacePamphletBinaryFormat.writeString(out, name);
+			if (value != null) {
+				FacePamphletBinaryFormat.writeString(out, value);
+			}
+			pendingCount++;
+		} catch (IOException ex) {
+			/* Writing to memory cannot fail. */
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+
+	/**
+	 * Folds the first prefix bytes of the journal into the snapshot, then
+	 * drops them from the journal.  Runs on the background thread.
+	 */
+	private void compact(long prefix) {
+		try {
+			FacePamphletDatabase database = new FacePamphletDatabase();
+			database.readDataFile(snapshotFilename);
+			FileChannel reader = FileChannel.open(path, StandardOpenOption.READ);
+			try {
+				long start = findStart(reader, stamp(Paths.get(snapshotFilename)));
+				if (start < 0) {
+					throw new IOException(snapshotFilename
+							+ " has been replaced since its journal was started");
+				}
+				replay(reader, start, prefix, database, new long[1]);
+			} finally {
+				reader.close();
+			}
+			FacePamphletAtomicFile file = new FacePamphletAtomicFile(snapshotFilename);
+			String stamp;
+			try {
+				if (FacePamphletBinaryFormat.isBinaryFile(snapshotFilename)) {
+					database.writeBinaryFile(file);
+				} else {
+					database.writeDataFile(file);
+				}
+				stamp = stamp(file.getTempPath());
+				mark(stamp, prefix);
+				file.commit(true);
+			} finally {
+				file.abort();
+			}
+			dropPrefix(prefix, stamp);
+		} catch (IOException ex) {
+			synchronized (this) {
+				compactionError = ex;
+			}
+		}
+	}
+
+
+	/**
+	 * Appends a mark for the snapshot with the given stamp, which holds the
+	 * changes before the given offset, and forces it to disk.
+	 */
+	private synchronized void mark(String stamp, long offset) throws IOException {
+		writeMark(channel, stamp, offset);
+		channel.force(true);
+	}
+
+
+	/**
+	 * Replaces the journal file with one holding a mark for the snapshot
+	 * with the given stamp followed by the records after the first prefix
+	 * bytes, and carries on appending to the new file.
+	 */
+	private synchronized void dropPrefix(long prefix, String stamp) throws IOException {
+		if (closed) {
+			return;
+		}
+		FacePamphletAtomicFile file = new FacePamphletAtomicFile(path.toString());
+		/* The appending channel cannot be read from, so the records are
+		 * copied through a channel of their own. */
+		FileChannel reader = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			FileChannel target = file.getChannel();
+			writeMark(target, stamp, 0);
+			long size = channel.size();
+			long position = prefix;
+			while (position < size) {
+				position += reader.transferTo(position, size - position, target);
+			}
+			file.commit(true);
+		} finally {
+			reader.close();
+			file.abort();
+		}
+		channel.close();
+		channel = openForAppend(path, false);
+	}
+
+
+	/**
+	 * Opens the journal file for appending, keeping its first keep bytes or
+	 * emptying it if keep is negative, and starting it with a mark if it is
+	 * empty.
+	 */
+	private void open() throws IOException {
+		FileChannel opened = openForAppend(path, keep < 0);
+		try {
+			if (keep >= 0 && opened.size() > keep) {
+				opened.truncate(keep);
+			}
+			if (opened.size() == 0) {
+				writeMark(opened, stamp, 0);
+			}
+		} catch (IOException ex) {
+			opened.close();
+			throw ex;
+		}
+		channel = opened;
+	}
+
+
+	/**
+	 * Writes a mark for the snapshot with the given stamp, which holds the
+	 * changes before the given offset, to the given channel.
+	 */
+	private static void writeMark(FileChannel target, String stamp, long offset)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		data.write(SNAPSHOT);
+		FacePamphletBinaryFormat.writeString(data, stamp);
+		data.writeLong(offset);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		while (buffer.hasRemaining()) {
+			target.write(buffer);
+		}
+	}
+
+
+	/**
+	 * Returns the stamp of the given snapshot file: its size, modification
+	 * time and file key (or "null" where there is none).  Saving the file
+	 * in full changes its stamp.
+	 */
+	private static String stamp(Path snapshot) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(snapshot,
+				BasicFileAttributes.class);
+		return attributes.size() + " " + attributes.lastModifiedTime() + " "
+				+ attributes.fileKey();
+	}
+
+
+	/**
+	 * Opens the given journal file for appending, emptying it if fresh is
+	 * true.  APPEND cannot be combined with TRUNCATE_EXISTING, but an
+	 * emptied file is written from its start, which is its end.
+	 */
+	private static FileChannel openForAppend(Path path, boolean fresh) throws IOException {
+		if (fresh) {
+			return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+		}
+		return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+	}
+
+	/* The record types. */
+	private static final int ADD_PROFILE = 1;
+	private static final int DELETE_PROFILE = 2;
+	private static final int SET_STATUS = 3;
+	private static final int SET_IMAGE = 4;
+	private static final int ADD_FRIEND = 5;
+	private static final int REMOVE_FRIEND = 6;
+	private static final int SNAPSHOT = 7;
+
+	/* Instance variables for the network file, and the journal file and the
+	 * channel appending to it (or null until the first commit). */
+	private String snapshotFilename;
+	private Path path;
+	private FileChannel channel;
+
+	/* Instance variables for the stamp of the network file when the journal
+	 * was created, and the number of bytes of the existing journal file to
+	 * keep when it is opened (or -1 to empty it). */
+	private String stamp;
+	private long keep;
+
+	/* Instance variables for the records not yet committed, and how many
+	 * there are. */
+	private ByteArrayOutputStream pending;
+	private DataOutputStream out;
+	private int pendingCount;
+
+	/* Instance variables for the background compaction thread (or null), the
+	 * error which stopped it, and whether the journal has been closed. */
+	private Thread compactor;
+	private IOException compactionError;
+	private boolean closed;
+
+}
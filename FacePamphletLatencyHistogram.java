@@ -0,0 +1,180 @@
+/*
+ * File: FacePamphletLatencyHistogram.java
+ * ---------------------------------------
+ * This class counts how long some operation took each time it ran, in
+ * nanoseconds, in the manner of HdrHistogram.  Values are grouped into
+ * buckets whose width grows with the value: each power of two is split
+ * into 32 equal buckets, so any value is known to within about 3%
+ * whether it is 100 nanoseconds or 100 seconds, and the counts take a
+ * fixed 10 KB however many values are recorded.  Values below 32 ns
+ * are counted exactly.
+ *
+ * Recording a value is a handful of arithmetic instructions and one
+ * array increment, with no locking or allocation.  A histogram should
+ * only be recorded into by one thread at a time; other threads may read
+ * it at any time, but may then see a value which has been counted in
+ * the total but not yet in its bucket.
+ */
+
+import java.util.*;
+
+public class FacePamphletLatencyHistogram {
+
+	/**
+	 * Constructor
+	 * Creates an empty histogram.
+	 */
+	public FacePamphletLatencyHistogram() {
+		counts = new long[BUCKETS];
+	}
+
+
+	/**
+	 * Records one run of the operation which took the given number of
+	 * nanoseconds.  Negative values are counted as zero.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts[bucketOf(nanos)]++;
+		count++;
+		totalNanos += nanos;
+		if (nanos > maxNanos) {
+			maxNanos = nanos;
+		}
+	}
+
+
+	/** Returns the number of values recorded. */
+	public long getCount() {
+		return count;
+	}
+
+
+	/** Returns the mean of the values recorded, or 0 if there are none. */
+	public double getMeanNanos() {
+		return (count == 0) ? 0 : (double) totalNanos / count;
+	}
+
+
+	/** Returns the largest value recorded, or 0 if there are none. */
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+
+	/**
+	 * Returns the value below which the given percentage of the values
+	 * recorded fall, such as getPercentileNanos(99.9), to within the width
+	 * of its bucket (and never more than the largest value), or 0 if there
+	 * are none.
+	 */
+	public long getPercentileNanos(double percent) {
+		long total = 0;
+		for (long n: counts) {
+			total += n;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(Math.min(percent, 100.0) / 100.0 * total));
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += counts[bucket];
+			if (seen >= rank) {
+				return Math.min(highestIn(bucket), maxNanos);
+			}
+		}
+		return maxNanos;
+	}
+
+
+	/** Returns a copy of this histogram, which will not change as this one does. */
+	public FacePamphletLatencyHistogram copy() {
+		FacePamphletLatencyHistogram copy = new FacePamphletLatencyHistogram();
+		System.arraycopy(counts, 0, copy.counts, 0, BUCKETS);
+		copy.count = count;
+		copy.totalNanos = totalNanos;
+		copy.maxNanos = maxNanos;
+		return copy;
+	}
+
+
+	/** Adds every value recorded in the given histogram to this one. */
+	public void add(FacePamphletLatencyHistogram other) {
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			counts[bucket] += other.counts[bucket];
+		}
+		count += other.count;
+		totalNanos += other.totalNanos;
+		maxNanos = Math.max(maxNanos, other.maxNanos);
+	}
+
+
+	/** Forgets every value recorded. */
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		totalNanos = 0;
+		maxNanos = 0;
+	}
+
+
+	/**
+	 * Returns a summary of the histogram, such as "1000 ops, mean 1.2 us,
+	 * p50 1.0 us, p99 4.8 us, p99.9 12.3 us, max 40.1 us".
+	 */
+	public String toString() {
+		return String.format("%d ops, mean %.1f us, p50 %.1f us, p99 %.1f us, "
+				+ "p99.9 %.1f us, max %.1f us", count, getMeanNanos() / 1e3,
+				getPercentileNanos(50) / 1e3, getPercentileNanos(99) / 1e3,
+				getPercentileNanos(99.9) / 1e3, maxNanos / 1e3);
+	}
+
+
+	/**
+	 * Returns the bucket holding the given value, which is not negative.
+	 * Values below SUB_BUCKETS have a bucket each; above that, the bucket
+	 * is given by the position of the value's highest bit and the
+	 * SUB_BITS bits after it.
+	 */
+	private static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		int bucket = (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+		return Math.min(bucket, BUCKETS - 1);
+	}
+
+
+	/** Returns the largest value which falls in the given bucket. */
+	private static long highestIn(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/* The number of bits after the highest one by which values are
+	 * bucketed, and so the number of buckets for each power of two. */
+	private static final int SUB_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	/* The number of buckets, enough for values up to 2^44 ns (about
+	 * five hours); any longer are counted in the last bucket. */
+	private static final int BUCKETS = (44 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	/* Instance variable for the number of values in each bucket. */
+	private long[] counts;
+
+	/* Instance variables for the number of values recorded, their total
+	 * and the largest of them. */
+	private long count;
+	private long totalNanos;
+	private long maxNanos;
+
+}
@@ -0,0 +1,290 @@
+/*
+ * File: FacePamphletLineReader.java
+ * ---------------------------------
+ * This class reads a network file one line at a time, decoding each
+ * line as UTF-8 into a single reused CharBuffer.  Bytes are read from
+ * a channel into a large direct buffer, and line boundaries are found
+ * in place in that buffer, so no String or other object is created per
+ * line unless the caller asks for one with lineString().
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+public class FacePamphletLineReader {
+
+	/**
+	 * Constructor
+	 * Creates a line reader which reads from the given channel, starting
+	 * at line 1.
+	 */
+	public FacePamphletLineReader(ReadableByteChannel channel) {
+		this.channel = channel;
+		buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		buffer.flip();
+		eof = false;
+		init(0);
+	}
+
+
+	/**
+	 * Constructor
+	 * Creates a line reader over the remaining bytes of the given buffer
+	 * (for example a slice of a memory-mapped file), whose first line is
+	 * numbered one more than the given line number.
+	 */
+	public FacePamphletLineReader(ByteBuffer buffer, int firstLine) {
+		this.channel = null;
+		this.buffer = buffer;
+		eof = true;
+		init(firstLine);
+	}
+
+
+	/**
+	 * Reads the next line, which can then be examined through line() or
+	 * lineString().  The line terminator ("\n" or "\r\n") is not included.
+	 * Returns false, leaving the current line empty, if there are no more
+	 * lines.
+	 */
+	public boolean readLine() throws IOException {
+		while (true) {
+			/* Look for the end of the line in the bytes already buffered. */
+			int start = buffer.position();
+			int limit = buffer.limit();
+			for (int i = start; i < limit; i++) {
+				if (buffer.get(i) == '\n') {
+					decode(i);
+					buffer.position(i + 1);
+					bytesRead += i + 1 - start;
+					return true;
+				}
+			}
+
+			/* At the end of the input, any remaining bytes form a last line
+			 * without a terminator. */
+			if (eof) {
+				if (start < limit) {
+					decode(limit);
+					buffer.position(limit);
+					bytesRead += limit - start;
+					return true;
+				}
+				chars.clear();
+				chars.flip();
+				return false;
+			}
+			fill();
+		}
+	}
+
+
+	/**
+	 * Skips over the next line without decoding it, leaving the current
+	 * line empty.  Returns the length of the skipped line in bytes, not
+	 * counting its terminator, or -1 if there are no more lines.
+	 */
+	public int skipLine() throws IOException {
+		chars.clear();
+		chars.flip();
+		while (true) {
+			int start = buffer.position();
+			int limit = buffer.limit();
+			for (int i = start; i < limit; i++) {
+				if (buffer.get(i) == '\n') {
+					buffer.position(i + 1);
+					bytesRead += i + 1 - start;
+					lineNumber++;
+					return (i > start && buffer.get(i - 1) == '\r') ? i - 1 - start : i - start;
+				}
+			}
+			if (eof) {
+				if (start < limit) {
+					buffer.position(limit);
+					bytesRead += limit - start;
+					lineNumber++;
+					return (buffer.get(limit - 1) == '\r') ? limit - 1 - start : limit - start;
+				}
+				return -1;
+			}
+			fill();
+		}
+	}
+
+
+	/**
+	 * Returns the current line.  The buffer is reused for the next line,
+	 * so its contents must be copied if they are to be kept.
+	 */
+	public CharBuffer line() {
+		return chars;
+	}
+
+
+	/** Returns the current line as a new String. */
+	public String lineString() {
+		return chars.toString();
+	}
+
+
+	/** Returns true if the current line is empty. */
+	public boolean isBlank() {
+		return chars.remaining() == 0;
+	}
+
+
+	/**
+	 * Parses the current line as a non-negative decimal integer, throwing
+	 * a FacePamphletFormatException if it is not one.
+	 */
+	public int parseCount() throws FacePamphletFormatException {
+		if (chars.remaining() == 0) {
+			throw error("expected a number but found a blank line");
+		}
+		long value = 0;
+		for (int i = chars.position(); i < chars.limit(); i++) {
+			char ch = chars.get(i);
+			if (ch < '0' || ch > '9') {
+				throw error("expected a number but found \"" + lineString() + "\"");
+			}
+			value = value * 10 + (ch - '0');
+			if (value > Integer.MAX_VALUE) {
+				throw error("number " + lineString() + " is too large");
+			}
+		}
+		return (int) value;
+	}
+
+
+	/** Returns the number of the current line, counting from 1. */
+	public int lineNumber() {
+		return lineNumber;
+	}
+
+
+	/** Returns the number of bytes consumed so far, including terminators. */
+	public long bytesRead() {
+		return bytesRead;
+	}
+
+
+	/**
+	 * Returns an exception reporting the given problem on the current line,
+	 * for the caller to throw.
+	 */
+	public FacePamphletFormatException error(String message) {
+		return new FacePamphletFormatException(lineNumber, message);
+	}
+
+
+	/**
+	 * Sets up the decoder and the reused line buffer, and the line number
+	 * before the first line.
+	 */
+	private void init(int firstLine) {
+		decoder = Charset.forName("UTF-8").newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		chars = CharBuffer.allocate(INITIAL_LINE_LENGTH);
+		chars.flip();
+		lineNumber = firstLine;
+		bytesRead = 0;
+	}
+
+
+	/**
+	 * Decodes the bytes from the buffer's position up to the given index
+	 * into the line buffer, dropping a trailing carriage return.
+	 */
+	private void decode(int end) throws FacePamphletFormatException {
+		lineNumber++;
+		int start = buffer.position();
+		int limit = buffer.limit();
+		if (end > start && buffer.get(end - 1) == '\r') {
+			end--;
+		}
+
+		/* Lines are almost always ASCII, which can be copied straight
+		 * across without going through the decoder. */
+		if (end - start > chars.capacity()) {
+			chars = CharBuffer.allocate(Math.max(end - start, chars.capacity() * 2));
+		}
+		chars.clear();
+		boolean ascii = true;
+		for (int i = start; i < end && ascii; i++) {
+			byte b = buffer.get(i);
+			if (b < 0) {
+				ascii = false;
+			} else {
+				chars.put((char) b);
+			}
+		}
+
+		if (!ascii) {
+			chars.clear();
+			buffer.limit(end);
+			decoder.reset();
+			while (true) {
+				CoderResult result = decoder.decode(buffer, chars, true);
+				if (result.isOverflow()) {
+					CharBuffer larger = CharBuffer.allocate(chars.capacity() * 2);
+					chars.flip();
+					larger.put(chars);
+					chars = larger;
+				} else if (result.isError()) {
+					buffer.limit(limit);
+					throw error("malformed UTF-8 text");
+				} else {
+					break;
+				}
+			}
+			decoder.flush(chars);
+			buffer.limit(limit);
+			buffer.position(start);
+		}
+		chars.flip();
+	}
+
+
+	/**
+	 * Reads more bytes from the channel into the buffer, keeping any
+	 * partial line already buffered.  The buffer is doubled in size if a
+	 * single line fills it.
+	 */
+	private void fill() throws IOException {
+		buffer.compact();
+		if (!buffer.hasRemaining()) {
+			ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+			buffer.flip();
+			larger.put(buffer);
+			buffer = larger;
+		}
+		if (channel.read(buffer) < 0) {
+			eof = true;
+		}
+		buffer.flip();
+	}
+
+	/* The size of the direct buffer used when reading from a channel. */
+	private static final int READ_BUFFER_SIZE = 4 * 1024 * 1024;
+
+	/* The initial capacity of the reused line buffer. */
+	private static final int INITIAL_LINE_LENGTH = 256;
+
+	/* Instance variables for the channel being read (null when reading a
+	 * buffer supplied by the caller), the buffered bytes, and whether the
+	 * channel has been read to the end. */
+	private ReadableByteChannel channel;
+	private ByteBuffer buffer;
+	private boolean eof;
+
+	/* Instance variables for the UTF-8 decoder, the current line, and the
+	 * line number and byte count reached so far. */
+	private CharsetDecoder decoder;
+	private CharBuffer chars;
+	private int lineNumber;
+	private long bytesRead;
+
+}
@@ -0,0 +1,133 @@
+/*
+ * File: FacePamphletLineWriter.java
+ * ---------------------------------
+ * This class writes a network file one line at a time, encoding the
+ * text as UTF-8 into a large direct buffer which is written to a
+ * channel only when it fills up.  It is the counterpart of
+ * FacePamphletLineReader.  It is also an Appendable, so that text such
+ * as a profile's can be appended to it piece by piece.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+public class FacePamphletLineWriter implements Appendable {
+
+	/**
+	 * Constructor
+	 * Creates a line writer which writes to the given channel.
+	 */
+	public FacePamphletLineWriter(WritableByteChannel channel) {
+		this.channel = channel;
+		buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+		bytesWritten = 0;
+	}
+
+
+	/** Writes the given text followed by a line terminator ("\n"). */
+	public void writeLine(CharSequence text) throws IOException {
+		write(text);
+		put((byte) '\n');
+	}
+
+
+	/** Writes the given text. */
+	public void write(CharSequence text) throws IOException {
+		write(text, 0, text.length());
+	}
+
+
+	/** Appends the given text, as write does. */
+	public FacePamphletLineWriter append(CharSequence text) throws IOException {
+		write((text == null) ? "null" : text);
+		return this;
+	}
+
+
+	/** Appends the characters of the given text from start up to end. */
+	public FacePamphletLineWriter append(CharSequence text, int start, int end)
+			throws IOException {
+		write((text == null) ? "null" : text, start, end);
+		return this;
+	}
+
+
+	/** Appends the given character. */
+	public FacePamphletLineWriter append(char ch) throws IOException {
+		if (ch < 0x80) {
+			put((byte) ch);
+		} else {
+			writeEncoded(String.valueOf(ch));
+		}
+		return this;
+	}
+
+
+	/** Writes the characters of the given text from start up to end. */
+	private void write(CharSequence text, int start, int end) throws IOException {
+		for (int i = start; i < end; i++) {
+			char ch = text.charAt(i);
+			if (ch >= 0x80) {
+				/* Hand anything beyond ASCII to the UTF-8 encoder. */
+				writeEncoded(text.subSequence(i, end));
+				return;
+			}
+			put((byte) ch);
+		}
+	}
+
+
+	/** Writes any buffered bytes to the channel. */
+	public void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			bytesWritten += channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+
+	/** Returns the number of bytes written so far, including buffered ones. */
+	public long bytesWritten() {
+		return bytesWritten + buffer.position();
+	}
+
+
+	/** Adds one byte to the buffer, writing the buffer out if it is full. */
+	private void put(byte b) throws IOException {
+		if (!buffer.hasRemaining()) {
+			flush();
+		}
+		buffer.put(b);
+	}
+
+
+	/** Encodes the given text as UTF-8 and adds it to the buffer. */
+	private void writeEncoded(CharSequence text) throws IOException {
+		byte[] bytes = text.toString().getBytes(UTF_8);
+		int n = 0;
+		while (n < bytes.length) {
+			if (!buffer.hasRemaining()) {
+				flush();
+			}
+			int count = Math.min(bytes.length - n, buffer.remaining());
+			buffer.put(bytes, n, count);
+			n += count;
+		}
+	}
+
+	/* The character set used for the file. */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/* The size of the direct buffer. */
+	private static final int WRITE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+	/* Instance variables for the channel, the buffered bytes and the number
+	 * of bytes already written to the channel. */
+	private WritableByteChannel channel;
+	private ByteBuffer buffer;
+	private long bytesWritten;
+
+}
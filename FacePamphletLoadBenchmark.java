@@ -0,0 +1,130 @@
+/*
+ * File: FacePamphletLoadBenchmark.java
+ * ------------------------------------
+ * This program measures how long it takes to read a network file
+ * sequentially and in parallel with increasing numbers of threads,
+ * and reports the speedup of each.  It also checks that every parallel
+ * load produces exactly the same database as the sequential one, by
+ * saving both and comparing the files.
+ *
+ * Usage: java FacePamphletLoadBenchmark file [maxThreads] [runs]
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class FacePamphletLoadBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: java FacePamphletLoadBenchmark file [maxThreads] [runs]");
+			System.exit(1);
+		}
+		String filename = args[0];
+		int maxThreads = (args.length > 1) ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		int runs = (args.length > 2) ? Integer.parseInt(args[2]) : 3;
+
+		/* Time the sequential load, and save its result for comparison. */
+		File expected = File.createTempFile("facepamphlet", ".txt");
+		File actual = File.createTempFile("facepamphlet", ".txt");
+		expected.deleteOnExit();
+		actual.deleteOnExit();
+		FacePamphletDatabase database = new FacePamphletDatabase();
+		long sequential = bestTime(database, filename, 0, runs);
+		database.saveDataFile(expected.getPath());
+		System.out.printf("sequential: %8.1f ms  %s%n", sequential / 1e6, database.getLoadStats());
+
+		/* Time the parallel load with 1, 2, 4, ... threads up to the maximum. */
+		for (int threads = 1; threads <= maxThreads; threads = nextThreads(threads, maxThreads)) {
+			database = new FacePamphletDatabase();
+			long nanos = bestTime(database, filename, threads, runs);
+			database.saveDataFile(actual.getPath());
+			boolean same = sameContents(expected.toPath(), actual.toPath());
+			System.out.printf("%3d threads: %8.1f ms  speedup %5.2fx  %s%s%n", threads,
+					nanos / 1e6, (double) sequential / nanos, database.getLoadStats(),
+					same ? "" : "  RESULT DIFFERS FROM SEQUENTIAL LOAD");
+		}
+	}
+
+
+	/**
+	 * Loads the file the given number of times, returning the fastest time
+	 * in nanoseconds.  A thread count of zero uses readDataFile(filename).
+	 */
+	private static long bestTime(FacePamphletDatabase database, String filename,
+			int threads, int runs) throws IOException {
+		long best = Long.MAX_VALUE;
+		for (int run = 0; run < runs; run++) {
+			long start = System.nanoTime();
+			if (threads == 0) {
+				database.readDataFile(filename);
+			} else {
+				database.readDataFile(filename, threads);
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+
+	/**
+	 * Returns the next thread count to try after the given one: doubling,
+	 * but always finishing with the maximum itself.
+	 */
+	private static int nextThreads(int threads, int maxThreads) {
+		if (threads == maxThreads) {
+			return maxThreads + 1;
+		}
+		return Math.min(threads * 2, maxThreads);
+	}
+
+
+	/** Returns true if the two files have exactly the same contents. */
+	private static boolean sameContents(Path a, Path b) throws IOException {
+		if (Files.size(a) != Files.size(b)) {
+			return false;
+		}
+		InputStream inA = new BufferedInputStream(Files.newInputStream(a));
+		InputStream inB = new BufferedInputStream(Files.newInputStream(b));
+		try {
+			byte[] bufA = new byte[65536];
+			byte[] bufB = new byte[65536];
+			while (true) {
+				int n = readFully(inA, bufA);
+				if (n != readFully(inB, bufB)) {
+					return false;
+				}
+				if (n <= 0) {
+					return true;
+				}
+				if (!Arrays.equals(bufA, bufB)) {
+					return false;
+				}
+			}
+		} finally {
+			inA.close();
+			inB.close();
+		}
+	}
+
+
+	/**
+	 * Fills the buffer from the stream (zero-padding at the end of the
+	 * stream), returning the number of bytes read.
+	 */
+	private static int readFully(InputStream in, byte[] buf) throws IOException {
+		int n = 0;
+		while (n < buf.length) {
+			int read = in.read(buf, n, buf.length - n);
+			if (read < 0) {
+				break;
+			}
+			n += read;
+		}
+		Arrays.fill(buf, n, buf.length, (byte) 0);
+		return n;
+	}
+
+}
@@ -0,0 +1,261 @@
+/*
+ * File: FacePamphletLoadGenerator.java
+ * ------------------------------------
+ * This program measures a running FacePamphletServer.  It first adds a
+ * set of profiles with a few friends each, then opens a number of
+ * connections which each send batches of requests without waiting for
+ * the answers (pipelining), mostly lookups with some status changes and
+ * friendships made and broken.  At the end it reports the throughput
+ * over all connections and the median and 99th percentile latency of a
+ * request, from the time its batch was sent to the time its answer
+ * arrived.
+ *
+ * Usage: java FacePamphletLoadGenerator [host] [port] [connections]
+ *                                       [seconds] [depth] [profiles]
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class FacePamphletLoadGenerator implements FacePamphletConstants {
+
+	public static void main(String[] args) throws Exception {
+		String host = (args.length > 0) ? args[0] : "localhost";
+		int port = (args.length > 1) ? Integer.parseInt(args[1]) : SERVER_PORT;
+		int connections = (args.length > 2) ? Integer.parseInt(args[2]) : 16;
+		double seconds = (args.length > 3) ? Double.parseDouble(args[3]) : 5;
+		int depth = (args.length > 4) ? Integer.parseInt(args[4]) : 32;
+		int numProfiles = (args.length > 5) ? Integer.parseInt(args[5]) : 10000;
+
+		String[] names = new String[numProfiles];
+		for (int i = 0; i < numProfiles; i++) {
+			names[i] = "load" + i;
+		}
+		populate(host, port, names);
+
+		/* Run every connection for the same length of time. */
+		long deadline = System.nanoTime() + (long) (seconds * 1e9);
+		ExecutorService pool = Executors.newFixedThreadPool(connections);
+		List<Future<Connection>> futures = new ArrayList<Future<Connection>>();
+		long begin = System.nanoTime();
+		for (int i = 0; i < connections; i++) {
+			futures.add(pool.submit(new Connection(host, port, names, depth, deadline, i)));
+		}
+		long requests = 0;
+		long errors = 0;
+		long[][] latencies = new long[connections][];
+		int[] counts = new int[connections];
+		for (int i = 0; i < connections; i++) {
+			Connection connection = futures.get(i).get();
+			latencies[i] = connection.latencies;
+			counts[i] = connection.count;
+			requests += connection.count;
+			errors += connection.errors;
+		}
+		double elapsed = (System.nanoTime() - begin) / 1e9;
+		pool.shutdown();
+
+		long[] all = merge(latencies, counts);
+		Arrays.sort(all);
+		System.out.printf("%d connections, pipeline depth %d, %d profiles%n", connections,
+				depth, numProfiles);
+		System.out.printf("%d requests in %.2f seconds: %.0f requests/sec (%d errors)%n",
+				requests, elapsed, requests / elapsed, errors);
+		System.out.printf("latency p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+				percentile(all, 0.50) / 1e6, percentile(all, 0.99) / 1e6,
+				percentile(all, 1.0) / 1e6);
+	}
+
+
+	/**
+	 * Adds the named profiles (those which already exist are left alone),
+	 * and makes a few random friendships for each, in pipelined batches.
+	 */
+	private static void populate(String host, int port, String[] names) throws IOException {
+		Socket socket = new Socket(host, port);
+		try {
+			BufferedReader in = reader(socket);
+			Writer out = writer(socket);
+			Random random = new Random(1);
+			List<String> requests = new ArrayList<String>();
+			for (String name: names) {
+				requests.add("ADD\t" + name);
+			}
+			for (int i = 0; i < names.length * FRIENDS_PER_PROFILE; i++) {
+				requests.add("FRIEND\t" + names[random.nextInt(names.length)] + "\t"
+						+ names[random.nextInt(names.length)]);
+			}
+			for (int start = 0; start < requests.size(); start += POPULATE_BATCH) {
+				int end = Math.min(start + POPULATE_BATCH, requests.size());
+				for (int i = start; i < end; i++) {
+					out.write(requests.get(i));
+					out.write('\n');
+				}
+				out.flush();
+				for (int i = start; i < end; i++) {
+					if (in.readLine() == null) {
+						throw new EOFException("server closed the connection");
+					}
+				}
+			}
+			out.write("QUIT\n");
+			out.flush();
+		} finally {
+			socket.close();
+		}
+	}
+
+
+	/**
+	 * One client connection, which sends batches of random requests until
+	 * the deadline and records the latency of each.
+	 */
+	private static class Connection implements Callable<Connection> {
+
+		public Connection(String host, int port, String[] names, int depth, long deadline,
+				int seed) {
+			this.host = host;
+			this.port = port;
+			this.names = names;
+			this.depth = depth;
+			this.deadline = deadline;
+			random = new Random(seed);
+			latencies = new long[1024];
+		}
+
+		public Connection call() throws IOException {
+			Socket socket = new Socket(host, port);
+			try {
+				socket.setTcpNoDelay(true);
+				BufferedReader in = reader(socket);
+				Writer out = writer(socket);
+				while (System.nanoTime() < deadline) {
+					for (int i = 0; i < depth; i++) {
+						out.write(nextRequest());
+						out.write('\n');
+					}
+					long sent = System.nanoTime();
+					out.flush();
+					for (int i = 0; i < depth; i++) {
+						String response = in.readLine();
+						if (response == null) {
+							throw new EOFException("server closed the connection");
+						}
+						record(System.nanoTime() - sent);
+						if (!response.startsWith("OK")) {
+							errors++;
+						}
+					}
+				}
+				out.write("QUIT\n");
+				out.flush();
+			} finally {
+				socket.close();
+			}
+			return this;
+		}
+
+		/**
+		 * Returns a random request: mostly lookups, with some status changes
+		 * and friendships made and broken.  Requests to befriend existing
+		 * friends, or unfriend strangers, are answered with ERR and counted
+		 * as errors.
+		 */
+		private String nextRequest() {
+			String name = names[random.nextInt(names.length)];
+			int kind = random.nextInt(100);
+			if (kind < GET_PERCENT) {
+				return "GET\t" + name;
+			} else if (kind < GET_PERCENT + STATUS_PERCENT) {
+				return "STATUS\t" + name + "\tstatus " + random.nextInt(1000);
+			}
+			String friend = names[random.nextInt(names.length)];
+			return (random.nextBoolean() ? "FRIEND\t" : "UNFRIEND\t") + name + "\t" + friend;
+		}
+
+		/** Adds a latency to the list, growing it as needed. */
+		private void record(long nanos) {
+			if (count == latencies.length) {
+				latencies = Arrays.copyOf(latencies, count * 2);
+			}
+			latencies[count++] = nanos;
+		}
+
+		/* Instance variables for the server, the profile names, the number
+		 * of requests per batch, the time to stop and the random requests. */
+		private String host;
+		private int port;
+		private String[] names;
+		private int depth;
+		private long deadline;
+		private Random random;
+
+		/* Results: the latency of each request in nanoseconds, the number of
+		 * requests answered and the number answered with ERR. */
+		private long[] latencies;
+		private int count;
+		private int errors;
+
+	}
+
+
+	/** Returns the first counts[i] entries of each array, in one array. */
+	private static long[] merge(long[][] arrays, int[] counts) {
+		int total = 0;
+		for (int count: counts) {
+			total += count;
+		}
+		long[] all = new long[total];
+		int n = 0;
+		for (int i = 0; i < arrays.length; i++) {
+			System.arraycopy(arrays[i], 0, all, n, counts[i]);
+			n += counts[i];
+		}
+		return all;
+	}
+
+
+	/** Returns the given fraction's percentile of a sorted array, or 0 if it is empty. */
+	private static long percentile(long[] sorted, double fraction) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+	}
+
+
+	/** Returns a UTF-8 reader for the socket. */
+	private static BufferedReader reader(Socket socket) throws IOException {
+		return new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8),
+				BUFFER_SIZE);
+	}
+
+
+	/** Returns a buffered UTF-8 writer for the socket. */
+	private static Writer writer(Socket socket) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8),
+				BUFFER_SIZE);
+	}
+
+	/* The character set of the protocol. */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/* The size of each connection's read and write buffers. */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/* The number of random friendships made for each profile at the start. */
+	private static final int FRIENDS_PER_PROFILE = 4;
+
+	/* The number of requests sent at a time while adding the profiles. */
+	private static final int POPULATE_BATCH = 1000;
+
+	/* The percentages of requests which are lookups and status changes;
+	 * the rest make or break friendships. */
+	private static final int GET_PERCENT = 90;
+	private static final int STATUS_PERCENT = 5;
+
+}
@@ -0,0 +1,73 @@
+/*
+ * File: FacePamphletLoadStats.java
+ * --------------------------------
+ * This class records how much work a load or save of a network file
+ * did and how long it took, so that the throughput can be reported.
+ */
+
+public class FacePamphletLoadStats {
+
+	/**
+	 * Constructor
+	 * Records that the given number of profiles and bytes were loaded (or
+	 * saved) in the given number of nanoseconds.
+	 */
+	public FacePamphletLoadStats(int profiles, long bytes, long nanos) {
+		this.profiles = profiles;
+		this.bytes = bytes;
+		this.nanos = nanos;
+	}
+
+
+	/** Returns the number of profiles loaded. */
+	public int getProfiles() {
+		return profiles;
+	}
+
+
+	/** Returns the number of bytes of the file read. */
+	public long getBytes() {
+		return bytes;
+	}
+
+
+	/** Returns the time taken to load the file, in nanoseconds. */
+	public long getNanos() {
+		return nanos;
+	}
+
+
+	/** Returns the number of profiles loaded per second. */
+	public double getProfilesPerSecond() {
+		return profiles / seconds();
+	}
+
+
+	/** Returns the number of megabytes read per second. */
+	public double getMegabytesPerSecond() {
+		return bytes / (1024.0 * 1024.0) / seconds();
+	}
+
+
+	/**
+	 * Returns a summary of the load, such as
+	 * "1000 profiles in 12 ms (83333 profiles/sec, 4.1 MB/sec)".
+	 */
+	public String toString() {
+		return String.format("%d profiles in %d ms (%.0f profiles/sec, %.1f MB/sec)",
+				profiles, nanos / 1000000, getProfilesPerSecond(), getMegabytesPerSecond());
+	}
+
+
+	/** Returns the time taken in seconds, never less than a nanosecond. */
+	private double seconds() {
+		return Math.max(nanos, 1) / 1e9;
+	}
+
+	/* Instance variables for the number of profiles and bytes loaded, and
+	 * the time taken in nanoseconds. */
+	private int profiles;
+	private long bytes;
+	private long nanos;
+
+}
@@ -0,0 +1,236 @@
+/*
+ * File: FacePamphletMappedFile.java
+ * ---------------------------------
+ * This class gives a FacePamphletDatabase lazy access to the profiles
+ * in a network file.  When it is opened, the file is scanned once to
+ * record the byte offset of each profile, decoding only the profile
+ * names, and the file is memory-mapped with FileChannel.map.  A
+ * profile is only parsed when the database first asks for it, so
+ * startup time and resident memory depend on the profiles actually
+ * used rather than on the size of the file.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class FacePamphletMappedFile {
+
+	/**
+	 * Constructor
+	 * Opens and indexes the named network file, interning each profile
+	 * name in the given name table.  Throws a FacePamphletFormatException
+	 * if the file is malformed.
+	 */
+	public FacePamphletMappedFile(String filename, FacePamphletNameTable names) throws IOException {
+		this(filename, names, null);
+	}
+
+
+	/**
+	 * Constructor
+	 * Opens and indexes the named network file as above, reporting the
+	 * bytes scanned to the given progress object (if it is not null).
+	 */
+	public FacePamphletMappedFile(String filename, FacePamphletNameTable names,
+			FacePamphletProgress progress) throws IOException {
+		long start = System.nanoTime();
+		channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		try {
+			offsets = new long[names.size() + INITIAL_CAPACITY];
+			Arrays.fill(offsets, -1);
+			lengths = new int[offsets.length];
+			lines = new int[offsets.length];
+			pending = 0;
+			FacePamphletLineReader rd = new FacePamphletLineReader(
+					FacePamphletProgressChannel.wrap(channel, progress, channel.size()));
+			index(rd, names);
+			stats = new FacePamphletLoadStats(pending, rd.bytesRead(), System.nanoTime() - start);
+			mapSegments();
+		} catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+
+	/**
+	 * Returns true if the profile with the given ID is in the file and has
+	 * not yet been taken by the database.
+	 */
+	public boolean isPending(int id) {
+		return id < offsets.length && offsets[id] >= 0;
+	}
+
+
+	/**
+	 * Marks the profile with the given ID as taken, so that it will not be
+	 * read from the file again.  Returns true if it was pending.
+	 */
+	public boolean take(int id) {
+		if (!isPending(id)) {
+			return false;
+		}
+		offsets[id] = -1;
+		pending--;
+		return true;
+	}
+
+
+	/** Returns the number of profiles not yet taken by the database. */
+	public int getPendingCount() {
+		return pending;
+	}
+
+
+	/**
+	 * Returns the IDs of all the profiles not yet taken by the database.
+	 */
+	public int[] getPendingIds() {
+		int[] ids = new int[pending];
+		int n = 0;
+		for (int id = 0; id < offsets.length; id++) {
+			if (offsets[id] >= 0) {
+				ids[n++] = id;
+			}
+		}
+		return ids;
+	}
+
+
+	/**
+	 * Returns a line reader positioned at the start of the record for the
+	 * pending profile with the given ID.
+	 */
+	public FacePamphletLineReader open(int id) throws IOException {
+		long offset = offsets[id];
+		int length = lengths[id];
+		int segment = (int) (offset / SEGMENT_SIZE);
+		long segmentStart = (long) segment * SEGMENT_SIZE;
+		ByteBuffer buffer;
+		if (offset + length <= segmentStart + segments[segment].capacity()) {
+			buffer = segments[segment].duplicate();
+			buffer.position((int) (offset - segmentStart));
+			buffer.limit((int) (offset - segmentStart) + length);
+		} else {
+			/* The record straddles two segments, so map it on its own. */
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+		}
+		return new FacePamphletLineReader(buffer.slice(), lines[id] - 1);
+	}
+
+
+	/** Returns the statistics for the indexing pass. */
+	public FacePamphletLoadStats getStats() {
+		return stats;
+	}
+
+
+	/**
+	 * Closes the file.  The mapped segments stay valid until they are
+	 * garbage collected.
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+
+	/**
+	 * Scans the file, recording the offset, length and first line of each
+	 * profile record.  Only the name lines are decoded; the other lines are
+	 * skipped over byte by byte.
+	 */
+	private void index(FacePamphletLineReader rd, FacePamphletNameTable names) throws IOException {
+		if (!rd.readLine()) {
+			throw rd.error("unexpected end of file, expected the number of profiles");
+		}
+		int numProfiles = rd.parseCount();
+
+		for (int i = 0; i < numProfiles; i++) {
+			long offset = rd.bytesRead();
+			int line = rd.lineNumber() + 1;
+			if (!rd.readLine()) {
+				throw rd.error("unexpected end of file, expected the name of profile "
+						+ (i + 1) + " of " + numProfiles);
+			}
+			if (rd.isBlank()) {
+				throw rd.error("profile name is blank");
+			}
+			int id = names.intern(rd.line());
+
+			/* Skip the image filename and status lines, then the friends up
+			 * to the blank line (or the end of the file). */
+			if (rd.skipLine() < 0 || rd.skipLine() < 0) {
+				throw rd.error("unexpected end of file in the profile for "
+						+ names.getName(id));
+			}
+			while (rd.skipLine() > 0) {
+				/* Friend names are not needed for the index. */
+			}
+			long length = rd.bytesRead() - offset;
+			if (length > Integer.MAX_VALUE) {
+				throw new FacePamphletFormatException(line, "profile record is too large");
+			}
+
+			/* A later record for the same name replaces an earlier one, just
+			 * as it does when the file is read in full. */
+			ensureCapacity(id + 1);
+			if (offsets[id] < 0) {
+				pending++;
+			}
+			offsets[id] = offset;
+			lengths[id] = (int) length;
+			lines[id] = line;
+		}
+	}
+
+
+	/** Maps the file into read-only segments of at most SEGMENT_SIZE bytes. */
+	private void mapSegments() throws IOException {
+		long size = channel.size();
+		int count = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+		segments = new MappedByteBuffer[count];
+		for (int i = 0; i < count; i++) {
+			long start = (long) i * SEGMENT_SIZE;
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+					Math.min(SEGMENT_SIZE, size - start));
+		}
+	}
+
+
+	/** Grows the per-profile arrays so they can be indexed below the given count. */
+	private void ensureCapacity(int count) {
+		if (count > offsets.length) {
+			int capacity = Math.max(count, offsets.length * 2);
+			int oldLength = offsets.length;
+			offsets = Arrays.copyOf(offsets, capacity);
+			Arrays.fill(offsets, oldLength, capacity, -1);
+			lengths = Arrays.copyOf(lengths, capacity);
+			lines = Arrays.copyOf(lines, capacity);
+		}
+	}
+
+	/* The largest region of the file mapped as one buffer. */
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	/* The initial number of extra IDs the per-profile arrays can hold. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/* Instance variables for the open file and its mapped segments. */
+	private FileChannel channel;
+	private MappedByteBuffer[] segments;
+
+	/* Instance variables for the byte offset (-1 once taken or if absent),
+	 * length and first line number of each profile's record, indexed by ID,
+	 * and the number of records not yet taken. */
+	private long[] offsets;
+	private int[] lengths;
+	private int[] lines;
+	private int pending;
+
+	/* The statistics for the indexing pass. */
+	private FacePamphletLoadStats stats;
+
+}
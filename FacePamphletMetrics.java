@@ -0,0 +1,420 @@
+/*
+ * File: FacePamphletMetrics.java
+ * ------------------------------
+ * This class keeps the runtime metrics of a FacePamphletDatabase: how
+ * many times each of its main operations (adding, getting, checking
+ * for, deleting and befriending profiles, and loading and saving
+ * files) has run and how long each took, in a
+ * FacePamphletLatencyHistogram per operation, together with gauges of
+ * the size of the network it holds.  Each database creates its metrics
+ * on first use, and they can be read directly, published over JMX with
+ * register, or dumped as text at regular intervals with startDump.
+ *
+ * Operations are only timed if the facepamphlet.metrics system property
+ * is true when the program starts (java -Dfacepamphlet.metrics=true).
+ * The database tests the ENABLED constant around each timing, and since
+ * it is a static final field the JIT compiler removes those tests, and
+ * the calls to System.nanoTime with them, when timing is off, so the
+ * instrumentation then costs nothing.  When it is on, each operation
+ * costs two calls to System.nanoTime (some 20 to 50 ns each) and a
+ * histogram update, and lookups in a large network slow down by more
+ * than that, since reading the clock stops the processor from
+ * overlapping the cache misses of one lookup with those of the next.
+ *
+ * The gauges walk the whole network, so they are worked out at most
+ * once a second however often they are read.  They are read without
+ * stopping the thread using the database, so while the network is
+ * changing they are only approximate.
+ */
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+public class FacePamphletMetrics implements FacePamphletMetricsMBean, FacePamphletConstants {
+
+	/** True if database operations are being timed. */
+	public static final boolean ENABLED = Boolean.getBoolean(METRICS_PROPERTY);
+
+	/** The operations timed, which index the histograms. */
+	public static final int ADD = 0;
+	public static final int GET = 1;
+	public static final int CONTAINS = 2;
+	public static final int DELETE = 3;
+	public static final int BEFRIEND = 4;
+	public static final int LOAD = 5;
+	public static final int SAVE = 6;
+
+	/**
+	 * Constructor
+	 * Creates empty metrics for the given database.  Databases create
+	 * their own metrics, through FacePamphletDatabase.getMetrics.
+	 */
+	FacePamphletMetrics(FacePamphletDatabase database) {
+		this.database = database;
+		histograms = new FacePamphletLatencyHistogram[OPERATIONS.length];
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new FacePamphletLatencyHistogram();
+		}
+		degrees = new long[0];
+	}
+
+
+	/**
+	 * Records one run of the given operation, which took the given number
+	 * of nanoseconds.  Only the thread using the database records times.
+	 */
+	void record(int operation, long nanos) {
+		histograms[operation].record(nanos);
+	}
+
+
+	/**
+	 * Adds the times recorded in the given metrics to these ones.
+	 */
+	void add(FacePamphletMetrics other) {
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i].add(other.histograms[i]);
+		}
+	}
+
+
+	/**
+	 * Makes these metrics measure the given database from now on, with
+	 * the gauges worked out afresh when next read.
+	 */
+	synchronized void setDatabase(FacePamphletDatabase database) {
+		this.database = database;
+		gaugeTime = 0;
+	}
+
+
+	/**
+	 * Returns a copy of the histogram of the times taken by the given
+	 * operation, such as FacePamphletMetrics.GET.
+	 */
+	public FacePamphletLatencyHistogram getHistogram(int operation) {
+		return histograms[operation].copy();
+	}
+
+
+	/**
+	 * Publishes the metrics through the platform MBean server, under a
+	 * name of the form "FacePamphlet:type=Database,id=1", unless they
+	 * already are.  Returns the name.
+	 */
+	public synchronized ObjectName register() {
+		if (objectName == null) {
+			try {
+				ObjectName name = new ObjectName(
+						"FacePamphlet:type=Database,id=" + NEXT_ID.incrementAndGet());
+				ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+				objectName = name;
+			} catch (JMException ex) {
+				/* The names are unique and this class is a compliant MBean. */
+				throw new IllegalStateException(ex);
+			}
+		}
+		return objectName;
+	}
+
+
+	/**
+	 * Starts printing the report to the given stream every given number
+	 * of seconds, on a daemon thread, replacing any dump already running.
+	 */
+	public synchronized void startDump(final long seconds, final PrintStream out) {
+		stopDump();
+		dumper = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(seconds * 1000);
+						out.println(getReport());
+					}
+				} catch (InterruptedException ex) {
+					/* Stopped by stopDump. */
+				}
+			}
+		}, "FacePamphlet metrics dump");
+		dumper.setDaemon(true);
+		dumper.start();
+	}
+
+
+	/** Stops the periodic dump, if one is running. */
+	public synchronized void stopDump() {
+		if (dumper != null) {
+			dumper.interrupt();
+			dumper = null;
+		}
+	}
+
+
+	/**
+	 * Publishes the metrics over JMX and, if the facepamphlet.metricsDump
+	 * system property gives a number of seconds, starts dumping them to
+	 * standard error that often.  Does nothing unless timing is enabled.
+	 */
+	public void start() {
+		if (!ENABLED) {
+			return;
+		}
+		register();
+		String dump = System.getProperty(METRICS_DUMP_PROPERTY);
+		if (dump != null) {
+			try {
+				long seconds = Long.parseLong(dump.trim());
+				if (seconds > 0) {
+					startDump(seconds, System.err);
+				}
+			} catch (NumberFormatException ex) {
+				System.err.println("Ignoring " + METRICS_DUMP_PROPERTY + "=" + dump
+						+ ": not a number of seconds");
+			}
+		}
+	}
+
+
+	/** Returns true if operations are being timed, as ENABLED. */
+	public boolean isTimingEnabled() {
+		return ENABLED;
+	}
+
+
+	/** Returns the names of the operations, in the order of their constants. */
+	public String[] getOperations() {
+		return OPERATIONS.clone();
+	}
+
+
+	/** Returns the number of times each operation has run. */
+	public long[] getCounts() {
+		long[] counts = new long[histograms.length];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = histograms[i].getCount();
+		}
+		return counts;
+	}
+
+
+	/** Returns the mean time taken by each operation, in microseconds. */
+	public double[] getMeanMicros() {
+		double[] micros = new double[histograms.length];
+		for (int i = 0; i < micros.length; i++) {
+			micros[i] = histograms[i].getMeanNanos() / 1e3;
+		}
+		return micros;
+	}
+
+
+	/** Returns the median time taken by each operation, in microseconds. */
+	public double[] getMedianMicros() {
+		return percentileMicros(50);
+	}
+
+
+	/** Returns the 99th percentile time of each operation, in microseconds. */
+	public double[] getP99Micros() {
+		return percentileMicros(99);
+	}
+
+
+	/** Returns the 99.9th percentile time of each operation, in microseconds. */
+	public double[] getP999Micros() {
+		return percentileMicros(99.9);
+	}
+
+
+	/** Returns the longest time taken by each operation, in microseconds. */
+	public double[] getMaxMicros() {
+		double[] micros = new double[histograms.length];
+		for (int i = 0; i < micros.length; i++) {
+			micros[i] = histograms[i].getMaxNanos() / 1e3;
+		}
+		return micros;
+	}
+
+
+	/** Returns the number of profiles in the database, including any not yet read in. */
+	public int getProfileCount() {
+		return database.getProfileCount();
+	}
+
+
+	/**
+	 * Returns the number of entries in lists of friends, so each mutual
+	 * friendship counts twice.  Profiles still waiting in a mapped file
+	 * are not counted.
+	 */
+	public synchronized long getEdgeCount() {
+		refreshGauges();
+		return edges;
+	}
+
+
+	/**
+	 * Returns the number of profiles with no friends, one friend, two or
+	 * three, four to seven, and so on: entry k (for k > 0) counts the
+	 * profiles with at least 2^(k-1) and fewer than 2^k friends.  Profiles
+	 * still waiting in a mapped file are not counted.
+	 */
+	public synchronized long[] getDegreeDistribution() {
+		refreshGauges();
+		return degrees.clone();
+	}
+
+
+	/** Returns the largest number of friends of any profile read in. */
+	public synchronized int getMaxDegree() {
+		refreshGauges();
+		return maxDegree;
+	}
+
+
+	/**
+	 * Returns an estimate of the heap taken by the name table, the
+	 * profiles read in and the reverse index of friends, in bytes.  The
+	 * name index, journal and graph search scratch space are left out.
+	 */
+	public synchronized long getApproximateHeapBytes() {
+		refreshGauges();
+		return heapBytes;
+	}
+
+
+	/**
+	 * Returns a report of every metric, such as
+	 * <pre>
+	 * FacePamphlet metrics: 1000 profiles, 9000 friend entries, about 1.2 MB
+	 * Friends per profile: 0: 10, 1: 40, 2-3: 150, 4-7: 300, 8-15: 500 (max 14)
+	 * add       1000 ops, mean 1.2 us, p50 1.0 us, p99 4.8 us, p99.9 12.3 us, max 40.1 us
+	 * ...
+	 * </pre>
+	 */
+	public synchronized String getReport() {
+		refreshGauges();
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("FacePamphlet metrics: %d profiles, %d friend entries, "
+				+ "about %.1f MB%n", database.getProfileCount(), edges, heapBytes / 1e6));
+		report.append("Friends per profile:");
+		for (int k = 0; k < degrees.length; k++) {
+			long low = (k == 0) ? 0 : 1L << (k - 1);
+			long high = (k == 0) ? 0 : (1L << k) - 1;
+			report.append(k == 0 ? " " : ", ").append(low);
+			if (high > low) {
+				report.append('-').append(high);
+			}
+			report.append(": ").append(degrees[k]);
+		}
+		report.append(String.format(" (max %d)%n", maxDegree));
+		if (!ENABLED) {
+			report.append("Operations are not timed (set -D" + METRICS_PROPERTY + "=true)");
+			report.append(String.format("%n"));
+		}
+		for (int i = 0; i < histograms.length; i++) {
+			report.append(String.format("%-9s %s%n", OPERATIONS[i], histograms[i]));
+		}
+		return report.toString();
+	}
+
+
+	/** Forgets the times recorded so far, leaving the gauges as they are. */
+	public void reset() {
+		for (FacePamphletLatencyHistogram histogram: histograms) {
+			histogram.reset();
+		}
+	}
+
+
+	/** Returns the given percentile of the time taken by each operation. */
+	private double[] percentileMicros(double percent) {
+		double[] micros = new double[histograms.length];
+		for (int i = 0; i < micros.length; i++) {
+			micros[i] = histograms[i].getPercentileNanos(percent) / 1e3;
+		}
+		return micros;
+	}
+
+
+	/**
+	 * Works out the gauges again by walking the network, unless that was
+	 * done less than GAUGE_INTERVAL ago.
+	 */
+	private void refreshGauges() {
+		long now = System.nanoTime();
+		if (gaugeTime != 0 && now - gaugeTime < GAUGE_INTERVAL) {
+			return;
+		}
+		FacePamphletNameTable names = database.getNameTable();
+		long edges = 0;
+		long[] degrees = new long[33];
+		int maxDegree = 0;
+		long heapBytes = 0;
+		try {
+			int size = names.size();
+			heapBytes += names.estimateBytes() + 2 * FacePamphletIdSet.arrayBytes(size);
+			for (int id = 0; id < size; id++) {
+				FacePamphletProfile profile = database.getLoadedProfile(id);
+				if (profile != null) {
+					int degree = profile.getFriendCount();
+					edges += degree;
+					degrees[32 - Integer.numberOfLeadingZeros(degree)]++;
+					maxDegree = Math.max(maxDegree, degree);
+					heapBytes += profile.estimateBytes();
+				}
+				FacePamphletIdSet referrers = database.getReferrers(id);
+				if (referrers != null) {
+					heapBytes += referrers.estimateBytes();
+				}
+			}
+		} catch (RuntimeException ex) {
+			/* The network changed under the walk, for instance by growing
+			 * an array being read; keep the last gauges and try again on
+			 * the next read. */
+			return;
+		}
+		int length = degrees.length;
+		while (length > 1 && degrees[length - 1] == 0) {
+			length--;
+		}
+		this.edges = edges;
+		this.degrees = Arrays.copyOf(degrees, length);
+		this.maxDegree = maxDegree;
+		this.heapBytes = heapBytes;
+		gaugeTime = now;
+	}
+
+	/* The names of the operations, in the order of their constants. */
+	private static final String[] OPERATIONS = {
+		"add", "get", "contains", "delete", "befriend", "load", "save"
+	};
+
+	/* The shortest time between walks of the network for the gauges,
+	 * in nanoseconds. */
+	private static final long GAUGE_INTERVAL = 1000000000L;
+
+	/* The last ID used in the JMX name of a database's metrics. */
+	private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+	/* Instance variables for the database measured and the histogram of
+	 * the times taken by each of its operations. */
+	private FacePamphletDatabase database;
+	private FacePamphletLatencyHistogram[] histograms;
+
+	/* Instance variables for the gauges from the last walk of the network
+	 * and the System.nanoTime value when it was made (0 if none has). */
+	private long edges;
+	private long[] degrees;
+	private int maxDegree;
+	private long heapBytes;
+	private long gaugeTime;
+
+	/* The JMX name under which the metrics are registered, or null, and
+	 * the thread dumping them periodically, or null. */
+	private ObjectName objectName;
+	private Thread dumper;
+
+}
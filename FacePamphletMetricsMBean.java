@@ -0,0 +1,60 @@
+/*
+ * File: FacePamphletMetricsMBean.java
+ * -----------------------------------
+ * This interface lists the attributes and operations through which
+ * FacePamphletMetrics are seen over JMX, for example in JConsole or
+ * VisualVM.  The per-operation attributes are arrays in the same order
+ * as getOperations, and all times are in microseconds.
+ */
+
+public interface FacePamphletMetricsMBean {
+
+	/** Returns true if operations are being timed. */
+	public boolean isTimingEnabled();
+
+	/** Returns the names of the operations timed, such as "add" and "load". */
+	public String[] getOperations();
+
+	/** Returns the number of times each operation has run. */
+	public long[] getCounts();
+
+	/** Returns the mean time taken by each operation. */
+	public double[] getMeanMicros();
+
+	/** Returns the median time taken by each operation. */
+	public double[] getMedianMicros();
+
+	/** Returns the 99th percentile of the time taken by each operation. */
+	public double[] getP99Micros();
+
+	/** Returns the 99.9th percentile of the time taken by each operation. */
+	public double[] getP999Micros();
+
+	/** Returns the longest time taken by each operation. */
+	public double[] getMaxMicros();
+
+	/** Returns the number of profiles in the database. */
+	public int getProfileCount();
+
+	/** Returns the number of entries in lists of friends. */
+	public long getEdgeCount();
+
+	/**
+	 * Returns the number of profiles with no friends, one friend, two or
+	 * three, four to seven, and so on in powers of two.
+	 */
+	public long[] getDegreeDistribution();
+
+	/** Returns the largest number of friends any profile has. */
+	public int getMaxDegree();
+
+	/** Returns an estimate of the heap taken by the network, in bytes. */
+	public long getApproximateHeapBytes();
+
+	/** Returns the text dumped periodically, summarising every metric. */
+	public String getReport();
+
+	/** Forgets the times recorded so far. */
+	public void reset();
+
+}
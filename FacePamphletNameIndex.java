@@ -0,0 +1,524 @@
+/*
+ * File: FacePamphletNameIndex.java
+ * --------------------------------
+ * This class indexes the profile names in a FacePamphletDatabase for
+ * searching, ignoring case: completing a prefix, and finding names
+ * similar to a misspelt one.  It is kept up to date by the database as
+ * profiles are added and deleted.
+ *
+ * For prefix search, the profile IDs are held in an int array sorted
+ * by name, which is searched by binary search.  Profiles added since
+ * the array was last sorted are kept in a small sorted array of their
+ * own, which is merged in once it grows past the square root of the
+ * size of the main one, and deleted profiles are only marked until a
+ * quarter of the main array is deleted.  So both searches and changes
+ * stay cheap however large the network grows.
+ *
+ * For similar names, each name is split into the overlapping three
+ * letter sequences (trigrams) of its lower case form padded with a
+ * space at each end, and the index keeps the set of profiles whose
+ * names contain each trigram.  A search counts the trigrams each name
+ * shares with the query, and only computes the edit distance to names
+ * sharing enough of them, since each edit changes at most four.
+ * Queries too short for that to rule any name out are compared with
+ * every name of about the same length instead.
+ */
+
+import java.util.*;
+
+public class FacePamphletNameIndex {
+
+	/**
+	 * Constructor
+	 * Creates an index over the given profile IDs, whose names come from
+	 * the given table.
+	 */
+	public FacePamphletNameIndex(FacePamphletNameTable names, int[] ids) {
+		this.names = names;
+		keys = new String[Math.max(names.size(), INITIAL_CAPACITY)];
+		states = new byte[keys.length];
+		grams = new HashMap<Long, FacePamphletIdSet>();
+		counts = new int[0];
+		touched = new int[INITIAL_CAPACITY];
+
+		sorted = ids.clone();
+		sortedSize = sorted.length;
+		for (int id: sorted) {
+			keys[id] = keyOf(names.getName(id));
+			states[id] = SORTED;
+			addGrams(id);
+		}
+		sortByKey(sorted, 0, sortedSize, new int[sortedSize]);
+		recent = new int[INITIAL_CAPACITY];
+		recentSize = 0;
+		removedCount = 0;
+	}
+
+
+	/**
+	 * Adds the profile with the given ID to the index, if it is not there
+	 * already.
+	 */
+	public void add(int id) {
+		ensureCapacity(id + 1);
+		if (states[id] == SORTED || states[id] == RECENT) {
+			return;
+		}
+		if (keys[id] == null) {
+			keys[id] = keyOf(names.getName(id));
+		}
+		addGrams(id);
+		if (states[id] == REMOVED) {
+			/* The ID is still in its place in the sorted array. */
+			states[id] = SORTED;
+			removedCount--;
+			return;
+		}
+
+		/* Insert the ID into the array of recent additions, keeping it in
+		 * order, and merge that into the sorted array once it is large. */
+		if (recentSize == recent.length) {
+			recent = Arrays.copyOf(recent, recentSize * 2);
+		}
+		int pos = findFirst(recent, recentSize, keys[id], names.getName(id), id);
+		System.arraycopy(recent, pos, recent, pos + 1, recentSize - pos);
+		recent[pos] = id;
+		recentSize++;
+		states[id] = RECENT;
+		if (recentSize > Math.max(INITIAL_CAPACITY, (int) Math.sqrt(sortedSize))) {
+			rebuild();
+		}
+	}
+
+
+	/** Removes the profile with the given ID from the index, if it is there. */
+	public void remove(int id) {
+		if (id >= states.length || (states[id] != SORTED && states[id] != RECENT)) {
+			return;
+		}
+		removeGrams(id);
+		if (states[id] == RECENT) {
+			int pos = findFirst(recent, recentSize, keys[id], names.getName(id), id);
+			System.arraycopy(recent, pos + 1, recent, pos, recentSize - pos - 1);
+			recentSize--;
+			states[id] = ABSENT;
+			return;
+		}
+		states[id] = REMOVED;
+		removedCount++;
+		if (removedCount > sortedSize / 4) {
+			rebuild();
+		}
+	}
+
+
+	/**
+	 * Returns the IDs of up to limit profiles whose names start with the
+	 * given prefix, ignoring case, in alphabetical order.
+	 */
+	public int[] complete(String prefix, int limit) {
+		String key = keyOf(prefix);
+		int[] result = new int[Math.max(0, limit)];
+		int count = 0;
+
+		/* Step through the matches in both arrays together, merging them. */
+		int i = findFirst(sorted, sortedSize, key, "", -1);
+		int j = findFirst(recent, recentSize, key, "", -1);
+		while (count < result.length) {
+			while (i < sortedSize && states[sorted[i]] == REMOVED) {
+				i++;
+			}
+			boolean more = i < sortedSize && keys[sorted[i]].startsWith(key);
+			boolean moreRecent = j < recentSize && keys[recent[j]].startsWith(key);
+			if (!more && !moreRecent) {
+				break;
+			}
+			if (more && (!moreRecent || compare(sorted[i], recent[j]) < 0)) {
+				result[count++] = sorted[i++];
+			} else {
+				result[count++] = recent[j++];
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+
+	/**
+	 * Returns the IDs of up to limit profiles whose names are within the
+	 * given edit distance of the query, ignoring case, closest first and
+	 * then in alphabetical order.  An edit is inserting, deleting or
+	 * changing a letter, or swapping two adjacent letters.
+	 */
+	public int[] findSimilar(String query, int maxDistance, int limit) {
+		String key = keyOf(query);
+		long[] queryGrams = gramsOf(key);
+		if (counts.length < states.length) {
+			counts = new int[states.length];
+		}
+
+		/* A name within maxDistance edits shares all but at most four
+		 * trigrams per edit with the query (three for a changed letter, and
+		 * four for swapped ones), so only those sharing enough
+		 * need to be compared in full.  Short queries may share none with
+		 * a close name, in which case every name of about the right length
+		 * is compared instead. */
+		int needed = queryGrams.length - (GRAM_LENGTH + 1) * maxDistance;
+		int numTouched = 0;
+		if (needed <= 0) {
+			for (int i = 0; i < sortedSize + recentSize; i++) {
+				int id = (i < sortedSize) ? sorted[i] : recent[i - sortedSize];
+				if (states[id] != REMOVED
+						&& Math.abs(keys[id].length() - key.length()) <= maxDistance) {
+					if (numTouched == touched.length) {
+						touched = Arrays.copyOf(touched, numTouched * 2);
+					}
+					touched[numTouched++] = id;
+				}
+			}
+		}
+
+		/* Count the trigrams each name shares with the query, rarest first.
+		 * A name sharing enough must share one of the rarest trigrams, all
+		 * but needed - 1 of them, so only their sets are stepped through to
+		 * find candidates.  The candidates are then looked up in the sets
+		 * of the commoner trigrams, which are often very large. */
+		if (needed > 0) {
+			FacePamphletIdSet[] sets = new FacePamphletIdSet[queryGrams.length];
+			long[] order = new long[queryGrams.length];
+			for (int g = 0; g < sets.length; g++) {
+				sets[g] = grams.get(queryGrams[g]);
+				order[g] = ((long) ((sets[g] == null) ? 0 : sets[g].size()) << 32) | g;
+			}
+			Arrays.sort(order);
+			int scanned = sets.length - needed + 1;
+			for (int g = 0; g < sets.length; g++) {
+				FacePamphletIdSet ids = sets[(int) order[g]];
+				if (ids == null) {
+					continue;
+				}
+				if (g >= scanned) {
+					/* Only candidates which could still share enough trigrams
+					 * are looked up, or the set is stepped through if it is
+					 * the smaller. */
+					int remaining = sets.length - g;
+					if (ids.size() < numTouched) {
+						for (int pos = 0; pos < ids.end(); pos++) {
+							int id = ids.get(pos);
+							if (id >= 0 && counts[id] > 0 && counts[id] + remaining >= needed) {
+								counts[id]++;
+							}
+						}
+					} else {
+						for (int i = 0; i < numTouched; i++) {
+							int id = touched[i];
+							if (counts[id] + remaining >= needed && ids.contains(id)) {
+								counts[id]++;
+							}
+						}
+					}
+					continue;
+				}
+				for (int pos = 0; pos < ids.end(); pos++) {
+					int id = ids.get(pos);
+					if (id < 0) {
+						continue;
+					}
+					if (counts[id] == 0
+							&& Math.abs(keys[id].length() - key.length()) > maxDistance) {
+						/* The lengths alone rule this name out. */
+						continue;
+					}
+					if (counts[id]++ == 0) {
+						if (numTouched == touched.length) {
+							touched = Arrays.copyOf(touched, numTouched * 2);
+						}
+						touched[numTouched++] = id;
+					}
+				}
+			}
+		}
+
+		/* Compare the candidates in full, clearing their counts as we go. */
+		final int[] matches = new int[numTouched];
+		final int[] distances = new int[numTouched];
+		int numMatches = 0;
+		for (int i = 0; i < numTouched; i++) {
+			int id = touched[i];
+			if (counts[id] >= needed) {
+				int distance = editDistance(key, keys[id], maxDistance);
+				if (distance <= maxDistance) {
+					matches[numMatches] = id;
+					distances[numMatches++] = distance;
+				}
+			}
+			counts[id] = 0;
+		}
+
+		/* Rank the matches by distance, then alphabetically. */
+		Integer[] ranked = new Integer[numMatches];
+		for (int i = 0; i < numMatches; i++) {
+			ranked[i] = i;
+		}
+		Arrays.sort(ranked, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				if (distances[a] != distances[b]) {
+					return distances[a] - distances[b];
+				}
+				return FacePamphletNameIndex.this.compare(matches[a], matches[b]);
+			}
+		});
+		int[] result = new int[Math.min(Math.max(0, limit), numMatches)];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = matches[ranked[i]];
+		}
+		return result;
+	}
+
+
+	/** Returns the number of profiles in the index. */
+	public int size() {
+		return sortedSize - removedCount + recentSize;
+	}
+
+
+	/**
+	 * Merges the recent additions into the sorted array, dropping the
+	 * removed profiles.
+	 */
+	private void rebuild() {
+		int[] merged = new int[sortedSize - removedCount + recentSize];
+		int n = 0;
+		int j = 0;
+		for (int i = 0; i < sortedSize; i++) {
+			int id = sorted[i];
+			if (states[id] == REMOVED) {
+				states[id] = ABSENT;
+				continue;
+			}
+			while (j < recentSize && compare(recent[j], id) < 0) {
+				merged[n++] = recent[j++];
+			}
+			merged[n++] = id;
+		}
+		while (j < recentSize) {
+			merged[n++] = recent[j++];
+		}
+		for (int i = 0; i < n; i++) {
+			states[merged[i]] = SORTED;
+		}
+		sorted = merged;
+		sortedSize = n;
+		recentSize = 0;
+		removedCount = 0;
+	}
+
+
+	/**
+	 * Returns the position of the first ID in the given sorted array which
+	 * does not come before the given key, name and ID.
+	 */
+	private int findFirst(int[] ids, int size, String key, String name, int id) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compare(ids[mid], key, name, id) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+
+	/**
+	 * Compares the profiles with the given IDs: by their names ignoring
+	 * case, then by their names exactly, then by ID.
+	 */
+	private int compare(int a, int b) {
+		return compare(a, keys[b], names.getName(b), b);
+	}
+
+
+	/** Compares the profile with the given ID with the given key, name and ID. */
+	private int compare(int a, String key, String name, int id) {
+		int cmp = keys[a].compareTo(key);
+		if (cmp == 0) {
+			cmp = names.getName(a).compareTo(name);
+		}
+		if (cmp == 0) {
+			cmp = (a < id) ? -1 : (a == id ? 0 : 1);
+		}
+		return cmp;
+	}
+
+
+	/** Sorts part of an array of IDs with a merge sort, using the given space. */
+	private void sortByKey(int[] ids, int from, int to, int[] temp) {
+		if (to - from < 2) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		sortByKey(ids, from, mid, temp);
+		sortByKey(ids, mid, to, temp);
+		if (compare(ids[mid - 1], ids[mid]) <= 0) {
+			return;
+		}
+		System.arraycopy(ids, from, temp, from, to - from);
+		int i = from;
+		int j = mid;
+		for (int k = from; k < to; k++) {
+			if (j >= to || (i < mid && compare(temp[i], temp[j]) <= 0)) {
+				ids[k] = temp[i++];
+			} else {
+				ids[k] = temp[j++];
+			}
+		}
+	}
+
+
+	/** Adds the given profile to the trigram sets for its name. */
+	private void addGrams(int id) {
+		for (long gram: gramsOf(keys[id])) {
+			FacePamphletIdSet ids = grams.get(gram);
+			if (ids == null) {
+				ids = new FacePamphletIdSet();
+				grams.put(gram, ids);
+			}
+			ids.add(id);
+		}
+	}
+
+
+	/** Removes the given profile from the trigram sets for its name. */
+	private void removeGrams(int id) {
+		for (long gram: gramsOf(keys[id])) {
+			FacePamphletIdSet ids = grams.get(gram);
+			if (ids != null) {
+				ids.remove(id);
+				if (ids.size() == 0) {
+					grams.remove(gram);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the distinct trigrams of the given key, padded with a space at
+	 * each end, each packed into a long.
+	 */
+	private static long[] gramsOf(String key) {
+		String padded = " " + key + " ";
+		long[] result = new long[Math.max(0, padded.length() - GRAM_LENGTH + 1)];
+		int count = 0;
+		for (int i = 0; i < result.length; i++) {
+			long gram = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16)
+					| padded.charAt(i + 2);
+			boolean seen = false;
+			for (int j = 0; j < count && !seen; j++) {
+				seen = (result[j] == gram);
+			}
+			if (!seen) {
+				result[count++] = gram;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+
+	/**
+	 * Returns the number of edits (insertions, deletions, changes and swaps
+	 * of adjacent letters) needed to turn one string into the other, or
+	 * maxDistance + 1 if it is more than maxDistance.
+	 */
+	static int editDistance(String a, String b, int maxDistance) {
+		if (Math.abs(a.length() - b.length()) > maxDistance) {
+			return maxDistance + 1;
+		}
+		int[] previous2 = new int[b.length() + 1];
+		int[] previous = new int[b.length() + 1];
+		int[] current = new int[b.length() + 1];
+		for (int j = 0; j <= b.length(); j++) {
+			previous[j] = j;
+		}
+		for (int i = 1; i <= a.length(); i++) {
+			current[0] = i;
+			int rowMin = i;
+			for (int j = 1; j <= b.length(); j++) {
+				int cost = (a.charAt(i - 1) == b.charAt(j - 1)) ? 0 : 1;
+				int d = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1),
+						previous[j - 1] + cost);
+				if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2)
+						&& a.charAt(i - 2) == b.charAt(j - 1)) {
+					d = Math.min(d, previous2[j - 2] + 1);
+				}
+				current[j] = d;
+				rowMin = Math.min(rowMin, d);
+			}
+			if (rowMin > maxDistance) {
+				return maxDistance + 1;
+			}
+			int[] swap = previous2;
+			previous2 = previous;
+			previous = current;
+			current = swap;
+		}
+		return Math.min(previous[b.length()], maxDistance + 1);
+	}
+
+
+	/** Returns the search key for a name: the name in lower case. */
+	private static String keyOf(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+
+
+	/** Grows the per-ID arrays so they can be indexed below the given count. */
+	private void ensureCapacity(int count) {
+		if (count > keys.length) {
+			int capacity = Math.max(count, keys.length * 2);
+			keys = Arrays.copyOf(keys, capacity);
+			states = Arrays.copyOf(states, capacity);
+		}
+	}
+
+	/* The states of an ID: not in the index, in the sorted array, in the
+	 * sorted array but removed, or in the array of recent additions. */
+	private static final byte ABSENT = 0;
+	private static final byte SORTED = 1;
+	private static final byte REMOVED = 2;
+	private static final byte RECENT = 3;
+
+	/* The length of the letter sequences indexed for similar names. */
+	private static final int GRAM_LENGTH = 3;
+
+	/* The initial length of the per-ID and recent additions arrays. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/* Instance variables for the name table, and the search key and state
+	 * of each ID. */
+	private FacePamphletNameTable names;
+	private String[] keys;
+	private byte[] states;
+
+	/* Instance variables for the IDs sorted by key (including removed ones)
+	 * and the recent additions sorted by key, the number of each, and the
+	 * number of removed IDs in the sorted array. */
+	private int[] sorted;
+	private int sortedSize;
+	private int[] recent;
+	private int recentSize;
+	private int removedCount;
+
+	/* The set of profiles whose names contain each trigram. */
+	private HashMap<Long, FacePamphletIdSet> grams;
+
+	/* Scratch space kept between similar name searches: the number of
+	 * trigrams each ID shares with the query (all zero between searches),
+	 * and the IDs whose counts were changed. */
+	private int[] counts;
+	private int[] touched;
+
+}
@@ -0,0 +1,244 @@
+/*
+ * File: FacePamphletNameTable.java
+ * --------------------------------
+ * This class assigns each profile name seen by a FacePamphletDatabase
+ * a dense integer ID, starting at 0, and maps between the two.  The
+ * database stores friend lists as arrays of these IDs rather than as
+ * separate String references, so each name is held only once.
+ */
+
+import java.util.*;
+
+public class FacePamphletNameTable {
+
+	/**
+	 * Constructor
+	 * Creates an empty name table.
+	 */
+	public FacePamphletNameTable() {
+		names = new String[INITIAL_CAPACITY];
+		slots = new int[INITIAL_CAPACITY * 2];
+		size = 0;
+	}
+
+
+	/**
+	 * Returns the ID of the given name, assigning it the next free ID
+	 * if it is not already in the table.
+	 */
+	public int intern(String name) {
+		int slot = findSlot(name);
+		if (slots[slot] != 0) {
+			return slots[slot] - 1;
+		}
+
+		/* The name is new, so store it under the next ID, growing the
+		 * arrays first if the table is getting full. */
+		if (size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+		}
+		int id = size++;
+		names[id] = name;
+		slots[slot] = id + 1;
+		if (size * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+		return id;
+	}
+
+
+	/**
+	 * Makes room for the table to hold the given number of names, so that
+	 * interning up to that many does not grow or rehash its arrays.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > names.length) {
+			names = Arrays.copyOf(names, capacity);
+		}
+		int slotCount = slots.length;
+		while (capacity * 2 > slotCount) {
+			slotCount *= 2;
+		}
+		if (slotCount > slots.length) {
+			rehash(slotCount);
+		}
+	}
+
+
+	/**
+	 * Returns the ID of the given name, or -1 if the name is not in the
+	 * table.
+	 */
+	public int lookup(String name) {
+		int slot = findSlot(name);
+		return slots[slot] - 1;
+	}
+
+
+	/**
+	 * Returns the ID of the name held in the given characters, assigning
+	 * it the next free ID if it is not already in the table.  A String is
+	 * only created for the name if it is new, which lets a file loader
+	 * look up friend names straight from its line buffer.
+	 */
+	public int intern(CharSequence chars) {
+		int slot = findSlot(chars, hash(chars));
+		if (slots[slot] != 0) {
+			return slots[slot] - 1;
+		}
+		return intern(chars.toString());
+	}
+
+
+	/**
+	 * Returns the ID of the name held in the given characters, or -1 if the
+	 * name is not in the table.
+	 */
+	public int lookup(CharSequence chars) {
+		int slot = findSlot(chars, hash(chars));
+		return slots[slot] - 1;
+	}
+
+
+	/** Returns the name with the given ID. */
+	public String getName(int id) {
+		return names[id];
+	}
+
+
+	/** Returns the number of names in the table. */
+	public int size() {
+		return size;
+	}
+
+
+	/**
+	 * Returns the index of the slot holding the given name, or of the
+	 * empty slot where it would be stored.  Slots hold an ID plus one,
+	 * so that zero marks an empty slot, and are probed linearly.
+	 */
+	private int findSlot(String name) {
+		int mask = slots.length - 1;
+		int slot = mix(name.hashCode()) & mask;
+		while (slots[slot] != 0) {
+			String candidate = names[slots[slot] - 1];
+			if (candidate.hashCode() == name.hashCode() && candidate.equals(name)) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+
+	/**
+	 * Returns the index of the slot holding the name in the given
+	 * characters, whose String hash code is given, or of the empty slot
+	 * where it would be stored.
+	 */
+	private int findSlot(CharSequence chars, int hash) {
+		int mask = slots.length - 1;
+		int slot = mix(hash) & mask;
+		while (slots[slot] != 0) {
+			String candidate = names[slots[slot] - 1];
+			if (candidate.hashCode() == hash && contentEquals(candidate, chars)) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+
+	/**
+	 * Returns the hash code a String holding the given characters would
+	 * have.
+	 */
+	private static int hash(CharSequence chars) {
+		int hash = 0;
+		for (int i = 0; i < chars.length(); i++) {
+			hash = 31 * hash + chars.charAt(i);
+		}
+		return hash;
+	}
+
+
+	/** Returns true if the String holds exactly the given characters. */
+	private static boolean contentEquals(String name, CharSequence chars) {
+		if (name.length() != chars.length()) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) != chars.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Rebuilds the slot array with the given capacity, which must be a
+	 * power of two.
+	 */
+	private void rehash(int capacity) {
+		slots = new int[capacity];
+		int mask = capacity - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = mix(names[id].hashCode()) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = id + 1;
+		}
+	}
+
+
+	/**
+	 * Spreads the bits of a String hash code, so that names which differ
+	 * only in their last characters do not cluster in the slot array.
+	 */
+	static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Returns an estimate of the heap taken by the table and its names, in
+	 * bytes, for a 64-bit JVM with compressed object pointers.
+	 */
+	long estimateBytes() {
+		String[] names = this.names;
+		long bytes = OBJECT_BYTES + FacePamphletIdSet.arrayBytes(names.length)
+				+ FacePamphletIdSet.arrayBytes(slots.length);
+		for (int id = 0; id < Math.min(size, names.length); id++) {
+			bytes += stringBytes(names[id]);
+		}
+		return bytes;
+	}
+
+
+	/**
+	 * Returns the heap taken by the given string (0 if it is null), in
+	 * bytes, assuming that it only uses Latin-1 characters and so is stored
+	 * compactly.
+	 */
+	static long stringBytes(String string) {
+		return (string == null) ? 0 : STRING_BYTES + ((16 + string.length() + 7) & ~7L);
+	}
+
+	/* The heap taken by the table object itself, and by a String object
+	 * without its array of characters. */
+	private static final int OBJECT_BYTES = 24;
+	private static final int STRING_BYTES = 24;
+
+	/* The initial number of names the table can hold before growing. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/* Instance variables for the names indexed by ID, the open addressing
+	 * slot array used to find the ID of a name, and the number of names. */
+	private String[] names;
+	private int[] slots;
+	private int size;
+
+}
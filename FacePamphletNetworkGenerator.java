@@ -0,0 +1,701 @@
+/*
+ * File: FacePamphletNetworkGenerator.java
+ * ---------------------------------------
+ * This program generates a random network file in the text format read
+ * by FacePamphletDatabase.readDataFile, for load testing with networks
+ * of up to hundreds of millions of profiles.  Every friendship is listed
+ * by both of its profiles, and no profile lists a friend twice.  The
+ * same seed always gives the same file, whatever the number of threads.
+ *
+ * The profiles are written in chunks, each generated on its own by a
+ * pool of threads and written to the file in order, so the network is
+ * never held in memory: each profile's friends are worked out from its
+ * number alone.  This is done in rounds.  In each round r a random
+ * constant c(r) pairs every profile j with the profile c(r) - j (mod
+ * the number of profiles), which pairs it back with j, so deciding
+ * whether a pair are friends in a round from something both ends can
+ * work out gives friendships listed at both ends.  The constants are
+ * all different, so a pair meets in at most one round.
+ *
+ * Each profile is given a target number of friends, decreasing with
+ * its number, and a pair who meet in round r are friends if either of
+ * their targets is more than r.  A profile j is then friends with its
+ * partners in every round below its own target, and in the later rounds
+ * only with partners whose targets are higher still.  Since the targets
+ * decrease, those partners are the profiles numbered below some bound
+ * P(r), so the profiles which meet one of them in round r form a range
+ * which can be found without looking at the others.  The targets follow
+ * either a power law (a few profiles with very many friends, as in real
+ * social networks) or a uniform distribution, scaled so that the
+ * average number of friends comes out as asked.
+ *
+ * The small-world network is instead a ring in which each profile is
+ * friends with the nearest profiles on each side, plus shortcuts to
+ * random profiles: a pair who meet in a round are friends with a given
+ * probability, decided by hashing the pair and the round.
+ *
+ * Profile numbers are turned into names by a random permutation, so
+ * that the name of a profile says nothing about its number of friends.
+ * Optionally, each profile is given an image filename and a status.
+ *
+ * Usage: java FacePamphletNetworkGenerator output profiles [-distribution
+ *            powerlaw|uniform|smallworld] [-degree average] [-exponent e]
+ *            [-maxdegree max] [-rewire probability] [-seed seed]
+ *            [-threads threads] [-images] [-statuses]
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class FacePamphletNetworkGenerator {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			usage();
+		}
+		String output = args[0];
+		int numProfiles = Integer.parseInt(args[1]);
+		String distribution = POWER_LAW;
+		double degree = 20;
+		double exponent = 2.5;
+		int maxDegree = -1;
+		double rewire = 0.1;
+		long seed = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean images = false;
+		boolean statuses = false;
+		for (int i = 2; i < args.length; i++) {
+			String option = args[i];
+			boolean hasValue = i + 1 < args.length;
+			if (option.equals("-images")) {
+				images = true;
+			} else if (option.equals("-statuses")) {
+				statuses = true;
+			} else if (option.equals("-distribution") && hasValue) {
+				distribution = args[++i];
+			} else if (option.equals("-degree") && hasValue) {
+				degree = Double.parseDouble(args[++i]);
+			} else if (option.equals("-exponent") && hasValue) {
+				exponent = Double.parseDouble(args[++i]);
+			} else if (option.equals("-maxdegree") && hasValue) {
+				maxDegree = Integer.parseInt(args[++i]);
+			} else if (option.equals("-rewire") && hasValue) {
+				rewire = Double.parseDouble(args[++i]);
+			} else if (option.equals("-seed") && hasValue) {
+				seed = Long.parseLong(args[++i]);
+			} else if (option.equals("-threads") && hasValue) {
+				threads = Integer.parseInt(args[++i]);
+			} else {
+				usage();
+			}
+		}
+		if (!distribution.equals(POWER_LAW) && !distribution.equals(UNIFORM)
+				&& !distribution.equals(SMALL_WORLD)) {
+			usage();
+		}
+		if (numProfiles < 2 || degree <= 0 || exponent <= 1 || rewire < 0 || rewire > 1) {
+			System.err.println("Need at least 2 profiles, a positive degree, an exponent"
+					+ " above 1 and a rewiring probability from 0 to 1");
+			System.exit(1);
+		}
+		if (maxDegree < 0 || maxDegree > numProfiles - 1) {
+			maxDegree = numProfiles - 1;
+		}
+
+		FacePamphletNetworkGenerator generator = new FacePamphletNetworkGenerator(numProfiles,
+				distribution, degree, exponent, maxDegree, rewire, seed);
+		generator.setExtras(images, statuses);
+		long start = System.nanoTime();
+		generator.write(output, threads);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long bytes = new File(output).length();
+		System.out.printf("Wrote %s: %d profiles, %d friendships, average %.1f and most %d"
+				+ " friends%n", output, numProfiles, generator.friendEntries / 2,
+				(double) generator.friendEntries / numProfiles, generator.mostFriends);
+		System.out.printf("%d bytes in %.1f s (%.0f MB/s) with %d threads%n", bytes, seconds,
+				bytes / seconds / 1e6, threads);
+	}
+
+
+	/** Prints how to run the program and exits. */
+	private static void usage() {
+		System.err.println("Usage: java FacePamphletNetworkGenerator output profiles"
+				+ " [-distribution powerlaw|uniform|smallworld] [-degree average]"
+				+ " [-exponent e] [-maxdegree max] [-rewire probability] [-seed seed]"
+				+ " [-threads threads] [-images] [-statuses]");
+		System.exit(1);
+	}
+
+
+	/**
+	 * Constructor
+	 * Creates a generator for a network of the given number of profiles,
+	 * whose numbers of friends follow the named distribution with about
+	 * the given average.  For a power law the exponent is that of the
+	 * distribution, and for a small world the rewiring probability is the
+	 * chance of each shortcut.  No profile is given a target of more than
+	 * maxDegree friends.
+	 */
+	public FacePamphletNetworkGenerator(int numProfiles, String distribution, double degree,
+			double exponent, int maxDegree, double rewire, long seed) {
+		this.numProfiles = numProfiles;
+		this.distribution = distribution;
+		this.exponent = exponent;
+		this.maxDegree = Math.min(maxDegree, numProfiles - 1);
+		this.rewire = rewire;
+		this.seed = seed;
+		Random random = new Random(seed);
+
+		/* Pick the permutation giving each profile its name: multiplying by
+		 * a number with no factor in common with the number of profiles. */
+		nameMultiplier = 1 + (long) (random.nextDouble() * (numProfiles - 1));
+		while (gcd(nameMultiplier, numProfiles) != 1) {
+			nameMultiplier++;
+		}
+		nameOffset = (long) (random.nextDouble() * numProfiles);
+
+		if (distribution.equals(SMALL_WORLD)) {
+			/* Each profile has 2 * neighbours friends on the ring, and meets
+			 * that many others, each of them a shortcut with probability
+			 * rewire. */
+			neighbours = (int) Math.max(1, Math.round(degree / 2 / (1 + rewire)));
+			neighbours = Math.min(neighbours, (numProfiles - 1) / 2);
+			rounds = roundConstants(2 * neighbours, random);
+			hubs = null;
+		} else {
+			scale = calibrate(degree);
+			hubs = hubCounts(scale);
+			rounds = roundConstants(hubs.length, random);
+
+			/* The counts decrease with the rounds, so the wide rounds come
+			 * first.  The narrow ones are sorted by their constants. */
+			wideRounds = 0;
+			while (wideRounds < hubs.length && hubs[wideRounds] >= CHUNK_SIZE) {
+				wideRounds++;
+			}
+			long[] narrow = new long[hubs.length - wideRounds];
+			for (int r = wideRounds; r < hubs.length; r++) {
+				narrow[r - wideRounds] = ((long) rounds[r] << 32) | r;
+			}
+			Arrays.sort(narrow);
+			narrowConstants = new int[narrow.length];
+			narrowRounds = new int[narrow.length];
+			for (int i = 0; i < narrow.length; i++) {
+				narrowConstants[i] = (int) (narrow[i] >>> 32);
+				narrowRounds[i] = (int) narrow[i];
+			}
+		}
+	}
+
+
+	/**
+	 * Sets whether each profile is given an image filename and a status,
+	 * rather than leaving them blank.
+	 */
+	public void setExtras(boolean images, boolean statuses) {
+		this.images = images;
+		this.statuses = statuses;
+	}
+
+
+	/**
+	 * Writes the network to the named file with the given number of
+	 * threads, replacing the file once it is complete.
+	 */
+	public void write(String filename, int threads) throws IOException, InterruptedException {
+		friendEntries = 0;
+		mostFriends = 0;
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		FacePamphletAtomicFile file = new FacePamphletAtomicFile(filename);
+		try {
+			FileChannel channel = file.getChannel();
+			writeFully(channel, (numProfiles + "\n").getBytes("US-ASCII"), 0);
+
+			/* Keep a few chunks per thread on the go, writing each one out in
+			 * order as soon as it is ready. */
+			Deque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+			int next = 0;
+			while (next < numProfiles || !pending.isEmpty()) {
+				while (next < numProfiles && pending.size() < CHUNKS_PER_THREAD * threads) {
+					final int from = next;
+					final int to = (int) Math.min((long) next + CHUNK_SIZE, numProfiles);
+					pending.add(pool.submit(new Callable<Chunk>() {
+						public Chunk call() {
+							return generate(from, to);
+						}
+					}));
+					next = to;
+				}
+				Chunk chunk = getChunk(pending.remove());
+				writeFully(channel, chunk.bytes, chunk.length);
+				friendEntries += chunk.friendsListed;
+				mostFriends = Math.max(mostFriends, chunk.mostListed);
+			}
+			file.commit(false);
+		} finally {
+			pool.shutdownNow();
+			file.abort();
+		}
+	}
+
+
+	/** Generates the text for the profiles numbered from from up to to. */
+	private Chunk generate(int from, int to) {
+		Chunk chunk = new Chunk(to - from);
+		int[] friends = new int[INITIAL_CAPACITY];
+		int[][] later = hubs == null ? null : laterRounds(from, to);
+		for (int j = from; j < to; j++) {
+			int count = 0;
+			if (hubs == null) {
+				/* The nearest profiles on each side of the ring, then the
+				 * shortcuts. */
+				for (int d = 1; d <= neighbours; d++) {
+					friends = append(friends, count++, (int) ((j + (long) d) % numProfiles));
+					friends = append(friends, count++,
+							(int) ((j - (long) d + numProfiles) % numProfiles));
+				}
+				for (int r = 0; r < rounds.length; r++) {
+					int partner = partner(j, r);
+					long apart = Math.abs((long) partner - j);
+					apart = Math.min(apart, numProfiles - apart);
+					if (apart > neighbours
+							&& hash(Math.min(j, partner), Math.max(j, partner), r) < rewire) {
+						friends = append(friends, count++, partner);
+					}
+				}
+			} else {
+				/* Every partner in the rounds below this profile's target,
+				 * then the partners in later rounds with higher targets. */
+				int target = target(j, scale);
+				for (int r = 0; r < target; r++) {
+					int partner = partner(j, r);
+					if (partner != j) {
+						friends = append(friends, count++, partner);
+					}
+				}
+				int[] extra = later[j - from];
+				if (extra != null) {
+					for (int i = 1; i <= extra[0]; i++) {
+						friends = append(friends, count++, partner(j, extra[i]));
+					}
+				}
+			}
+			chunk.addProfile(j, friends, count);
+		}
+		return chunk;
+	}
+
+
+	/**
+	 * Returns, for each profile numbered from from up to to, the rounds at
+	 * or above its own target in which its partner's target is higher than
+	 * the round (with their number first), or null if there are none.
+	 */
+	private int[][] laterRounds(int from, int to) {
+		int[][] later = new int[to - from][];
+		int[] targets = new int[to - from];
+		for (int j = from; j < to; j++) {
+			targets[j - from] = target(j, scale);
+		}
+
+		/* The wide rounds, in which many profiles have higher targets, may
+		 * reach any chunk.  A narrow round reaches back less than a chunk
+		 * from its constant, so only those whose constants are in or just
+		 * after this chunk (wrapping around the end) are looked at. */
+		for (int r = 0; r < wideRounds; r++) {
+			addLaterRound(later, targets, from, to, r);
+		}
+		long end = (long) to + CHUNK_SIZE;
+		addLaterRounds(later, targets, from, to, from, Math.min(end, numProfiles));
+		if (end > numProfiles) {
+			addLaterRounds(later, targets, from, to, 0, end - numProfiles);
+		}
+		return later;
+	}
+
+
+	/**
+	 * Adds the narrow rounds whose constants are from first up to last to
+	 * the lists of later rounds of the profiles from from up to to.
+	 */
+	private void addLaterRounds(int[][] later, int[] targets, int from, int to, long first,
+			long last) {
+		int i = Arrays.binarySearch(narrowConstants, (int) first);
+		if (i < 0) {
+			i = -i - 1;
+		}
+		for (; i < narrowConstants.length && narrowConstants[i] < last; i++) {
+			addLaterRound(later, targets, from, to, narrowRounds[i]);
+		}
+	}
+
+
+	/**
+	 * Adds the given round to the lists of later rounds of the profiles
+	 * from from up to to which meet a profile with a higher target in it.
+	 * The partner c(r) - j is below hubs[r] exactly when j is in the range
+	 * from c(r) - hubs[r] + 1 to c(r), which may wrap around the end.
+	 */
+	private void addLaterRound(int[][] later, int[] targets, int from, int to, int r) {
+		long last = rounds[r];
+		long first = last - hubs[r] + 1;
+		if (first >= 0) {
+			addLaterRange(later, targets, from, to, r, first, last);
+		} else {
+			addLaterRange(later, targets, from, to, r, first + numProfiles, numProfiles - 1);
+			addLaterRange(later, targets, from, to, r, 0, last);
+		}
+	}
+
+
+	/**
+	 * Adds the given round to the lists of the profiles from first to last
+	 * (inclusive) which are from from up to to, and whose targets are not
+	 * above the round.
+	 */
+	private void addLaterRange(int[][] later, int[] targets, int from, int to, int r,
+			long first, long last) {
+		int lo = (int) Math.max(first, from);
+		int hi = (int) Math.min(last, to - 1);
+		for (int j = lo; j <= hi; j++) {
+			if (r >= targets[j - from] && partner(j, r) != j) {
+				later[j - from] = append(later[j - from], r);
+			}
+		}
+	}
+
+
+	/** Returns the partner of profile j in the given round. */
+	private int partner(int j, int round) {
+		return (int) Math.floorMod((long) rounds[round] - j, (long) numProfiles);
+	}
+
+
+	/**
+	 * Returns the target number of friends of the profile with the given
+	 * number, for the given scale: the value of the distribution's quantile
+	 * function at the profile's position, so that the targets decrease with
+	 * the profile numbers.
+	 */
+	private int target(int j, double scale) {
+		double position = (j + 0.5) / numProfiles;
+		double target;
+		if (distribution.equals(POWER_LAW)) {
+			target = scale * Math.pow(position, -1 / (exponent - 1));
+		} else {
+			target = 2 * scale * (1 - position);
+		}
+		return (int) Math.max(1, Math.min(maxDegree, target));
+	}
+
+
+	/**
+	 * Returns, for each round below the highest target, the number of
+	 * profiles whose target is higher than the round, P(r).  This is worked
+	 * out from the inverse of the quantile function, and then corrected so
+	 * that it agrees exactly with target, since both ends of a pair must
+	 * agree on whether they are friends.
+	 */
+	private int[] hubCounts(double scale) {
+		int[] counts = new int[target(0, scale)];
+		for (int r = 0; r < counts.length; r++) {
+			/* A target is above r where the quantile function is at least
+			 * r + 1. */
+			double position;
+			if (distribution.equals(POWER_LAW)) {
+				position = Math.pow((r + 1) / scale, -(exponent - 1));
+			} else {
+				position = 1 - (r + 1) / (2 * scale);
+			}
+			long count = (long) Math.floor(position * numProfiles + 0.5);
+			count = Math.max(0, Math.min(numProfiles, count));
+			while (count < numProfiles && target((int) count, scale) > r) {
+				count++;
+			}
+			while (count > 0 && target((int) count - 1, scale) <= r) {
+				count--;
+			}
+			counts[r] = (int) count;
+		}
+		return counts;
+	}
+
+
+	/**
+	 * Returns the scale of the target distribution which gives about the
+	 * given average number of friends.  In round r the P(r) profiles with
+	 * targets above r are each paired with another, so about
+	 * P(r) - P(r)^2 / 2n pairs become friends, adding twice that to the
+	 * total number of friends.  This grows with the scale, so the scale is
+	 * found by bisection.
+	 */
+	private double calibrate(double degree) {
+		double low = 0;
+		double high = Math.max(1, degree);
+		while (averageFriends(high) < degree && high < maxDegree) {
+			high *= 2;
+		}
+		for (int i = 0; i < CALIBRATION_STEPS; i++) {
+			double mid = (low + high) / 2;
+			if (averageFriends(mid) < degree) {
+				low = mid;
+			} else {
+				high = mid;
+			}
+		}
+		return high;
+	}
+
+
+	/** Returns the expected average number of friends for the given scale. */
+	private double averageFriends(double scale) {
+		double total = 0;
+		for (int count: hubCounts(scale)) {
+			total += 2.0 * count - (double) count * count / numProfiles;
+		}
+		return total / numProfiles;
+	}
+
+
+	/**
+	 * Returns the given number of different random constants for the
+	 * rounds, from 0 up to the number of profiles.
+	 */
+	private int[] roundConstants(int count, Random random) {
+		int[] constants = new int[count];
+		Set<Integer> used = new HashSet<Integer>();
+		for (int r = 0; r < count; r++) {
+			int constant;
+			do {
+				constant = random.nextInt(numProfiles);
+			} while (!used.add(constant));
+			constants[r] = constant;
+		}
+		return constants;
+	}
+
+
+	/**
+	 * Returns a number from 0 up to 1 which depends only on the given pair
+	 * of profiles, the round and the seed.
+	 */
+	private double hash(int a, int b, int round) {
+		long h = seed + ((long) a << 32 | b) * 0x9E3779B97F4A7C15L + round * 0xC2B2AE3D27D4EB4FL;
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		h ^= h >>> 31;
+		return (h >>> 11) * 0x1.0p-53;
+	}
+
+
+	/** Returns the number in the name of the profile with the given number. */
+	private long nameNumber(int j) {
+		return (j * nameMultiplier + nameOffset) % numProfiles;
+	}
+
+
+	/** Returns the greatest common divisor of two numbers. */
+	private static long gcd(long a, long b) {
+		return (b == 0) ? a : gcd(b, a % b);
+	}
+
+
+	/** Stores a value in an array at the given index, growing it if needed. */
+	private static int[] append(int[] values, int index, int value) {
+		if (index == values.length) {
+			values = Arrays.copyOf(values, index * 2);
+		}
+		values[index] = value;
+		return values;
+	}
+
+
+	/**
+	 * Adds a value to a list held in an array with its length first,
+	 * creating or growing the array if needed.
+	 */
+	private static int[] append(int[] list, int value) {
+		if (list == null) {
+			list = new int[4];
+		}
+		list = append(list, list[0] + 1, value);
+		list[0]++;
+		return list;
+	}
+
+
+	/** Writes the first length bytes of the array to the channel (all if 0). */
+	private static void writeFully(FileChannel channel, byte[] bytes, int length)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, (length == 0) ? bytes.length : length);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+
+	/** Waits for a chunk, passing on anything it threw. */
+	private static Chunk getChunk(Future<Chunk> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw new RuntimeException(ex.getCause());
+		}
+	}
+
+
+	/**
+	 * The text of a run of profiles, built up as ASCII bytes, with the
+	 * number of friends listed and the most listed by any one profile.
+	 */
+	private class Chunk {
+
+		Chunk(int numProfiles) {
+			bytes = new byte[numProfiles * BYTES_PER_PROFILE];
+			length = 0;
+		}
+
+		/** Adds the profile with the given number and friends. */
+		void addProfile(int j, int[] friends, int count) {
+			addName(j);
+			addByte('\n');
+			if (images) {
+				addText(IMAGE_DIRECTORY);
+				addName(j);
+				addText(IMAGE_EXTENSION);
+			}
+			addByte('\n');
+			if (statuses) {
+				addText(STATUSES[(int) (hash(j, j, -1) * STATUSES.length)]);
+			}
+			addByte('\n');
+			for (int i = 0; i < count; i++) {
+				addName(friends[i]);
+				addByte('\n');
+			}
+			addByte('\n');
+			friendsListed += count;
+			mostListed = Math.max(mostListed, count);
+		}
+
+		/** Adds the name of the profile with the given number. */
+		void addName(int j) {
+			addText(NAME_PREFIX);
+			long number = nameNumber(j);
+			int digits = 1;
+			for (long n = number; n >= 10; n /= 10) {
+				digits++;
+			}
+			ensureRoom(digits);
+			for (int i = length + digits - 1; i >= length; i--) {
+				bytes[i] = (byte) ('0' + number % 10);
+				number /= 10;
+			}
+			length += digits;
+		}
+
+		/** Adds the given ASCII text. */
+		void addText(String text) {
+			ensureRoom(text.length());
+			for (int i = 0; i < text.length(); i++) {
+				bytes[length++] = (byte) text.charAt(i);
+			}
+		}
+
+		/** Adds one byte. */
+		void addByte(char ch) {
+			ensureRoom(1);
+			bytes[length++] = (byte) ch;
+		}
+
+		/** Grows the array, if needed, to hold the given number of bytes more. */
+		void ensureRoom(int count) {
+			if (length + count > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(length + count, bytes.length * 2));
+			}
+		}
+
+		/* The text of the profiles and its length, the number of friends
+		 * listed and the most listed by one profile. */
+		byte[] bytes;
+		int length;
+		long friendsListed;
+		int mostListed;
+	}
+
+	/* The names of the distributions of the numbers of friends. */
+	public static final String POWER_LAW = "powerlaw";
+	public static final String UNIFORM = "uniform";
+	public static final String SMALL_WORLD = "smallworld";
+
+	/* The start of every profile name, and the directory and extension of
+	 * the image filenames. */
+	private static final String NAME_PREFIX = "Person";
+	private static final String IMAGE_DIRECTORY = "images/";
+	private static final String IMAGE_EXTENSION = ".jpg";
+
+	/* The statuses given to profiles. */
+	private static final String[] STATUSES = {
+		"coding", "sleeping", "at the beach", "reading", "cooking dinner",
+		"watching a film", "on holiday", "studying for exams", "out running",
+		"playing the piano"
+	};
+
+	/* The number of profiles generated by each task, the number of tasks
+	 * kept on the go for each thread, and the space first allowed for the
+	 * text of each profile. */
+	private static final int CHUNK_SIZE = 16384;
+	private static final int CHUNKS_PER_THREAD = 2;
+	private static final int BYTES_PER_PROFILE = 256;
+
+	/* The initial length of the array of a profile's friends. */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/* The number of bisection steps used to find the scale of the targets. */
+	private static final int CALIBRATION_STEPS = 40;
+
+	/* Instance variables for the number of profiles, the distribution of
+	 * their numbers of friends (with its scale and exponent, or for a small
+	 * world the number of neighbours on each side and the shortcut
+	 * probability), and the highest target. */
+	private int numProfiles;
+	private String distribution;
+	private double scale;
+	private double exponent;
+	private int neighbours;
+	private double rewire;
+	private int maxDegree;
+
+	/* The seed, the constant of each round, and for each round the number
+	 * of profiles whose target is above it (null for a small world). */
+	private long seed;
+	private int[] rounds;
+	private int[] hubs;
+
+	/* The number of wide rounds (the first ones), in which at least a chunk
+	 * of profiles have higher targets, and the constants of the narrow
+	 * rounds in order, with the rounds they belong to. */
+	private int wideRounds;
+	private int[] narrowConstants;
+	private int[] narrowRounds;
+
+	/* The permutation giving the number in each profile's name. */
+	private long nameMultiplier;
+	private long nameOffset;
+
+	/* Whether profiles are given image filenames and statuses. */
+	private boolean images;
+	private boolean statuses;
+
+	/* The number of friends listed in the file written, and the most listed
+	 * by one profile. */
+	private long friendEntries;
+	private int mostFriends;
+
+}
@@ -0,0 +1,227 @@
+/*
+ * File: FacePamphletParallelLoader.java
+ * -------------------------------------
+ * This class reads a network file into a FacePamphletDatabase using
+ * several threads.  A blank line cannot be taken on its own as the end
+ * of a profile, since the image filename and status lines may also be
+ * blank, so a quick first pass skips through the file without decoding
+ * it to find where each profile starts.  The profiles are then split
+ * into chunks of roughly equal size, each chunk is memory-mapped and
+ * parsed on a fork-join pool against a name table of its own, and the
+ * chunks are merged into the database in file order.  Because the
+ * merge interns names in the order they appear in the file, the
+ * resulting database is identical to one read sequentially.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class FacePamphletParallelLoader {
+
+	/**
+	 * Constructor
+	 * Creates a loader which parses with the given number of threads.
+	 */
+	public FacePamphletParallelLoader(int threads) {
+		this(threads, null);
+	}
+
+
+	/**
+	 * Constructor
+	 * Creates a loader which parses with the given number of threads and
+	 * reports its progress to the given object (if it is not null).  The
+	 * first pass through the file counts as the first half of the bytes,
+	 * and each chunk merged into the database counts for its bytes again.
+	 */
+	public FacePamphletParallelLoader(int threads, FacePamphletProgress progress) {
+		this.threads = Math.max(1, threads);
+		this.progress = progress;
+	}
+
+
+	/**
+	 * Reads the named network file, adding its profiles to the given
+	 * (normally empty) database.  Returns the number of bytes read.
+	 */
+	public long load(String filename, FacePamphletDatabase database) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			long size = channel.size();
+			findRecords(new FacePamphletLineReader(
+					FacePamphletProgressChannel.wrap(channel, progress, 2 * size)));
+
+			/* Parse the chunks in parallel. */
+			List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>();
+			int[] bounds = chunkBounds();
+			for (int i = 0; i + 1 < bounds.length; i++) {
+				futures.add(pool.submit(new ChunkParser(channel, bounds[i], bounds[i + 1])));
+			}
+
+			/* Merge them in file order, moving each chunk's profiles over to
+			 * the database's name table through a table of remapped IDs. */
+			FacePamphletNameTable names = database.getNameTable();
+			for (int i = 0; i < futures.size(); i++) {
+				Chunk chunk = getChunk(futures.get(i));
+				int[] remap = new int[chunk.names.size()];
+				for (int id = 0; id < remap.length; id++) {
+					remap[id] = names.intern(chunk.names.getName(id));
+				}
+				for (FacePamphletProfile profile: chunk.profiles) {
+					profile.setNameTable(names, remap);
+					database.addProfile(profile);
+				}
+				if (progress != null) {
+					progress.update(size + starts[bounds[i + 1]], 2 * size);
+				}
+			}
+			return starts[numProfiles];
+		} finally {
+			pool.shutdownNow();
+			channel.close();
+		}
+	}
+
+
+	/**
+	 * Skips through the file without decoding it, recording the byte offset
+	 * and line number at which each profile starts, and the offset at which
+	 * the last one ends.
+	 */
+	private void findRecords(FacePamphletLineReader rd) throws IOException {
+		if (!rd.readLine()) {
+			throw rd.error("unexpected end of file, expected the number of profiles");
+		}
+		numProfiles = rd.parseCount();
+		starts = new long[numProfiles + 1];
+		lines = new int[numProfiles];
+
+		for (int i = 0; i < numProfiles; i++) {
+			starts[i] = rd.bytesRead();
+			lines[i] = rd.lineNumber();
+			int nameLength = rd.skipLine();
+			if (nameLength < 0) {
+				throw rd.error("unexpected end of file, expected the name of profile "
+						+ (i + 1) + " of " + numProfiles);
+			}
+			if (nameLength == 0) {
+				throw rd.error("profile name is blank");
+			}
+			if (rd.skipLine() < 0 || rd.skipLine() < 0) {
+				throw rd.error("unexpected end of file in profile " + (i + 1));
+			}
+			while (rd.skipLine() > 0) {
+				/* Friend lines are parsed later, by the chunk parsers. */
+			}
+		}
+		starts[numProfiles] = rd.bytesRead();
+	}
+
+
+	/**
+	 * Returns the indices of the profiles at which each chunk starts,
+	 * followed by the number of profiles.  The chunks hold roughly equal
+	 * numbers of bytes, and none is larger than MAX_CHUNK_BYTES unless it
+	 * holds a single profile.
+	 */
+	private int[] chunkBounds() {
+		long total = starts[numProfiles] - starts[0];
+		long target = Math.max(1, Math.min(MAX_CHUNK_BYTES, total / (threads * CHUNKS_PER_THREAD)));
+		List<Integer> bounds = new ArrayList<Integer>();
+		bounds.add(0);
+		for (int i = 1; i < numProfiles; i++) {
+			if (starts[i + 1] - starts[bounds.get(bounds.size() - 1)] > target) {
+				bounds.add(i);
+			}
+		}
+		bounds.add(numProfiles);
+		int[] result = new int[bounds.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = bounds.get(i);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Waits for a chunk to be parsed, passing on any IOException thrown by
+	 * its parser.
+	 */
+	private static Chunk getChunk(Future<Chunk> future) throws IOException {
+		try {
+			return future.get();
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException) {
+				throw (IOException) ex.getCause();
+			}
+			throw new IOException(ex.getCause());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("load interrupted");
+		}
+	}
+
+
+	/**
+	 * The profiles parsed from one chunk of the file, and the name table
+	 * their friend IDs come from.
+	 */
+	private static class Chunk {
+		FacePamphletNameTable names = new FacePamphletNameTable();
+		List<FacePamphletProfile> profiles = new ArrayList<FacePamphletProfile>();
+	}
+
+
+	/** Task which maps and parses the profiles in one chunk of the file. */
+	private class ChunkParser implements Callable<Chunk> {
+
+		ChunkParser(FileChannel channel, int first, int last) {
+			this.channel = channel;
+			this.first = first;
+			this.last = last;
+		}
+
+		public Chunk call() throws IOException {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+					starts[first], starts[last] - starts[first]);
+			FacePamphletLineReader rd = new FacePamphletLineReader(buffer, lines[first]);
+			Chunk chunk = new Chunk();
+			for (int i = first; i < last; i++) {
+				chunk.profiles.add(FacePamphletDatabase.readProfile(rd, chunk.names,
+						"the name of profile " + (i + 1) + " of " + numProfiles));
+			}
+			return chunk;
+		}
+
+		/* The file, and the indices of the first profile in the chunk and
+		 * of the first profile after it. */
+		private FileChannel channel;
+		private int first;
+		private int last;
+	}
+
+	/* The number of chunks per thread, so that a slow chunk does not leave
+	 * the other threads idle at the end of the load. */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/* The largest chunk mapped in one go (a mapping must be under 2 GB). */
+	private static final long MAX_CHUNK_BYTES = 256L * 1024 * 1024;
+
+	/* Instance variables for the number of threads, and the object to
+	 * which progress is reported (or null). */
+	private int threads;
+	private FacePamphletProgress progress;
+
+	/* Instance variables for the number of profiles in the file, the byte
+	 * offset at which each profile starts (followed by the end of the last
+	 * one), and the line number before each profile. */
+	private int numProfiles;
+	private long[] starts;
+	private int[] lines;
+
+}
@@ -0,0 +1,98 @@
+/*
+ * File: FacePamphletPath.java
+ * ---------------------------
+ * This class holds the result of a search for the shortest chain of
+ * friends between two profiles, as returned by
+ * FacePamphletDatabase.findPath: the chain itself (if one was found),
+ * how many profiles the search visited and how long it took, and
+ * whether it gave up because it ran out of time.
+ */
+
+import java.util.*;
+
+public class FacePamphletPath {
+
+	/**
+	 * Constructor
+	 * Creates a result holding the given chain of names (empty if none was
+	 * found), the number of profiles visited, the time taken in
+	 * nanoseconds and whether the search ran out of time.
+	 */
+	public FacePamphletPath(List<String> names, int visited, long nanos, boolean timedOut) {
+		this.names = Collections.unmodifiableList(new ArrayList<String>(names));
+		this.visited = visited;
+		this.nanos = nanos;
+		this.timedOut = timedOut;
+	}
+
+
+	/** Returns true if a chain of friends was found. */
+	public boolean isFound() {
+		return !names.isEmpty();
+	}
+
+
+	/**
+	 * Returns the names along the chain, from the first profile to the
+	 * second, or an empty list if no chain was found.
+	 */
+	public List<String> getNames() {
+		return names;
+	}
+
+
+	/**
+	 * Returns the number of friendships along the chain (one less than the
+	 * number of names), or -1 if no chain was found.
+	 */
+	public int getLength() {
+		return names.size() - 1;
+	}
+
+
+	/** Returns the number of profiles the search visited. */
+	public int getVisited() {
+		return visited;
+	}
+
+
+	/** Returns the time taken by the search, in nanoseconds. */
+	public long getNanos() {
+		return nanos;
+	}
+
+
+	/**
+	 * Returns true if the search gave up because it ran out of time, in
+	 * which case a chain may exist even though none was found.
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+
+	/**
+	 * Returns a string of the form "Alice -> Bob -> Carol (visited 12
+	 * profiles in 0.1 ms)".
+	 */
+	public String toString() {
+		StringBuilder string = new StringBuilder();
+		if (isFound()) {
+			for (int i = 0; i < names.size(); i++) {
+				string.append(i == 0 ? "" : " -> ").append(names.get(i));
+			}
+		} else {
+			string.append(timedOut ? "No connection found in time" : "Not connected");
+		}
+		string.append(String.format(" (visited %d profiles in %.1f ms)", visited, nanos / 1e6));
+		return string.toString();
+	}
+
+	/* Instance variables for the chain of names, the number of profiles
+	 * visited, the time taken and whether the search ran out of time. */
+	private List<String> names;
+	private int visited;
+	private long nanos;
+	private boolean timedOut;
+
+}
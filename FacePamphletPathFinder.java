@@ -0,0 +1,316 @@
+/*
+ * File: FacePamphletPathFinder.java
+ * ---------------------------------
+ * This class finds the shortest chain of friends from one profile to
+ * another in a FacePamphletDatabase.  It searches from both ends at
+ * once: forwards from the first profile along the lists of friends,
+ * and backwards from the second through the database's reverse index
+ * of who lists each name.  Each step expands the smaller of the two
+ * frontiers by one whole level, so the search visits roughly the
+ * square root of the profiles a one-sided search would, and stops as
+ * soon as the two searches meet.
+ *
+ * Large frontiers are split into chunks which are expanded in parallel
+ * on the common fork-join pool.  Each side records the parent of every
+ * profile it reaches in an atomic array, and a profile belongs to the
+ * chunk which first sets its parent, so no profile is expanded twice.
+ * The parent arrays are kept between searches and only the entries a
+ * search used are cleared afterwards, so a search costs time in
+ * proportion to the profiles it visits rather than to the size of the
+ * network.  The database must not be changed while a search runs.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class FacePamphletPathFinder {
+
+	/**
+	 * Constructor
+	 * Creates a path finder for the given database.
+	 */
+	public FacePamphletPathFinder(FacePamphletDatabase database) {
+		this.database = database;
+		forwardParents = new AtomicIntegerArray(0);
+		backwardParents = new AtomicIntegerArray(0);
+	}
+
+
+	/**
+	 * Returns the IDs along a shortest chain of friends from the profile
+	 * with the first ID to the profile with the second, or null if there is
+	 * none of at most maxDepth friendships, or if the search runs past the
+	 * given deadline (a System.nanoTime value).  The number of profiles
+	 * visited can then be read with getVisited, and whether the deadline
+	 * was reached with isTimedOut.
+	 */
+	public int[] findPath(int source, int target, int maxDepth, long deadline) {
+		visited = 0;
+		timedOut = false;
+		int size = database.getNameTable().size();
+		if (forwardParents.length() < size) {
+			forwardParents = new AtomicIntegerArray(size);
+			backwardParents = new AtomicIntegerArray(size);
+		}
+		List<int[]> forwardLevels = new ArrayList<int[]>();
+		List<int[]> backwardLevels = new ArrayList<int[]>();
+		try {
+			return search(source, target, maxDepth, deadline, forwardLevels, backwardLevels);
+		} finally {
+			clear(forwardParents, forwardLevels);
+			clear(backwardParents, backwardLevels);
+		}
+	}
+
+
+	/** Returns the number of profiles visited by the last search. */
+	public int getVisited() {
+		return visited;
+	}
+
+
+	/** Returns true if the last search stopped because it reached its deadline. */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+
+	/**
+	 * Runs the search described in findPath, adding each frontier to the
+	 * list of levels for its side so that the parents can be cleared.
+	 */
+	private int[] search(int source, int target, int maxDepth, long deadline,
+			List<int[]> forwardLevels, List<int[]> backwardLevels) {
+		/* A parent is stored plus one, so that zero means not yet reached;
+		 * the two ends are their own parents. */
+		forwardParents.set(source, source + 1);
+		forwardLevels.add(new int[] { source });
+		visited = 1;
+		if (source == target) {
+			return new int[] { source };
+		}
+		backwardParents.set(target, target + 1);
+		backwardLevels.add(new int[] { target });
+		visited = 2;
+
+		int[] forward = { source };
+		int[] backward = { target };
+		for (int depth = 0; depth < maxDepth; depth++) {
+			if (System.nanoTime() > deadline) {
+				timedOut = true;
+				return null;
+			}
+
+			/* Expand the smaller frontier, looking for profiles the other
+			 * side has already reached. */
+			boolean forwards = forward.length <= backward.length;
+			Expansion expansion = new Expansion(forwards ? forward : backward, forwards,
+					deadline);
+			int[] next = expansion.run();
+			(forwards ? forwardLevels : backwardLevels).add(next);
+			visited += next.length;
+			if (expansion.meeting >= 0) {
+				return chain(expansion.meeting, source, target);
+			}
+			if (expansion.timedOut) {
+				timedOut = true;
+				return null;
+			}
+			if (next.length == 0) {
+				return null;
+			}
+			if (forwards) {
+				forward = next;
+			} else {
+				backward = next;
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Returns the chain of IDs through the given profile at which the two
+	 * searches met, following the forward parents back to the source and
+	 * the backward parents on to the target.
+	 */
+	private int[] chain(int meeting, int source, int target) {
+		List<Integer> ids = new ArrayList<Integer>();
+		for (int id = meeting; id != source; id = forwardParents.get(id) - 1) {
+			ids.add(id);
+		}
+		ids.add(source);
+		Collections.reverse(ids);
+		for (int id = meeting; id != target; ) {
+			id = backwardParents.get(id) - 1;
+			ids.add(id);
+		}
+		int[] path = new int[ids.size()];
+		for (int i = 0; i < path.length; i++) {
+			path[i] = ids.get(i);
+		}
+		return path;
+	}
+
+
+	/** Resets the parents of every profile in the given levels to zero. */
+	private static void clear(AtomicIntegerArray parents, List<int[]> levels) {
+		for (int[] level: levels) {
+			for (int id: level) {
+				parents.set(id, 0);
+			}
+		}
+	}
+
+
+	/**
+	 * The expansion of one frontier by one level, split into chunks of
+	 * CHUNK_SIZE profiles which run in parallel if there is more than one.
+	 */
+	private class Expansion {
+
+		Expansion(int[] frontier, boolean forwards, long deadline) {
+			this.frontier = frontier;
+			this.forwards = forwards;
+			this.deadline = deadline;
+			parents = forwards ? forwardParents : backwardParents;
+			others = forwards ? backwardParents : forwardParents;
+			meeting = -1;
+		}
+
+		/** Expands the frontier, returning the profiles reached for the first time. */
+		int[] run() {
+			if (frontier.length <= CHUNK_SIZE) {
+				return expand(0, frontier.length);
+			}
+			List<Future<int[]>> futures = new ArrayList<Future<int[]>>();
+			for (int start = 0; start < frontier.length; start += CHUNK_SIZE) {
+				final int from = start;
+				final int to = Math.min(start + CHUNK_SIZE, frontier.length);
+				futures.add(ForkJoinPool.commonPool().submit(new Callable<int[]>() {
+					public int[] call() {
+						return expand(from, to);
+					}
+				}));
+			}
+			int[][] parts = new int[futures.size()][];
+			int total = 0;
+			for (int i = 0; i < parts.length; i++) {
+				parts[i] = getPart(futures.get(i));
+				total += parts[i].length;
+			}
+			int[] next = new int[total];
+			int n = 0;
+			for (int[] part: parts) {
+				System.arraycopy(part, 0, next, n, part.length);
+				n += part.length;
+			}
+			return next;
+		}
+
+		/**
+		 * Expands the profiles between the given positions in the frontier,
+		 * returning those this chunk reached first.  Stops early once any
+		 * chunk has found a meeting, or at the deadline.
+		 */
+		int[] expand(int from, int to) {
+			int[] next = new int[INITIAL_CAPACITY];
+			int count = 0;
+			for (int i = from; i < to && meeting < 0; i++) {
+				if ((i - from) % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+					timedOut = true;
+					break;
+				}
+				int id = frontier[i];
+				FacePamphletIdSet neighbours;
+				if (forwards) {
+					neighbours = database.getProfile(id).getFriendIds();
+				} else {
+					neighbours = database.getReferrers(id);
+					if (neighbours == null) {
+						continue;
+					}
+				}
+				for (int pos = 0; pos < neighbours.end(); pos++) {
+					int neighbour = neighbours.get(pos);
+					if (neighbour < 0 || parents.get(neighbour) != 0) {
+						continue;
+					}
+					/* A name which is not a profile lists no friends, so the
+					 * forward search cannot go on from it (and it cannot be
+					 * the target, which is a profile). */
+					if (forwards && database.getProfile(neighbour) == null) {
+						continue;
+					}
+					if (!parents.compareAndSet(neighbour, 0, id + 1)) {
+						continue;
+					}
+					if (count == next.length) {
+						next = Arrays.copyOf(next, count * 2);
+					}
+					next[count++] = neighbour;
+					if (others.get(neighbour) != 0) {
+						meeting = neighbour;
+						break;
+					}
+				}
+			}
+			return Arrays.copyOf(next, count);
+		}
+
+		/* The frontier being expanded, its direction, the deadline, and the
+		 * parents for this side and the other side. */
+		private int[] frontier;
+		private boolean forwards;
+		private long deadline;
+		private AtomicIntegerArray parents;
+		private AtomicIntegerArray others;
+
+		/* A profile reached by both sides (or -1), and whether a chunk
+		 * reached the deadline, as seen by every chunk. */
+		volatile int meeting;
+		volatile boolean timedOut;
+	}
+
+
+	/**
+	 * Waits for a chunk of an expansion, passing on anything it threw.
+	 */
+	private static int[] getPart(Future<int[]> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw new RuntimeException(ex.getCause());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("search interrupted");
+		}
+	}
+
+	/* The number of frontier profiles expanded by each parallel chunk. */
+	private static final int CHUNK_SIZE = 512;
+
+	/* The number of frontier profiles expanded between checks of the clock. */
+	private static final int DEADLINE_CHECK_INTERVAL = 64;
+
+	/* The initial length of each chunk's list of newly reached profiles. */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/* Instance variable for the database being searched. */
+	private FacePamphletDatabase database;
+
+	/* The parent (plus one, or zero if not reached) of each profile reached
+	 * by the forward and backward searches, all zero between searches. */
+	private AtomicIntegerArray forwardParents;
+	private AtomicIntegerArray backwardParents;
+
+	/* The results of the last search: the number of profiles visited and
+	 * whether it stopped at its deadline. */
+	private int visited;
+	private boolean timedOut;
+
+}
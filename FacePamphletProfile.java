@@ -9,6 +9,7 @@
  */
 
 import acm.graphics.*;
+import java.io.*;
 import java.util.*;
 
 public class FacePamphletProfile implements FacePamphletConstants {
@@ -28,7 +29,22 @@ public class FacePamphletProfile implements FacePamphletConstants {
 		status = "";
 		image = null;
 		imageString = "";
-		friends = new ArrayList<String>();		
+		friends = new FacePamphletIdSet();
+		
+		/* Until the profile is added to a database, the IDs of its friends
+		 * come from a table of its own, created when the first friend is
+		 * added. */
+		names = null;
+		id = -1;
+	}
+	
+	/**
+	 * Constructor used by FacePamphletDatabase to create a profile whose
+	 * friend IDs come straight from the database's name table.
+	 */
+	FacePamphletProfile(String name, FacePamphletNameTable names) {
+		this(name);
+		this.names = names;
 	}
 
 	/** This method returns the name associated with the profile. */ 
@@ -39,18 +55,29 @@ public class FacePamphletProfile implements FacePamphletConstants {
 	/** 
 	 * This method returns the image associated with the profile.  
 	 * If there is no image associated with the profile, the method
-	 * returns null. */ 
+	 * returns null.  Unless an image has been set with setImage, the
+	 * image is opened from the image filename through the shared
+	 * FacePamphletImageCache, so it is only decoded when first needed
+	 * (and null is returned if the file can not be opened). */ 
 	public GImage getImage() {
-		return image;
+		if (image != null || imageString.equals("")) {
+			return image;
+		}
+		return FacePamphletImageCache.getInstance().get(imageString);
 	}
 	
 	/**
 	 * This method sets the image filename String used when saving the database
 	 * to a text file (since a GImage can not be directly represented in
-	 * text).
+	 * text).  The image is opened from this file when getImage is called,
+	 * replacing any image set with setImage.
 	 */
 	public void setImageString(String filename) {
 		imageString = filename;
+		image = null;
+		if (database != null) {
+			database.imageChanged(id, filename);
+		}
 	}
 	
 	
@@ -58,8 +85,19 @@ public class FacePamphletProfile implements FacePamphletConstants {
 	public String getImageString() {
 		return imageString;
 	}
+	
+	/**
+	 * Returns true if getImage would open the image from the image
+	 * filename, rather than return one set with setImage (or null).
+	 */
+	boolean hasImageFile() {
+		return image == null && !imageString.equals("");
+	}
 
-	/** This method sets the image associated with the profile. */ 
+	/**
+	 * This method sets the image associated with the profile, which is
+	 * then returned by getImage instead of the one in the image file.
+	 */ 
 	public void setImage(GImage image) {
 		this.image = image;
 	}
@@ -76,6 +114,9 @@ public class FacePamphletProfile implements FacePamphletConstants {
 	/** This method sets the status associated with the profile. */ 
 	public void setStatus(String status) {
 		this.status = status;
+		if (database != null) {
+			database.statusChanged(id, status);
+		}
 	}
 
 	/** 
@@ -88,12 +129,10 @@ public class FacePamphletProfile implements FacePamphletConstants {
 	 * a second time.)
 	 */
 	public boolean addFriend(String friend) {
-		if(friends.contains(friend)) {
-			return false;
-		} else {
-			friends.add(friend);
-			return true;
+		if (names == null) {
+			names = new FacePamphletNameTable();
 		}
+		return addFriendId(names.intern(friend));
 	}
 
 	/** 
@@ -105,20 +144,36 @@ public class FacePamphletProfile implements FacePamphletConstants {
 	 * the given friend name could not be removed.)
 	 */
 	public boolean removeFriend(String friend) {
-		if(friends.contains(friend)){
-			friends.remove(friends.indexOf(friend));
-			return true;
-		} else {
+		if (names == null) {
 			return false;
 		}
+		int friendId = names.lookup(friend);
+		if (friendId < 0) {
+			return false;
+		}
+		return removeFriendId(friendId);
 	}
 
 	/** 
 	 * This method returns an iterator over the list of friends 
-	 * associated with the profile.
+	 * associated with the profile, in the order they were added.
 	 */ 
 	public Iterator<String> getFriends() {
-		return friends.iterator();
+		return new FriendIterator();
+	}
+	
+	/** This method returns the number of friends in the profile. */
+	public int getFriendCount() {
+		return friends.size();
+	}
+	
+	/**
+	 * This method returns the name of the friend with the given index
+	 * (from 0 to getFriendCount() - 1) in the order the friends were
+	 * added, without stepping through the friends before it.
+	 */
+	public String getFriend(int index) {
+		return names.getName(friends.getAt(index));
 	}
 	
 	/** 
@@ -133,21 +188,201 @@ public class FacePamphletProfile implements FacePamphletConstants {
 	 * would return the string: "Alice (coding): Don, Chelsea, Bob"
 	 */ 
 	public String toString() {
-		String string = "" + name + " (" + status + "): ";
-		for (String friend: friends) {
-			string += friend + ", ";
+		/* Work out the length first, so that the string is built in a
+		 * single buffer of the right size. */
+		int length = name.length() + status.length() + 3;
+		for (int pos = 0; pos < friends.end(); pos++) {
+			if (friends.get(pos) >= 0) {
+				length += names.getName(friends.get(pos)).length() + 2;
+			}
 		}
-		/* Remove last comma and space */
-		string = string.substring(0, string.length()-2);
-		return string;
+		StringBuilder string = new StringBuilder(length);
+		try {
+			appendTo(string);
+		} catch (IOException ex) {
+			/* A StringBuilder never throws. */
+			throw new AssertionError(ex);
+		}
+		return string.toString();
 	}
 	
+	/**
+	 * This method writes the same text as toString, of the form
+	 * "name (status): list of friends", to the given Appendable (such
+	 * as a Writer or a StringBuilder).  The name, status and friends'
+	 * names are appended as they are, without building any other
+	 * strings, so large friend lists can be written out cheaply.
+	 */
+	public void appendTo(Appendable out) throws IOException {
+		out.append(name).append(" (").append(status).append(')');
+		boolean first = true;
+		for (int pos = 0; pos < friends.end(); pos++) {
+			int friendId = friends.get(pos);
+			if (friendId >= 0) {
+				out.append(first ? ": " : ", ").append(names.getName(friendId));
+				first = false;
+			}
+		}
+	}
+	
+	/**
+	 * Adds the friend with the given ID from the profile's name table,
+	 * telling the database holding the profile (if any).
+	 */
+	boolean addFriendId(int friendId) {
+		if (!friends.add(friendId)) {
+			return false;
+		}
+		if (database != null) {
+			database.friendAdded(id, friendId);
+		}
+		return true;
+	}
+	
+	/**
+	 * Removes the friend with the given ID from the profile's name table,
+	 * telling the database holding the profile (if any).
+	 */
+	boolean removeFriendId(int friendId) {
+		if (!friends.remove(friendId)) {
+			return false;
+		}
+		if (database != null) {
+			database.friendRemoved(id, friendId);
+		}
+		return true;
+	}
+	
+	/** Returns the set of friend IDs, which come from getNameTable(). */
+	FacePamphletIdSet getFriendIds() {
+		return friends;
+	}
+	
+	/**
+	 * Returns an estimate of the heap taken by the profile, its status,
+	 * image filename and set of friends, in bytes.  The name is left out,
+	 * since it is shared with the name table, as is any image.
+	 */
+	long estimateBytes() {
+		return OBJECT_BYTES + FacePamphletNameTable.stringBytes(status)
+				+ FacePamphletNameTable.stringBytes(imageString) + friends.estimateBytes();
+	}
+	
+	/**
+	 * Returns the name table the friend IDs come from, or null if the
+	 * profile has never had a friend and is not held in a database.
+	 */
+	FacePamphletNameTable getNameTable() {
+		return names;
+	}
+	
+	/**
+	 * Switches the profile's friend IDs over to the given name table,
+	 * re-interning each friend's name if the table is a different one.
+	 */
+	void setNameTable(FacePamphletNameTable table) {
+		if (names != table) {
+			FacePamphletIdSet rebound = new FacePamphletIdSet();
+			for (int pos = 0; pos < friends.end(); pos++) {
+				int friendId = friends.get(pos);
+				if (friendId >= 0) {
+					rebound.add(table.intern(names.getName(friendId)));
+				}
+			}
+			friends = rebound;
+			names = table;
+		}
+	}
+	
+	/**
+	 * Switches the profile's friend IDs over to the given name table, using
+	 * the given array to map each ID in the current table to its ID in the
+	 * new one.  This lets a loader which parsed profiles against a table of
+	 * its own move them over without looking up every friend name again.
+	 */
+	void setNameTable(FacePamphletNameTable table, int[] remap) {
+		FacePamphletIdSet rebound = new FacePamphletIdSet();
+		for (int pos = 0; pos < friends.end(); pos++) {
+			int friendId = friends.get(pos);
+			if (friendId >= 0) {
+				rebound.add(remap[friendId]);
+			}
+		}
+		friends = rebound;
+		names = table;
+	}
+	
+	/**
+	 * Sets the database this profile is held in, and the profile's ID in
+	 * the database's name table.  The database is told about any changes
+	 * to the list of friends, the status or the image filename.  Called
+	 * by FacePamphletDatabase when the profile is added, or with null and
+	 * -1 when it is removed.
+	 */
+	void setDatabase(FacePamphletDatabase database, int id) {
+		this.database = database;
+		this.id = id;
+	}
+	
+	/** Returns the profile's ID in the database holding it, or -1. */
+	int getId() {
+		return id;
+	}
+	
+	/**
+	 * Iterator over the friend names, in the order they were added.  Removing
+	 * through the iterator removes the friend just as removeFriend does.
+	 */
+	private class FriendIterator implements Iterator<String> {
+		
+		public boolean hasNext() {
+			while (next < friends.end() && friends.get(next) < 0) {
+				next++;
+			}
+			return next < friends.end();
+		}
+		
+		public String next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			last = friends.get(next++);
+			return names.getName(last);
+		}
+		
+		public void remove() {
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			removeFriendId(last);
+			last = -1;
+		}
+		
+		/* The next position to look at, and the ID last returned. */
+		private int next = 0;
+		private int last = -1;
+	}
+	
+	/* The heap taken by a profile object itself, for a 64-bit JVM with
+	 * compressed object pointers. */
+	private static final int OBJECT_BYTES = 40;
+	
 	/* Instance variables for the profile's name, status, image filename,
-	 * image and list of friends. */
+	 * image (only if set with setImage, since images are otherwise opened
+	 * through the image cache) and list of friends.  The friends are held as IDs from a name
+	 * table in a FacePamphletIdSet, which gives constant time membership
+	 * checks and removal while still iterating in the order the friends
+	 * were added. */
 	private String name;
 	private String status;
 	private String imageString;
 	private GImage image;
-	private ArrayList<String> friends;
+	private FacePamphletIdSet friends;
+	private FacePamphletNameTable names;
+	
+	/* The database holding this profile, or null if it is not held in one,
+	 * and the profile's ID in that database's name table. */
+	private FacePamphletDatabase database;
+	private int id;
 	
 }
@@ -0,0 +1,204 @@
+/*
+ * File: FacePamphletProfileRecord.java
+ * ------------------------------------
+ * This class is an immutable copy of one profile, as held by a
+ * FacePamphletConcurrentDatabase.  Because a record never changes once
+ * it is created, any number of threads can read it without locking;
+ * a change to a profile replaces its record with a new one.
+ */
+
+import java.util.*;
+
+public final class FacePamphletProfileRecord {
+
+	/**
+	 * Constructor
+	 * Creates a record with the given name, image filename, status and
+	 * friends (in the order they were added).  The record takes ownership
+	 * of the friends array, which must not be changed afterwards.
+	 */
+	private FacePamphletProfileRecord(String name, String imageString, String status,
+			String[] friends) {
+		this.name = name;
+		this.imageString = imageString;
+		this.status = status;
+		this.friends = friends;
+	}
+
+
+	/**
+	 * Returns a record with the given name, image filename, status and
+	 * friends (in the order they were added).  The friends array is copied.
+	 */
+	public static FacePamphletProfileRecord of(String name, String imageString, String status,
+			String[] friends) {
+		return new FacePamphletProfileRecord(name, imageString, status, friends.clone());
+	}
+
+
+	/** Returns a record holding a copy of the given profile. */
+	public static FacePamphletProfileRecord of(FacePamphletProfile profile) {
+		String[] friends = new String[profile.getFriendCount()];
+		Iterator<String> it = profile.getFriends();
+		for (int i = 0; i < friends.length; i++) {
+			friends[i] = it.next();
+		}
+		return new FacePamphletProfileRecord(profile.getName(), profile.getImageString(),
+				profile.getStatus(), friends);
+	}
+
+
+	/** Returns the profile name. */
+	public String getName() {
+		return name;
+	}
+
+
+	/** Returns the image filename, or "" if there is none. */
+	public String getImageString() {
+		return imageString;
+	}
+
+
+	/** Returns the status, or "" if there is none. */
+	public String getStatus() {
+		return status;
+	}
+
+
+	/** Returns the number of friends. */
+	public int getFriendCount() {
+		return friends.length;
+	}
+
+
+	/** Returns the friend with the given index, in the order they were added. */
+	public String getFriend(int index) {
+		return friends[index];
+	}
+
+
+	/** Returns an unmodifiable list of the friends, in the order they were added. */
+	public List<String> getFriends() {
+		return Collections.unmodifiableList(Arrays.asList(friends));
+	}
+
+
+	/** Returns true if the named friend is in the list of friends. */
+	public boolean hasFriend(String friend) {
+		if (friends.length <= LINEAR_LIMIT) {
+			for (String f: friends) {
+				if (f.equals(friend)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/* Build the index on first use.  Two threads may both build it, but
+		 * the results are identical, so either may be kept. */
+		Set<String> set = index;
+		if (set == null) {
+			set = new HashSet<String>(Arrays.asList(friends));
+			index = set;
+		}
+		return set.contains(friend);
+	}
+
+
+	/** Returns a copy of this record with the given status. */
+	public FacePamphletProfileRecord withStatus(String status) {
+		return new FacePamphletProfileRecord(name, imageString, status, friends);
+	}
+
+
+	/** Returns a copy of this record with the given image filename. */
+	public FacePamphletProfileRecord withImageString(String imageString) {
+		return new FacePamphletProfileRecord(name, imageString, status, friends);
+	}
+
+
+	/**
+	 * Returns a copy of this record with the named friend added to the end
+	 * of the list of friends, or this record if the friend is already there.
+	 */
+	public FacePamphletProfileRecord withFriend(String friend) {
+		if (indexOf(friend) >= 0) {
+			return this;
+		}
+		String[] added = Arrays.copyOf(friends, friends.length + 1);
+		added[friends.length] = friend;
+		return new FacePamphletProfileRecord(name, imageString, status, added);
+	}
+
+
+	/**
+	 * Returns a copy of this record without the named friend, or this record
+	 * if the friend is not there.
+	 */
+	public FacePamphletProfileRecord withoutFriend(String friend) {
+		int pos = indexOf(friend);
+		if (pos < 0) {
+			return this;
+		}
+		String[] removed = new String[friends.length - 1];
+		System.arraycopy(friends, 0, removed, 0, pos);
+		System.arraycopy(friends, pos + 1, removed, pos, removed.length - pos);
+		return new FacePamphletProfileRecord(name, imageString, status, removed);
+	}
+
+
+	/** Returns a new (mutable) profile holding the contents of this record. */
+	public FacePamphletProfile toProfile() {
+		FacePamphletProfile profile = new FacePamphletProfile(name);
+		profile.setImageString(imageString);
+		profile.setStatus(status);
+		for (String friend: friends) {
+			profile.addFriend(friend);
+		}
+		return profile;
+	}
+
+
+	/**
+	 * Returns a string of the form "name (status): list of friends", as
+	 * FacePamphletProfile does.
+	 */
+	public String toString() {
+		StringBuilder string = new StringBuilder();
+		string.append(name).append(" (").append(status).append(")");
+		for (int i = 0; i < friends.length; i++) {
+			string.append(i == 0 ? ": " : ", ").append(friends[i]);
+		}
+		return string.toString();
+	}
+
+
+	/**
+	 * Returns the index of the named friend, or -1 if it is not in the list.
+	 * A record is only copied when it changes, and the copy takes as long as
+	 * this scan, so changes do not build the index used by hasFriend.
+	 */
+	private int indexOf(String friend) {
+		for (int i = 0; i < friends.length; i++) {
+			if (friends[i].equals(friend)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/* The largest list of friends searched without building an index. */
+	private static final int LINEAR_LIMIT = 8;
+
+	/* Instance variables for the profile's name, image filename, status and
+	 * friends in the order they were added. */
+	private final String name;
+	private final String imageString;
+	private final String status;
+	private final String[] friends;
+
+	/* Set of the friends, built the first time a large list is searched. */
+	private volatile Set<String> index;
+
+}
@@ -0,0 +1,23 @@
+/*
+ * File: FacePamphletProgress.java
+ * -------------------------------
+ * This interface is implemented by objects which follow the progress
+ * of a long load or save of a network file, such as the background
+ * tasks of the FacePamphlet application.  It is called from the thread
+ * doing the work, which may not be the Swing event thread.
+ */
+
+import java.io.*;
+
+public interface FacePamphletProgress {
+
+	/**
+	 * Reports that the given amount of work (bytes or profiles) out of the
+	 * given total has been done.  An implementation can stop the work by
+	 * throwing an IOException, normally an InterruptedIOException; a load
+	 * then leaves the database unchanged, and a save leaves the existing
+	 * file in place.
+	 */
+	public void update(long done, long total) throws IOException;
+
+}
@@ -0,0 +1,77 @@
+/*
+ * File: FacePamphletProgressChannel.java
+ * --------------------------------------
+ * This class passes reads through to another channel, reporting the
+ * number of bytes read so far to a FacePamphletProgress after each
+ * one.  The readers of network files read in large blocks, so this
+ * costs one call per block rather than per line or profile.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+public class FacePamphletProgressChannel implements ReadableByteChannel {
+
+	/**
+	 * Constructor
+	 * Creates a channel reading from the given channel, which reports
+	 * progress as the given number of bytes already done plus those read
+	 * through this channel, out of the given total.
+	 */
+	public FacePamphletProgressChannel(ReadableByteChannel channel,
+			FacePamphletProgress progress, long base, long total) {
+		this.channel = channel;
+		this.progress = progress;
+		this.base = base;
+		this.total = total;
+	}
+
+
+	/**
+	 * Returns the given channel wrapped so that it reports progress as
+	 * bytes of the given total, or the channel itself if progress is null.
+	 */
+	public static ReadableByteChannel wrap(ReadableByteChannel channel,
+			FacePamphletProgress progress, long total) {
+		if (progress == null) {
+			return channel;
+		}
+		return new FacePamphletProgressChannel(channel, progress, 0, total);
+	}
+
+
+	/** Reads from the underlying channel and reports the progress. */
+	public int read(ByteBuffer dst) throws IOException {
+		int n = channel.read(dst);
+		if (n > 0) {
+			bytesRead += n;
+		}
+		progress.update(base + bytesRead, total);
+		return n;
+	}
+
+
+	/** Returns true if the underlying channel is open. */
+	public boolean isOpen() {
+		return channel.isOpen();
+	}
+
+
+	/**
+	 * Does nothing: the underlying channel belongs to the caller, which
+	 * closes it.
+	 */
+	public void close() {
+	}
+
+	/* Instance variables for the underlying channel, where progress is
+	 * reported, the bytes done before this channel was read and the total,
+	 * and the number of bytes read through this channel. */
+	private ReadableByteChannel channel;
+	private FacePamphletProgress progress;
+	private long base;
+	private long total;
+	private long bytesRead;
+
+}
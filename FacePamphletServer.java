@@ -0,0 +1,272 @@
+/*
+ * File: FacePamphletServer.java
+ * -----------------------------
+ * This program serves a FacePamphlet network to other programs over a
+ * simple line protocol on a local TCP port, without the Swing user
+ * interface.  The network is held in a FacePamphletConcurrentDatabase,
+ * so any number of connections can use it at once.
+ *
+ * Each request and response is one line of UTF-8 text, with fields
+ * separated by tabs (so names and statuses may contain spaces):
+ *
+ *   GET name              OK name image status friend friend ...
+ *   ADD name              OK, or ERR if the profile already exists
+ *   DELETE name           OK, or ERR if there is no such profile
+ *   STATUS name status    OK, or ERR if there is no such profile
+ *   FRIEND name friend    OK, or ERR if either profile does not exist
+ *                         or they are already friends
+ *   UNFRIEND name friend  OK, or ERR if they were not friends
+ *   SIZE                  OK and the number of profiles
+ *   SAVE                  OK, or ERR and the reason the save failed
+ *   PING                  OK
+ *   QUIT                  closes the connection
+ *
+ * Any other request gets ERR and a message.  A client may send many
+ * requests without waiting for the responses (pipelining); responses
+ * come back in request order, and are only flushed once every request
+ * already received has been answered.  Each connection is handled on
+ * a virtual thread when the JVM supports them (Java 21 and later), and
+ * on a thread from a cached pool otherwise.
+ *
+ * SAVE writes the network back to the file the server was started
+ * with, and nowhere else, so that clients cannot make the server write
+ * over other files.  Its journal, if the application left one, is
+ * replayed when the file is read and deleted once it is saved.
+ *
+ * Usage: java FacePamphletServer [file] [port]
+ */
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.util.concurrent.*;
+
+public class FacePamphletServer implements FacePamphletConstants {
+
+	public static void main(String[] args) throws IOException {
+		FacePamphletConcurrentDatabase database = new FacePamphletConcurrentDatabase();
+		if (args.length > 0) {
+			database.readDataFile(args[0]);
+		}
+		int port = (args.length > 1) ? Integer.parseInt(args[1]) : SERVER_PORT;
+		FacePamphletServer server = new FacePamphletServer(database, port,
+				(args.length > 0) ? args[0] : null);
+		System.out.println("Serving " + database.size() + " profiles on "
+				+ server.getAddress() + " (" + server.getThreadKind() + " threads)");
+		server.serve();
+	}
+
+
+	/**
+	 * Constructor
+	 * Creates a server for the given database, listening on the given port
+	 * of the loopback interface (or any free port if the port is 0), with
+	 * no file for SAVE to write to.
+	 */
+	public FacePamphletServer(FacePamphletConcurrentDatabase database, int port)
+			throws IOException {
+		this(database, port, null);
+	}
+
+
+	/**
+	 * Constructor
+	 * Creates a server for the given database, listening on the given port
+	 * of the loopback interface (or any free port if the port is 0), whose
+	 * SAVE request writes to the named file (or fails if it is null).
+	 */
+	public FacePamphletServer(FacePamphletConcurrentDatabase database, int port,
+			String filename) throws IOException {
+		this.database = database;
+		this.filename = filename;
+		listener = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+		executor = newConnectionExecutor();
+		virtual = (executor != null);
+		if (!virtual) {
+			executor = Executors.newCachedThreadPool();
+		}
+	}
+
+
+	/** Returns the address the server is listening on. */
+	public InetSocketAddress getAddress() {
+		return (InetSocketAddress) listener.getLocalSocketAddress();
+	}
+
+
+	/** Returns "virtual" if connections run on virtual threads, or "platform". */
+	public String getThreadKind() {
+		return virtual ? "virtual" : "platform";
+	}
+
+
+	/**
+	 * Accepts connections until the server is closed, handling each one on
+	 * a thread of its own.
+	 */
+	public void serve() throws IOException {
+		while (!listener.isClosed()) {
+			final Socket socket;
+			try {
+				socket = listener.accept();
+			} catch (SocketException ex) {
+				/* The server has been closed. */
+				break;
+			}
+			executor.execute(new Runnable() {
+				public void run() {
+					handle(socket);
+				}
+			});
+		}
+	}
+
+
+	/** Stops accepting connections.  Connections already open carry on. */
+	public void close() throws IOException {
+		listener.close();
+		executor.shutdown();
+	}
+
+
+	/**
+	 * Answers the requests on one connection until the client sends QUIT
+	 * or closes it.
+	 */
+	private void handle(Socket socket) {
+		try {
+			socket.setTcpNoDelay(true);
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+					socket.getInputStream(), UTF_8), BUFFER_SIZE);
+			Writer out = new BufferedWriter(new OutputStreamWriter(
+					socket.getOutputStream(), UTF_8), BUFFER_SIZE);
+			StringBuilder response = new StringBuilder();
+			String request;
+			while ((request = in.readLine()) != null && !request.equals("QUIT")) {
+				response.setLength(0);
+				answer(request, response);
+				response.append('\n');
+				out.append(response);
+
+				/* Flush only once every request received so far has been
+				 * answered, so that pipelined requests share packets. */
+				if (!in.ready()) {
+					out.flush();
+				}
+			}
+			out.flush();
+		} catch (IOException ex) {
+			/* The client has gone; there is no one to report it to. */
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException ex) {
+				/* Nothing more can be done with the socket. */
+			}
+		}
+	}
+
+
+	/** Carries out one request, appending its response (without a newline). */
+	private void answer(String request, StringBuilder response) {
+		String[] fields = request.split("\t", -1);
+		String command = fields[0];
+		if (command.equals("GET") && fields.length == 2) {
+			FacePamphletProfileRecord record = database.getProfile(fields[1]);
+			if (record == null) {
+				error(response, "no such profile");
+				return;
+			}
+			response.append("OK\t").append(record.getName()).append('\t')
+					.append(record.getImageString()).append('\t').append(record.getStatus());
+			for (int i = 0; i < record.getFriendCount(); i++) {
+				response.append('\t').append(record.getFriend(i));
+			}
+		} else if (command.equals("ADD") && fields.length == 2 && !fields[1].equals("")) {
+			result(response, database.addProfileIfAbsent(new FacePamphletProfile(fields[1])),
+					"profile already exists");
+		} else if (command.equals("DELETE") && fields.length == 2) {
+			result(response, database.deleteProfile(fields[1]), "no such profile");
+		} else if (command.equals("STATUS") && fields.length == 3) {
+			result(response, database.setStatus(fields[1], fields[2]), "no such profile");
+		} else if (command.equals("FRIEND") && fields.length == 3) {
+			result(response, database.addFriendship(fields[1], fields[2]),
+					"no such profile, or already friends");
+		} else if (command.equals("UNFRIEND") && fields.length == 3) {
+			result(response, database.removeFriendship(fields[1], fields[2]), "not friends");
+		} else if (command.equals("SIZE") && fields.length == 1) {
+			response.append("OK\t").append(database.size());
+		} else if (command.equals("SAVE") && fields.length == 1) {
+			if (filename == null) {
+				error(response, "the server has no file to save to");
+				return;
+			}
+			try {
+				database.saveDataFile(filename);
+				response.append("OK");
+			} catch (IOException ex) {
+				error(response, "unable to save: " + ex.getMessage());
+			}
+		} else if (command.equals("PING") && fields.length == 1) {
+			response.append("OK");
+		} else {
+			error(response, "unknown request");
+		}
+	}
+
+
+	/** Appends OK if the operation succeeded, or ERR and the message if not. */
+	private static void result(StringBuilder response, boolean ok, String message) {
+		if (ok) {
+			response.append("OK");
+		} else {
+			error(response, message);
+		}
+	}
+
+
+	/** Appends ERR and the given message. */
+	private static void error(StringBuilder response, String message) {
+		response.append("ERR\t").append(message);
+	}
+
+
+	/**
+	 * Returns an executor which starts a virtual thread for each task, or
+	 * null if this JVM has no virtual threads.  It is looked up by
+	 * reflection so that the server still builds for older Java versions.
+	 */
+	private static ExecutorService newConnectionExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (NoSuchMethodException ex) {
+			return null;
+		} catch (IllegalAccessException ex) {
+			return null;
+		} catch (InvocationTargetException ex) {
+			/* Virtual threads are a preview feature which is not enabled. */
+			return null;
+		}
+	}
+
+	/* The character set of the protocol. */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/* The size of each connection's read and write buffers. */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/* The number of connections which may wait to be accepted. */
+	private static final int BACKLOG = 1024;
+
+	/* Instance variables for the database being served, the file SAVE
+	 * writes to (or null), the listening socket, the executor running the
+	 * connections, and whether it uses virtual threads. */
+	private FacePamphletConcurrentDatabase database;
+	private String filename;
+	private ServerSocket listener;
+	private ExecutorService executor;
+	private boolean virtual;
+
+}
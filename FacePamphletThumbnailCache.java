@@ -0,0 +1,228 @@
+/*
+ * File: FacePamphletThumbnailCache.java
+ * -------------------------------------
+ * This class scales profile images to the IMAGE_WIDTH by IMAGE_HEIGHT
+ * size at which the canvas displays them, once per image file, and
+ * keeps the most recently used results.  Thumbnails are keyed by the
+ * image file's absolute path and modification time, so replacing an
+ * image file is picked up the next time it is displayed.  If a disk
+ * directory is given (normally through the THUMBNAIL_DIR_PROPERTY
+ * system property), thumbnails are also saved there as PNG files, so
+ * that later runs do not need to open the full-size image at all.
+ */
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+import javax.imageio.ImageIO;
+
+import acm.graphics.GImage;
+
+public class FacePamphletThumbnailCache implements FacePamphletConstants {
+
+	/**
+	 * Constructor
+	 * Creates an empty cache holding at most the given number of thumbnails
+	 * in memory, and saving them in the given directory, or only in memory
+	 * if the directory is null.
+	 */
+	public FacePamphletThumbnailCache(int maxThumbnails, File directory) {
+		this.maxThumbnails = maxThumbnails;
+		this.directory = directory;
+		thumbnails = new LinkedHashMap<String, GImage>(16, 0.75f, true);
+	}
+
+
+	/**
+	 * Returns the cache used by the canvas, which holds THUMBNAIL_CACHE_SIZE
+	 * thumbnails and uses the directory named by THUMBNAIL_DIR_PROPERTY, if
+	 * that is set.
+	 */
+	public static FacePamphletThumbnailCache getInstance() {
+		return SHARED;
+	}
+
+
+	/**
+	 * Returns the thumbnail of the image in the named file, or null if the
+	 * file can not be opened.  The image is only opened (through the shared
+	 * FacePamphletImageCache) if its thumbnail is neither in memory nor on
+	 * disk.
+	 */
+	public GImage get(String filename) {
+		File file = new File(filename);
+		String key = file.getAbsolutePath() + "@" + file.lastModified();
+		synchronized (this) {
+			GImage thumbnail = thumbnails.get(key);
+			if (thumbnail != null) {
+				hits++;
+				return thumbnail;
+			}
+			misses++;
+		}
+
+		BufferedImage pixels = readFromDisk(key);
+		if (pixels == null) {
+			GImage image = FacePamphletImageCache.getInstance().get(filename);
+			if (image == null) {
+				return null;
+			}
+			pixels = scale(image.getImage());
+			writeToDisk(key, pixels);
+		}
+		GImage thumbnail = new GImage(pixels);
+
+		synchronized (this) {
+			thumbnails.put(key, thumbnail);
+			Iterator<GImage> it = thumbnails.values().iterator();
+			while (thumbnails.size() > maxThumbnails && it.hasNext()) {
+				it.next();
+				it.remove();
+			}
+		}
+		return thumbnail;
+	}
+
+
+	/**
+	 * Returns a new thumbnail of the given image, without caching it.  Used
+	 * for images which did not come from a file.
+	 */
+	public GImage scale(GImage image) {
+		return new GImage(scale(image.getImage()));
+	}
+
+
+	/** Returns the number of times a thumbnail was found in memory. */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+
+	/** Returns the number of times a thumbnail was not found in memory. */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+
+	/** Returns the number of thumbnails read back from the disk directory. */
+	public synchronized long getDiskHits() {
+		return diskHits;
+	}
+
+
+	/**
+	 * Scales the given image to IMAGE_WIDTH by IMAGE_HEIGHT pixels with
+	 * bilinear filtering.
+	 */
+	private static BufferedImage scale(Image source) {
+		int width = (int) IMAGE_WIDTH;
+		int height = (int) IMAGE_HEIGHT;
+		BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = result.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+					RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(source, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		return result;
+	}
+
+
+	/**
+	 * Reads the thumbnail with the given key from the disk directory, or
+	 * returns null if there is none (or no directory).
+	 */
+	private BufferedImage readFromDisk(String key) {
+		if (directory == null) {
+			return null;
+		}
+		File file = diskFile(key);
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			BufferedImage pixels = ImageIO.read(file);
+			if (pixels != null) {
+				synchronized (this) {
+					diskHits++;
+				}
+			}
+			return pixels;
+		} catch (IOException ex) {
+			/* A damaged thumbnail is simply made again. */
+			return null;
+		}
+	}
+
+
+	/**
+	 * Saves a thumbnail in the disk directory (if there is one), through a
+	 * temporary file so that a thumbnail is never read half written.
+	 */
+	private void writeToDisk(String key, BufferedImage pixels) {
+		if (directory == null) {
+			return;
+		}
+		File file = diskFile(key);
+		try {
+			directory.mkdirs();
+			File temp = File.createTempFile("thumbnail", ".tmp", directory);
+			try {
+				ImageIO.write(pixels, "png", temp);
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				temp.delete();
+			}
+		} catch (IOException ex) {
+			/* The thumbnail is still cached in memory; it will be made again
+			 * next run. */
+		}
+	}
+
+
+	/** Returns the file in the disk directory for the given key. */
+	private File diskFile(String key) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] hash = digest.digest(key.getBytes(Charset.forName("UTF-8")));
+			StringBuilder name = new StringBuilder();
+			for (byte b: hash) {
+				name.append(String.format("%02x", b & 0xFF));
+			}
+			return new File(directory, name.append(".png").toString());
+		} catch (NoSuchAlgorithmException ex) {
+			/* Every Java platform is required to provide SHA-1. */
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/* The cache used by the canvas. */
+	private static final FacePamphletThumbnailCache SHARED = new FacePamphletThumbnailCache(
+			THUMBNAIL_CACHE_SIZE, System.getProperty(THUMBNAIL_DIR_PROPERTY) == null ? null
+					: new File(System.getProperty(THUMBNAIL_DIR_PROPERTY)));
+
+	/* Instance variables for the thumbnails in memory by key, in order from
+	 * least to most recently used, and the most there can be. */
+	private LinkedHashMap<String, GImage> thumbnails;
+	private int maxThumbnails;
+
+	/* The directory in which thumbnails are saved, or null. */
+	private File directory;
+
+	/* Instance variables counting memory hits and misses, and thumbnails
+	 * read from disk. */
+	private long hits;
+	private long misses;
+	private long diskHits;
+
+}